@@ -0,0 +1,134 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.StringJoiner;
+
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
+import org.apache.avro.Schema;
+
+/**
+ * Generated CSV dataset for the benchmarks. Columns cycle through string, long, double and date
+ * fields, so record building exercises every converter family. String columns draw from
+ * {@code cardinality} distinct values; the same seed always produces the same bytes.
+ */
+public final class BenchmarkDataset {
+
+    private static final long SEED = 0x5EED_CAFEL;
+    private static final LocalDate FIRST_DATE = LocalDate.of(2020, 1, 1);
+
+    private final Schema schema;
+    private final String[] headers;
+    private final byte[] csv;
+    private final int rows;
+
+    private BenchmarkDataset(Schema schema, String[] headers, byte[] csv, int rows) {
+        this.schema = schema;
+        this.headers = headers;
+        this.csv = csv;
+        this.rows = rows;
+    }
+
+    /**
+     * @param width number of columns
+     * @param rows number of data rows, excluding the header
+     * @param cardinality distinct values per string column
+     */
+    public static BenchmarkDataset generate(int width, int rows, int cardinality) {
+        String[] headers = new String[width];
+        StringJoiner fields = new StringJoiner(", ");
+        for (int column = 0; column < width; column++) {
+            headers[column] = "COL_" + column;
+            fields.add("{\"name\": \"" + headers[column] + "\", \"type\": [\"null\", " + fieldType(column) + "]}");
+        }
+        Schema schema = new Schema.Parser().parse("{\"type\": \"record\", \"name\": \"benchmark\", \"fields\": [" + fields + "]}");
+
+        String[] vocabulary = new String[Math.max(1, cardinality)];
+        for (int i = 0; i < vocabulary.length; i++) {
+            vocabulary[i] = "value-" + Integer.toHexString(i * 0x9E3779B1);
+        }
+
+        SplittableRandom random = new SplittableRandom(SEED);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(rows * width * 12);
+        StringBuilder line = new StringBuilder(width * 16);
+        line.append(String.join(",", headers)).append('\n');
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < width; column++) {
+                if (column > 0) {
+                    line.append(',');
+                }
+                switch (column % 4) {
+                    case 0:
+                        line.append(vocabulary[random.nextInt(vocabulary.length)]);
+                        break;
+                    case 1:
+                        line.append(random.nextLong(1_000_000_000_000L));
+                        break;
+                    case 2:
+                        line.append(random.nextInt(1_000_000)).append('.').append(random.nextInt(100));
+                        break;
+                    default:
+                        line.append(FIRST_DATE.plusDays(random.nextInt(2000)));
+                        break;
+                }
+            }
+            line.append('\n');
+            byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+            out.write(bytes, 0, bytes.length);
+            line.setLength(0);
+        }
+        return new BenchmarkDataset(schema, headers, out.toByteArray(), rows);
+    }
+
+    private static String fieldType(int column) {
+        switch (column % 4) {
+            case 0:
+                return "\"string\"";
+            case 1:
+                return "\"long\"";
+            case 2:
+                return "\"double\"";
+            default:
+                return "{\"type\": \"int\", \"logicalType\": \"date\"}";
+        }
+    }
+
+    /**
+     * @return the data rows parsed once with opencsv, for benchmarks that start after parsing
+     */
+    public List<String[]> parseRows() throws IOException {
+        List<String[]> parsed = new ArrayList<>(rows);
+        try (CSVReader reader = new CSVReader(new InputStreamReader(new ByteArrayInputStream(csv), StandardCharsets.UTF_8))) {
+            reader.readNext();
+            String[] row;
+            while ((row = reader.readNext()) != null) {
+                parsed.add(row);
+            }
+        } catch (CsvValidationException e) {
+            throw new IOException("Generated dataset is not valid CSV", e);
+        }
+        return parsed;
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    public String[] getHeaders() {
+        return headers;
+    }
+
+    public byte[] getCsv() {
+        return csv;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+}
@@ -0,0 +1,232 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.avro.AvroParquetWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Measures each stage of the CSV to Parquet pipeline separately, and all stages end to end through
+ * {@link SnapshotServiceImpl#writeCsvToParquet}. One operation converts the whole dataset; the
+ * {@code rows} and {@code bytes} secondary results give rows/s and CSV bytes/s.
+ *
+ * <pre>
+ * mvn -B test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main \
+ *     -Dexec.args="ConversionPipelineBenchmark -prof gc -p width=20 -p rows=100000 -p cardinality=1000"
+ * </pre>
+ *
+ * <p>{@code -prof gc} adds the allocation rate ({@code gc.alloc.rate.norm} is bytes per dataset).
+ * {@code internCapacity=0} runs without interned cells and cached Utf8 values; compare its allocation
+ * against 1024 at a low and a high {@code cardinality} to see what per-column canonicalization saves.
+ * {@code pipelined=true} runs {@code endToEnd} through the staged {@link ConversionPipeline}.
+ * Keep the output of a run on the main branch as the baseline for a change to the conversion path.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ConversionPipelineBenchmark {
+
+    /** Stage inputs prepared once, so each stage is measured without the ones before it. */
+    @State(Scope.Benchmark)
+    public static class StageInputs {
+        List<String[]> rows;
+        List<GenericData.Record> records;
+        CsvProjectionPlan plan;
+        Object currentDate;
+        Object currentTimestamp;
+
+        @Setup(Level.Trial)
+        public void prepare(DatasetState state) throws IOException {
+            BenchmarkDataset dataset = state.dataset;
+            rows = dataset.parseRows();
+            plan = CsvProjectionPlan.compile(dataset.getSchema(), dataset.getHeaders(), UnparsableValuePolicy.FAIL);
+            LocalDateTime loadTime = LocalDateTime.now();
+            currentDate = plan.dateStamp(loadTime.toLocalDate());
+            currentTimestamp = plan.timestampStamp(loadTime);
+            records = new ArrayList<>(rows.size());
+            for (String[] row : rows) {
+                GenericData.Record record = plan.newRecord();
+                plan.fill(record, row, currentDate, currentTimestamp);
+                records.add(record);
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class EngineState {
+        @Param({"OPENCSV", "FAST"})
+        public CsvEngine engine;
+
+        /** Zero compares against the path without interned cells and cached Utf8 values. */
+        @Param({"0", "1024"})
+        public int internCapacity;
+
+        SnapshotProperties.Csv csv = new SnapshotProperties.Csv();
+
+        @Setup(Level.Trial)
+        public void configure() {
+            csv.setInternCapacity(internCapacity);
+        }
+
+        CsvRowReader open(BenchmarkDataset dataset) {
+            return engine.open(new ByteArrayInputStream(dataset.getCsv()), csv);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class CodecState {
+        @Param({"UNCOMPRESSED", "SNAPPY", "GZIP", "ZSTD"})
+        public CompressionCodecName codec;
+
+        Configuration hadoopConfig;
+
+        @Setup(Level.Trial)
+        public void configure() {
+            hadoopConfig = new Configuration();
+            hadoopConfig.set("parquet.native.enabled", "false");
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ServiceState {
+        @Param({"false", "true"})
+        boolean pipelined;
+
+        SnapshotServiceImpl snapshotService;
+
+        @Setup(Level.Trial)
+        public void start(EngineState engine) {
+            // S3 accepts every request without doing anything, so the output is produced but not sent
+            S3Client s3Client = mock(S3Client.class);
+            when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                    .thenReturn(CreateMultipartUploadResponse.builder().uploadId("benchmark").build());
+            when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                    .thenReturn(UploadPartResponse.builder().eTag("etag").build());
+
+            SnapshotProperties properties = new SnapshotProperties();
+            properties.setCsv(engine.csv);
+            properties.getPipeline().setEnabled(pipelined);
+            snapshotService = new SnapshotServiceImpl(s3Client, new SimpleMeterRegistry(), properties,
+                    new ParquetWriterFactory(), new SchemaCache(properties), null);
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            snapshotService.shutdown();
+        }
+    }
+
+    @Benchmark
+    public void parseCsv(DatasetState state, EngineState engine, ThroughputCounters counters, Blackhole blackhole) throws IOException {
+        try (CsvRowReader reader = engine.open(state.dataset)) {
+            String[] row;
+            while ((row = reader.readNext()) != null) {
+                blackhole.consume(row);
+            }
+        }
+        counters.processed(state.dataset);
+    }
+
+    /** Parses decoding only the columns the schema reads, as the conversion does. */
+    @Benchmark
+    public void parseCsvProjected(DatasetState state, StageInputs inputs, EngineState engine, ThroughputCounters counters, Blackhole blackhole) throws IOException {
+        try (CsvRowReader reader = engine.open(state.dataset)) {
+            blackhole.consume(reader.readNext());
+            reader.project(inputs.plan.getProjectedColumns());
+            String[] row;
+            while ((row = reader.readNext()) != null) {
+                blackhole.consume(row);
+            }
+        }
+        counters.processed(state.dataset);
+    }
+
+    @Benchmark
+    public void buildRecords(DatasetState state, StageInputs inputs, ThroughputCounters counters, Blackhole blackhole) throws IOException {
+        CsvProjectionPlan plan = inputs.plan;
+        GenericData.Record record = plan.newRecord();
+        for (String[] row : inputs.rows) {
+            blackhole.consume(plan.fill(record, row, inputs.currentDate, inputs.currentTimestamp));
+        }
+        blackhole.consume(record);
+        counters.processed(state.dataset);
+    }
+
+    @Benchmark
+    public void buildRecordsCached(DatasetState state, StageInputs inputs, EngineState engine, ThroughputCounters counters, Blackhole blackhole) throws IOException {
+        CsvProjectionPlan plan = inputs.plan;
+        GenericData.Record record = plan.newRecord();
+        Object currentDate = Utf8Cache.encodeOnce(inputs.currentDate);
+        Object currentTimestamp = Utf8Cache.encodeOnce(inputs.currentTimestamp);
+        Utf8Cache[] utf8ByField = plan.newUtf8Caches(engine.internCapacity);
+        long[] nullsByField = new long[plan.getSchema().getFields().size()];
+        long[] unparsableByField = new long[nullsByField.length];
+        for (String[] row : inputs.rows) {
+            blackhole.consume(plan.fill(record, row, currentDate, currentTimestamp, nullsByField, unparsableByField, utf8ByField));
+        }
+        blackhole.consume(record);
+        counters.processed(state.dataset);
+    }
+
+    @Benchmark
+    public long encodeParquet(DatasetState state, StageInputs inputs, CodecState codecState, ThroughputCounters counters) throws IOException {
+        DiscardingOutputFile outputFile = new DiscardingOutputFile();
+        try (ParquetWriter<GenericRecord> writer = AvroParquetWriter.<GenericRecord>builder(outputFile)
+                .withSchema(state.dataset.getSchema())
+                .withConf(codecState.hadoopConfig)
+                .withValidation(false)
+                .withCompressionCodec(codecState.codec)
+                .build()) {
+            for (GenericData.Record record : inputs.records) {
+                writer.write(record);
+            }
+        }
+        counters.processed(state.dataset);
+        return outputFile.getBytesWritten();
+    }
+
+    @Benchmark
+    public long endToEnd(DatasetState state, ServiceState service, EngineState engine, ThroughputCounters counters) throws IOException {
+        ConversionMetrics metrics = new ConversionMetrics(new SimpleMeterRegistry(), "benchmark", new SnapshotProperties.Progress());
+        S3MultipartOutputFile outputFile = service.snapshotService.openParquetOutputToS3("bucket", "benchmark.parquet");
+        long written;
+        try (CsvRowReader reader = engine.open(state.dataset)) {
+            written = service.snapshotService.writeCsvToParquet(reader, state.dataset.getSchema(), outputFile, metrics);
+        }
+        counters.processed(state.dataset);
+        return written;
+    }
+}
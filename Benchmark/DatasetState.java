@@ -0,0 +1,28 @@
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The dataset shared by every benchmark, sized with {@code -p width=.. -p rows=.. -p cardinality=..}.
+ */
+@State(Scope.Benchmark)
+public class DatasetState {
+
+    @Param("20")
+    public int width;
+
+    @Param("100000")
+    public int rows;
+
+    @Param("1000")
+    public int cardinality;
+
+    public BenchmarkDataset dataset;
+
+    @Setup(Level.Trial)
+    public void generate() {
+        dataset = BenchmarkDataset.generate(width, rows, cardinality);
+    }
+}
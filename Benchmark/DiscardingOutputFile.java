@@ -0,0 +1,58 @@
+import java.io.IOException;
+
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+
+/**
+ * Parquet output that only counts bytes, so encoding benchmarks do not measure any I/O.
+ */
+public class DiscardingOutputFile implements OutputFile {
+
+    private long bytesWritten;
+
+    @Override
+    public PositionOutputStream create(long blockSizeHint) {
+        return new PositionOutputStream() {
+            private long position;
+
+            @Override
+            public long getPos() {
+                return position;
+            }
+
+            @Override
+            public void write(int b) {
+                position++;
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) {
+                position += length;
+            }
+
+            @Override
+            public void close() throws IOException {
+                bytesWritten = position;
+            }
+        };
+    }
+
+    @Override
+    public PositionOutputStream createOrOverwrite(long blockSizeHint) {
+        return create(blockSizeHint);
+    }
+
+    @Override
+    public boolean supportsBlockSize() {
+        return false;
+    }
+
+    @Override
+    public long defaultBlockSize() {
+        return 0;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+}
@@ -0,0 +1,29 @@
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Secondary results reported next to each benchmark's score: rows and source CSV bytes processed
+ * per second. Divide {@code bytes} by 1,048,576 for MB/s.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class ThroughputCounters {
+
+    public long rows;
+
+    public long bytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        rows = 0;
+        bytes = 0;
+    }
+
+    void processed(BenchmarkDataset dataset) {
+        rows += dataset.getRows();
+        bytes += dataset.getCsv().length;
+    }
+}
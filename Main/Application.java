@@ -1,28 +1,95 @@
 import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
 import java.util.Map;
 import java.util.function.Function;
 
+@Slf4j
 @SpringBootApplication
 @EnableConfigurationProperties
 
-public class Application implements Functions<Map<String, String>, Map>{
+public class Application implements Function<Map<String, Object>, Map> {
 
-    private static ApplicationContext getapplicationcontext(String[] args) {
-        return new SpringApplicationBuilder(Application.class).run(args);        
+    /** Environment variable that switches to {@link LeanApplicationConfig} startup. */
+    static final String LEAN_STARTUP_ENV = "SNAPSHOT_LEAN_STARTUP";
+    /** System property equivalent of {@link #LEAN_STARTUP_ENV}. */
+    static final String LEAN_STARTUP_PROPERTY = "snapshot.lean-startup";
+
+    /**
+     * The context shared by every invocation in this JVM. A warm function container reuses it, and
+     * with it the S3 client, its connection pool and the schema cache, instead of starting Spring per event.
+     */
+    private static volatile ConfigurableApplicationContext applicationContext;
+
+    /**
+     * Returns the shared application context, starting it on first use or if it has been closed.
+     */
+    static ConfigurableApplicationContext getapplicationcontext(String[] args) {
+        ConfigurableApplicationContext context = applicationContext;
+        if (context == null || !context.isActive()) {
+            synchronized (Application.class) {
+                context = applicationContext;
+                if (context == null || !context.isActive()) {
+                    long start = System.nanoTime();
+                    context = startContext(args);
+                    applicationContext = context;
+                    log.info("Application context started in {} ms (lean startup: {})", (System.nanoTime() - start) / 1_000_000, isLeanStartup());
+                }
+            }
+        }
+        return context;
     }
-}
 
-public static void main(String[] args) throws Exception {
+    /**
+     * Starts a new context without a web server. The JVM shutdown hook closes it, which shuts down
+     * the S3 client and the upload and download executors.
+     */
+    static ConfigurableApplicationContext startContext(String[] args) {
+        SpringApplicationBuilder builder = isLeanStartup()
+                ? new SpringApplicationBuilder(LeanApplicationConfig.class).lazyInitialization(true)
+                : new SpringApplicationBuilder(Application.class);
+        return builder.web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .registerShutdownHook(true)
+                .run(args);
+    }
 
-}
+    /**
+     * Closes the shared context, if any. The next invocation starts a new one.
+     */
+    static void closeApplicationContext() {
+        synchronized (Application.class) {
+            if (applicationContext != null) {
+                applicationContext.close();
+                applicationContext = null;
+            }
+        }
+    }
 
-@SneakyThrows
-@OVerride
-public Map apply(final Map<String, String> event){
-    ApplicationContext applicationContext = getapplicationcontext(new String[] {});
-    Handler handler = applicationContext.ge;tBean(Handler.class);
-    return handler.apply(event);
+    static boolean isLeanStartup() {
+        String value = System.getProperty(LEAN_STARTUP_PROPERTY, System.getenv(LEAN_STARTUP_ENV));
+        return Boolean.parseBoolean(value);
+    }
+
+    public static void main(String[] args) throws Exception {
+        getapplicationcontext(args);
+    }
+
+    /**
+     * Handles one function event: a file, a {@code sourcePrefix} or a {@code jobs} array, see
+     * {@link Handler#handle(Map)}.
+     */
+    @SneakyThrows
+    @Override
+    public Map apply(final Map<String, Object> event) {
+        ApplicationContext context = getapplicationcontext(new String[] {});
+        Handler handler = context.getBean(Handler.class);
+        return handler.handle(event);
+    }
 }
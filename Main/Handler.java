@@ -1,8 +1,23 @@
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import jakarta.annotation.PreDestroy;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 @Service
@@ -10,34 +25,309 @@ import java.util.Map;
 public class Handler {
     private static final String SOURCE_BUCKET_NAME = "sourceBucketName";
     private static final String SOURCE_FILE_KEY = "sourceFileKey";
+    private static final String SOURCE_PREFIX = "sourcePrefix";
     private static final String DESTINATION_BUCKET_NAME = "destinationBucketName";
     private static final String DESTINATION_FILE_KEY = "destinationFileKey";
     private static final String PROCESS_FILE_NAME = "fileTobeProcessed";
+    private static final String MODE = "mode";
+    private static final String FORCE_REPROCESS = "forceReprocess";
+    private static final String JOBS = "jobs";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    static final String MODE_EVALUATE_WRITER_PROFILES = "evaluateWriterProfiles";
+
+    static final String STATUS_SUCCEEDED = "SUCCEEDED";
+    static final String STATUS_FAILED = "FAILED";
+    static final String STATUS_SKIPPED = "SKIPPED";
+
+    private final SnapshotService snapshotService;
+    private final S3Client s3Client;
+    private final ExecutorService batchExecutor;
 
     @Autowired
-    public Handler() {}
+    public Handler(final SnapshotService snapshotService, final S3Client s3Client, final SnapshotProperties snapshotProperties) {
+        this.snapshotService = snapshotService;
+        this.s3Client = s3Client;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.batchExecutor = Executors.newFixedThreadPool(Math.max(1, snapshotProperties.getBatch().getConcurrency()), runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-batch-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        batchExecutor.shutdown();
+    }
 
+    /**
+     * Entry point of the function. An event with a {@code jobs} array converts one file per job as a
+     * batch, see {@link #applyBatch(List)}; the array may also be passed as a JSON string. Every other
+     * key of the event is a default for the jobs, so e.g. a shared {@code sourceBucketName} is given
+     * once. A job with {@code sourcePrefix} instead of {@code sourceFileKey} expands to the objects under
+     * the prefix. An event without {@code jobs} is handled by {@link #apply(Map)}. Values that are not
+     * strings, such as a JSON {@code true} for {@code forceReprocess}, are read as their text.
+     *
+     * @return the result of {@link #apply(Map)}, or the per-file results of the jobs
+     * @throws IllegalArgumentException if {@code jobs} is not an array of objects
+     */
+    public Map handle(final Map<String, ?> event) {
+        if (event.get(JOBS) == null) {
+            return apply(textValues(event));
+        }
+        List<Map<String, String>> events = new ArrayList<>();
+        for (Map<String, String> job : jobsOf(event)) {
+            if (job.get(SOURCE_FILE_KEY) == null && job.get(SOURCE_PREFIX) != null) {
+                events.addAll(expandPrefix(job));
+            } else {
+                events.add(job);
+            }
+        }
+        return applyBatch(events);
+    }
+
+    /**
+     * Converts the file described by the event. An event carrying {@code sourcePrefix} instead of
+     * {@code sourceFileKey} converts every object under the prefix as a batch, writing each one under
+     * {@code destinationFileKey} with its path relative to the prefix. An event with {@code mode} set to
+     * {@code evaluateWriterProfiles} writes nothing and instead reports how a sample of the source
+     * encodes with each candidate writer profile. A file whose source is unchanged since its last
+     * conversion is reported as {@code SKIPPED} when {@code snapshot.manifest.enabled} is set, unless the
+     * event sets {@code forceReprocess} to {@code true}. With {@code snapshot.checkpoint.enabled}, retrying
+     * a failed conversion resumes after the part files it already uploaded.
+     *
+     * @return the result of the single conversion, the per-file results of the batch, or the evaluations
+     * @throws RuntimeException if a single-file conversion fails; batch failures are reported per file instead
+     */
     public Map apply(final Map<String, String> event){
         log.info("Received : {}", event);
 
-        event.keyset().forEach(record -> log.info(" Key = {}, Value = {}", record, event.get(record)));
+        event.keySet().forEach(record -> log.info(" Key = {}, Value = {}", record, event.get(record)));
+
+        if (MODE_EVALUATE_WRITER_PROFILES.equals(event.get(MODE))) {
+            try {
+                return evaluateWriterProfiles(event);
+            } catch (Exception e) {
+                throw new RuntimeException("Exception occurred during writer profile evaluation. Please try again...", e);
+            }
+        }
+
+        if (event.get(SOURCE_FILE_KEY) == null && event.get(SOURCE_PREFIX) != null) {
+            return applyBatch(expandPrefix(event));
+        }
+
+        try{
+            return convert(event);
+        } catch (Exception e){
+            throw new RuntimeException("Exception occurred during file conversion. Please try again...", e);
+        }
+    }
+
+    /**
+     * Converts every event in the list concurrently, on at most {@code snapshot.batch.concurrency}
+     * threads sharing this service's S3 client and schema cache. A failed file is reported in the
+     * response and does not stop the others.
+     *
+     * @param events one event per file, with the same keys as {@link #apply(Map)}
+     * @return the per-file results in the order of the events, with succeeded, skipped and failed counts
+     */
+    public Map<String, Object> applyBatch(final List<Map<String, String>> events) {
+        log.info("Received batch of {} files", events.size());
+        long startNanos = System.nanoTime();
+
+        List<Future<Map<String, Object>>> futures = new ArrayList<>(events.size());
+        // Written by the worker before its future completes, so read safely after get()
+        long[] fileStartNanos = new long[events.size()];
+        for (int index = 0; index < events.size(); index++) {
+            Map<String, String> event = events.get(index);
+            int file = index;
+            futures.add(batchExecutor.submit(() -> {
+                fileStartNanos[file] = System.nanoTime();
+                try {
+                    return convert(event);
+                } catch (Exception e) {
+                    return failure(event, e, fileStartNanos[file]);
+                }
+            }));
+        }
+
+        List<Map<String, Object>> files = new ArrayList<>(events.size());
+        int failed = 0;
+        int skipped = 0;
+        for (int index = 0; index < futures.size(); index++) {
+            Map<String, Object> result;
+            try {
+                result = futures.get(index).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(future -> future.cancel(true));
+                throw new RuntimeException("Interrupted while waiting for batch conversion", e);
+            } catch (ExecutionException e) {
+                result = failure(events.get(index), e.getCause(), fileStartNanos[index]);
+            }
+            if (STATUS_FAILED.equals(result.get("status"))) {
+                failed++;
+            } else if (STATUS_SKIPPED.equals(result.get("status"))) {
+                skipped++;
+            }
+            files.add(result);
+        }
+
+        final Map<String, Object> response = new HashMap<>();
+        response.put("files", files);
+        response.put("succeeded", files.size() - failed - skipped);
+        response.put("skipped", skipped);
+        response.put("failed", failed);
+        response.put("elapsedMillis", (System.nanoTime() - startNanos) / 1_000_000);
+        log.info("Snapshot batch completed: {} succeeded, {} skipped, {} failed", files.size() - failed - skipped, skipped, failed);
+        return response;
+    }
 
+    /**
+     * Lists the objects under {@code sourcePrefix} and builds one event per object.
+     */
+    List<Map<String, String>> expandPrefix(final Map<String, String> event) {
+        String sourceBucketName = event.get(SOURCE_BUCKET_NAME);
+        String sourcePrefix = event.get(SOURCE_PREFIX);
+        String destinationPrefix = event.getOrDefault(DESTINATION_FILE_KEY, "");
+
+        List<Map<String, String>> events = new ArrayList<>();
+        String continuationToken = null;
+        do {
+            ListObjectsV2Response listing = s3Client.listObjectsV2(ListObjectsV2Request.builder()
+                    .bucket(sourceBucketName)
+                    .prefix(sourcePrefix)
+                    .continuationToken(continuationToken)
+                    .build());
+            for (S3Object object : listing.contents()) {
+                if (object.key().endsWith("/")) {
+                    continue;
+                }
+                Map<String, String> fileEvent = new HashMap<>(event);
+                fileEvent.remove(SOURCE_PREFIX);
+                fileEvent.put(SOURCE_FILE_KEY, object.key());
+                fileEvent.put(DESTINATION_FILE_KEY, destinationPrefix + object.key().substring(sourcePrefix.length()));
+                events.add(fileEvent);
+            }
+            continuationToken = Boolean.TRUE.equals(listing.isTruncated()) ? listing.nextContinuationToken() : null;
+        } while (continuationToken != null);
+
+        log.info("Expanded s3://{}/{} to {} files", sourceBucketName, sourcePrefix, events.size());
+        return events;
+    }
+
+    /**
+     * Reads the {@code jobs} of an event as one event per job, each with the other keys of the event
+     * as defaults.
+     */
+    private static List<Map<String, String>> jobsOf(final Map<String, ?> event) {
+        Object jobs = event.get(JOBS);
+        if (jobs instanceof String) {
+            try {
+                jobs = OBJECT_MAPPER.readValue((String) jobs, List.class);
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException("jobs is not a JSON array of events: " + e.getOriginalMessage(), e);
+            }
+        }
+        if (!(jobs instanceof List)) {
+            throw new IllegalArgumentException("jobs must be an array of events, not " + jobs.getClass().getSimpleName());
+        }
+
+        Map<String, String> defaults = textValues(event);
+        defaults.remove(JOBS);
+        List<Map<String, String>> events = new ArrayList<>();
+        for (Object job : (List<?>) jobs) {
+            if (!(job instanceof Map)) {
+                throw new IllegalArgumentException("Each of jobs must be an event object: " + job);
+            }
+            Map<String, String> jobEvent = new HashMap<>(defaults);
+            jobEvent.putAll(textValues((Map<?, ?>) job));
+            events.add(jobEvent);
+        }
+        return events;
+    }
+
+    private static Map<String, String> textValues(final Map<?, ?> event) {
+        Map<String, String> values = new HashMap<>();
+        event.forEach((key, value) -> values.put(String.valueOf(key), value == null ? null : String.valueOf(value)));
+        return values;
+    }
+
+    private Map<String, Object> evaluateWriterProfiles(final Map<String, String> event) throws Exception {
+        List<WriterProfileEvaluation> evaluations = snapshotService.evaluateWriterProfiles(event.get(SOURCE_BUCKET_NAME),
+                event.get(SOURCE_FILE_KEY), event.get(PROCESS_FILE_NAME));
+
+        List<Map<String, Object>> candidates = new ArrayList<>(evaluations.size());
+        for (WriterProfileEvaluation evaluation : evaluations) {
+            Map<String, Object> candidate = new LinkedHashMap<>();
+            candidate.put("profile", evaluation.getProfile());
+            candidate.put("codec", evaluation.getCodec());
+            candidate.put("compressionLevel", evaluation.getCompressionLevel());
+            candidate.put("dictionaryEnabled", evaluation.isDictionaryEnabled());
+            candidate.put("rows", evaluation.getRows());
+            candidate.put("bytes", evaluation.getBytes());
+            candidate.put("encodeMillis", evaluation.getEncodeNanos() / 1_000_000.0);
+            candidates.add(candidate);
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put(SOURCE_FILE_KEY, event.get(SOURCE_FILE_KEY));
+        response.put(PROCESS_FILE_NAME, event.get(PROCESS_FILE_NAME));
+        response.put("candidates", candidates);
+        return response;
+    }
+
+    private Map<String, Object> convert(final Map<String, String> event) throws Exception {
         String sourceBucketName = event.get(SOURCE_BUCKET_NAME);
         String sourceFileKey = event.get(SOURCE_FILE_KEY);
         String destinationBucketName = event.get(DESTINATION_BUCKET_NAME);
         String destinationFileKey = event.get(DESTINATION_FILE_KEY);
         String fileTobeProcessed = event.get(PROCESS_FILE_NAME);
+        boolean forceReprocess = Boolean.parseBoolean(event.get(FORCE_REPROCESS));
 
+        long startNanos = System.nanoTime();
+        ConversionResult result = snapshotService.convertCsvToParquetAndUpload(sourceBucketName, sourceFileKey, fileTobeProcessed, destinationBucketName,
+                destinationFileKey, forceReprocess);
+        if (result != null && result.isSkipped()) {
+            log.info("Snapshot load skipped for => {}: source unchanged", fileTobeProcessed);
+        } else {
+            log.info("Snapshot load completed successfully for => {}", fileTobeProcessed);
+        }
+        return success(event, result, startNanos);
+    }
 
-        try{
-            snapshotService.convertCsvToParquetAndUpload(sourceBucketName, sourceFileKey, fileTobeProcessed, destinationBucketName, destinationFileKey);
-            log.info("Snapshot load completed scuccessfully for => {}", fileTobeProcessed);
-        } catch (Exception e){
-            throw new RuntimeException("Exception occured during file convertion..")
+    private static Map<String, Object> success(final Map<String, String> event, final ConversionResult result, final long startNanos) {
+        boolean skipped = result != null && result.isSkipped();
+        Map<String, Object> response = fileResponse(event, skipped ? STATUS_SKIPPED : STATUS_SUCCEEDED, startNanos);
+        response.put("skipped", skipped);
+        if (result != null) {
+            response.put(DESTINATION_FILE_KEY, result.getDestinationKey());
+            response.put("parts", result.getParts());
+            response.put("rowsRead", result.getRowsRead());
+            response.put("rowsWritten", result.getRowsWritten());
+            response.put("rowsRejected", result.getRowsRejected());
+            response.put("bytesDownloaded", result.getBytesDownloaded());
+            response.put("bytesUploaded", result.getBytesUploaded());
         }
+        return response;
+    }
 
-        final Map<String, Object> response = new HashMap<>();
+    private static Map<String, Object> failure(final Map<String, String> event, final Throwable error, final long startNanos) {
+        log.error("Snapshot load failed for => {} ({})", event.get(PROCESS_FILE_NAME), event.get(SOURCE_FILE_KEY), error);
+        Map<String, Object> response = fileResponse(event, STATUS_FAILED, startNanos);
+        response.put("error", String.valueOf(error.getMessage()));
+        return response;
+    }
 
+    private static Map<String, Object> fileResponse(final Map<String, String> event, final String status, final long startNanos) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put(SOURCE_FILE_KEY, event.get(SOURCE_FILE_KEY));
+        response.put(PROCESS_FILE_NAME, event.get(PROCESS_FILE_NAME));
+        response.put(DESTINATION_FILE_KEY, event.get(DESTINATION_FILE_KEY));
+        response.put("status", status);
+        response.put("elapsedMillis", (System.nanoTime() - startNanos) / 1_000_000);
         return response;
     }
 }
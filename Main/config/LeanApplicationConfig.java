@@ -0,0 +1,24 @@
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Startup configuration used when {@code SNAPSHOT_LEAN_STARTUP=true}. It registers only the beans the
+ * conversion needs. There is no component scan, which in the default package walks every jar on the
+ * classpath, and no auto-configuration. Beans are also created lazily, so a cold start pays only for
+ * what the first event touches.
+ *
+ * <p>Beans added to the application must also be listed here to be available in lean mode.
+ */
+@Configuration
+@EnableConfigurationProperties(SnapshotProperties.class)
+@Import({
+        S3ClientBuilder.class,
+        MetricsConfig.class,
+        ParquetWriterFactory.class,
+        SchemaCache.class,
+        SnapshotServiceImpl.class,
+        Handler.class
+})
+public class LeanApplicationConfig {
+}
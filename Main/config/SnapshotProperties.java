@@ -0,0 +1,294 @@
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/**
+ * Tunables for the snapshot conversion pipeline, bound from {@code snapshot.*} properties.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "snapshot")
+public class SnapshotProperties {
+
+    private Progress progress = new Progress();
+
+    private Upload upload = new Upload();
+
+    private Download download = new Download();
+
+    private Parallel parallel = new Parallel();
+
+    private Output output = new Output();
+
+    private Conversion conversion = new Conversion();
+
+    private Csv csv = new Csv();
+
+    private Schemas schemas = new Schemas();
+
+    private Batch batch = new Batch();
+
+    private Writer writer = new Writer();
+
+    private Manifest manifest = new Manifest();
+
+    private Checkpoint checkpoint = new Checkpoint();
+
+    private Pipeline pipeline = new Pipeline();
+
+    private Memory memory = new Memory();
+
+    private S3 s3 = new S3();
+
+    /**
+     * Controls the periodic progress log written while a conversion is running.
+     */
+    @Data
+    public static class Progress {
+        /** Log progress after this many rows have been written. */
+        private long rowInterval = 1_000_000;
+        /** Log progress at least this often, whatever the row count. */
+        private Duration timeInterval = Duration.ofSeconds(30);
+    }
+
+    /**
+     * Controls the streaming multipart upload of the Parquet output.
+     */
+    @Data
+    public static class Upload {
+        /** Size of each multipart upload part; S3 requires at least 5MB. */
+        private DataSize partSize = DataSize.ofMegabytes(16);
+        /** Parts buffered or uploading at once; bounds memory to part size times this value. */
+        private int maxInFlightParts = 4;
+    }
+
+    /**
+     * Controls how source objects are fetched from S3 and decompressed.
+     */
+    @Data
+    public static class Download {
+        /** Fetch large sources with concurrent byte-range GETs instead of a single stream. */
+        private boolean parallelEnabled = false;
+        /** Size of each byte-range GET. Objects no larger than this use a single GET. */
+        private DataSize chunkSize = DataSize.ofMegabytes(8);
+        /** Range GETs in flight (and chunks buffered ahead of the parser) at once. */
+        private int concurrency = 4;
+        /** Decompress gzip, zstd and bzip2 sources on a separate thread, ahead of the parser. */
+        private boolean decodeAheadEnabled = true;
+        /** Size of each decompressed chunk handed from the decoding thread to the parser, or read ahead by snapshot.pipeline. */
+        private DataSize decodeChunkSize = DataSize.ofMegabytes(1);
+        /** Decompressed (or, with snapshot.pipeline, fetched) chunks buffered ahead of the parser. */
+        private int decodeAhead = 4;
+    }
+
+    /**
+     * Controls the multi-core conversion engine, which writes one Parquet part file per chunk.
+     */
+    @Data
+    public static class Parallel {
+        /** Split the source and encode chunks on a worker pool instead of a single thread. */
+        private boolean enabled = false;
+        /** Worker threads parsing and encoding chunks. */
+        private int workers = Runtime.getRuntime().availableProcessors();
+        /** Target size of each chunk, and therefore roughly of the CSV behind each part file. */
+        private DataSize chunkSize = DataSize.ofMegabytes(64);
+    }
+
+    /**
+     * Controls how the single-threaded conversion lays out its Parquet output.
+     */
+    @Data
+    public static class Output {
+        /** Write {@code <key>/part-00000.parquet}, ... rolling over at the limits below, instead of one object. */
+        private boolean rollingEnabled = false;
+        /** Start a new part once the current one holds about this many bytes. Zero means no size limit. */
+        private DataSize maxPartSize = DataSize.ofMegabytes(512);
+        /** Start a new part once the current one holds this many rows. Zero means no row limit. */
+        private long maxPartRows = 0;
+        /** Full parts closing and uploading while the next one is encoded. Each holds up to a row group in memory. */
+        private int pendingCloses = 1;
+        /** Write a {@code _SUCCESS} object listing the parts once all are uploaded, here and in the parallel engine. */
+        private boolean successMarkerEnabled = true;
+    }
+
+    /**
+     * Controls how CSV text is converted to the types declared by the Avro schema.
+     */
+    @Data
+    public static class Conversion {
+        /** What to do with a cell that does not parse as its field type: NULL, REJECT_ROW or FAIL. */
+        private UnparsableValuePolicy unparsableValuePolicy = UnparsableValuePolicy.FAIL;
+    }
+
+    /**
+     * Controls how CSV sources are tokenized.
+     */
+    @Data
+    public static class Csv {
+        /** FAST (byte-level tokenizer, decodes only projected columns) or OPENCSV (supports backslash escapes). */
+        private CsvEngine engine = CsvEngine.FAST;
+        /** Cell delimiter; must be an ASCII character. */
+        private char delimiter = ',';
+        /** Quote character; must be an ASCII character. */
+        private char quote = '"';
+        /** Charset of the source. FAST requires one that encodes ASCII as single bytes, such as UTF-8. */
+        private Charset charset = StandardCharsets.UTF_8;
+        /** Read buffer of the FAST tokenizer; grows if a single row is larger. */
+        private DataSize bufferSize = DataSize.ofMegabytes(1);
+        /** Distinct short values kept per column, so repeated cells share one decoded String (FAST) and one encoded Utf8. Zero disables. */
+        private int internCapacity = 1024;
+    }
+
+    /**
+     * Controls the cache of parsed schemas and compiled projection plans.
+     */
+    @Data
+    public static class Schemas {
+        /** File types whose parsed schema is kept; the least recently used is evicted beyond this. */
+        private int cacheSize = 256;
+        /** Reload a cached schema on its next use once it is older than this. Zero never reloads. */
+        private Duration reloadInterval = Duration.ZERO;
+    }
+
+    /**
+     * Controls batch invocations that convert a list of files or an S3 prefix.
+     */
+    @Data
+    public static class Batch {
+        /** Files converted at once. Each one may itself use several upload, download and encode threads, and waits for memory under snapshot.memory. */
+        private int concurrency = 8;
+    }
+
+    /**
+     * Controls the manifest kept next to each destination, which lets an unchanged source be skipped.
+     * See {@link SnapshotManifest}.
+     */
+    @Data
+    public static class Manifest {
+        /** Skip the conversion when the manifest shows the same source ETag, size and schema were already converted. */
+        private boolean enabled = false;
+        /** Appended to the destination key without extension to name the manifest object. */
+        private String suffix = ".manifest.json";
+    }
+
+    /**
+     * Controls checkpoints of conversions into part files, which let a retry resume after the parts
+     * already uploaded. See {@link ConversionCheckpoint}.
+     */
+    @Data
+    public static class Checkpoint {
+        /** Write part files with a checkpoint after each one (not with snapshot.parallel); needs the FAST engine and an uncompressed source. */
+        private boolean enabled = false;
+        /** Appended to the destination key without extension to name the checkpoint object. */
+        private String suffix = ".checkpoint.json";
+    }
+
+    /**
+     * Controls the staged pipeline of a single-stream conversion, which fetches, parses, builds records
+     * and encodes concurrently. See {@link ConversionPipeline}.
+     */
+    @Data
+    public static class Pipeline {
+        /** Run the conversion stages concurrently, connected by bounded queues (not with snapshot.parallel or snapshot.checkpoint). */
+        private boolean enabled = false;
+        /** Rows handed from stage to stage at a time. */
+        private int batchRows = 1024;
+        /** Batches parsed ahead of the encoder; memory holds about this many batches plus two per conversion. */
+        private int queueCapacity = 8;
+        /** Threads building Avro records, shared by all conversions; read once at startup. */
+        private int buildThreads = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Controls the memory budget shared by the conversions running in the JVM. See {@link MemoryGovernor}.
+     */
+    @Data
+    public static class Memory {
+        /** Reserve each conversion's estimated memory from the budget, shrinking row groups or waiting when it is used up. */
+        private boolean enabled = false;
+        /** Memory shared by running conversions. Unset uses heap-fraction of the maximum heap. */
+        private DataSize budget;
+        /** Share of the maximum heap used as the budget when none is set. */
+        private double heapFraction = 0.6;
+        /** Smallest row group a conversion is shrunk to before it waits for memory instead. */
+        private DataSize minRowGroupSize = DataSize.ofMegabytes(16);
+        /** Longest a conversion waits for memory before it fails. */
+        private Duration acquireTimeout = Duration.ofMinutes(5);
+    }
+
+    /**
+     * Default Parquet writer settings, for file types without a {@code /schemas/<type>.writer.json}
+     * profile. See {@link WriterProfile} for the profile format.
+     */
+    @Data
+    public static class Writer {
+        /** Compression codec of the column chunks. */
+        private CompressionCodecName codec = CompressionCodecName.SNAPPY;
+        /** Codec-specific level for ZSTD (1-22) or GZIP (1-9); unset uses the codec's default. */
+        private Integer compressionLevel;
+        /** Target size of a row group, buffered in memory before it is flushed. */
+        private DataSize rowGroupSize = DataSize.ofMegabytes(128);
+        /** Target size of a data page within a column chunk. */
+        private DataSize pageSize = DataSize.ofMegabytes(1);
+        /** Dictionary size above which a column falls back to plain encoding. */
+        private DataSize dictionaryPageSize = DataSize.ofMegabytes(1);
+        /** Dictionary-encode columns unless a profile turns it off for them. */
+        private boolean dictionaryEnabled = true;
+        /** Prefix of the source read when evaluating writer profiles against a sample. */
+        private DataSize evaluationSampleSize = DataSize.ofMegabytes(32);
+    }
+
+    /**
+     * Configures the shared S3 clients. The connection pool is shared by every concurrent job, so it
+     * should cover batch concurrency times the download and upload requests each job keeps in flight.
+     */
+    @Data
+    public static class S3 {
+        /** AWS region of the buckets. */
+        private String region = "us-east-1";
+        /** Endpoint to use instead of the regional AWS endpoint, e.g. a local S3 stand-in. */
+        private String endpointOverride;
+        /** Address buckets as path segments rather than host names; most S3 stand-ins need this. */
+        private boolean pathStyleAccess = false;
+        /** Maximum pooled HTTP connections. */
+        private int maxConnections = 200;
+        /** Time allowed to establish a connection. */
+        private Duration connectionTimeout = Duration.ofSeconds(5);
+        /** Time allowed between bytes on an open connection. */
+        private Duration socketTimeout = Duration.ofSeconds(60);
+        /** Time to wait for a free pooled connection before failing the request. */
+        private Duration connectionAcquisitionTimeout = Duration.ofSeconds(30);
+        /** Time allowed for a single attempt of an API call; zero leaves it unbounded. */
+        private Duration apiCallAttemptTimeout = Duration.ZERO;
+        /** Retries after the first attempt of a failed request. */
+        private int maxRetries = 5;
+        /** Delay before the first retry; later retries back off exponentially with full jitter. */
+        private Duration retryBaseDelay = Duration.ofMillis(100);
+        /** Upper bound of the delay between retries. */
+        private Duration retryMaxBackoff = Duration.ofSeconds(20);
+
+        private Async async = new Async();
+    }
+
+    /**
+     * Configures the optional CRT-based async client and transfer manager. When enabled, source
+     * objects are downloaded and Parquet outputs uploaded through the transfer manager, which splits
+     * both into parallel part requests natively.
+     */
+    @Data
+    public static class Async {
+        /** Create the async client and transfer manager and route GETs and PUTs through them. */
+        private boolean enabled = false;
+        /** Throughput the CRT client sizes its connections for, in gigabits per second. */
+        private double targetThroughputGbps = 10.0;
+        /** Size of each part of a multipart upload or ranged download. */
+        private DataSize minimumPartSize = DataSize.ofMegabytes(8);
+        /** Maximum concurrent requests; zero lets the CRT client derive it from the target throughput. */
+        private int maxConcurrency = 0;
+    }
+}
@@ -0,0 +1,96 @@
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Bounded cache of the cell values of one CSV column, keyed by their encoded bytes, so a value seen
+ * before is returned as the same {@code String} without decoding or allocating anything.
+ *
+ * <p>Holds at most {@code capacity} values of up to {@value #MAX_VALUE_BYTES} bytes each; once full,
+ * new values are decoded but not kept. A column whose values mostly miss after that (identifiers,
+ * free text) stops being looked up at all, so it pays for hashing only until then.
+ *
+ * <p>Not thread-safe; each reader keeps its own per column.
+ */
+final class CellInterner {
+
+    static final int MAX_VALUE_BYTES = 64;
+    /** Lookups per hit-rate check once the cache is full. */
+    private static final int SAMPLE_WINDOW = 4096;
+
+    private final Charset charset;
+    private final int capacity;
+    private final int mask;
+    private final byte[][] keys;
+    private final String[] values;
+    private int size;
+    private int windowLookups;
+    private int windowHits;
+    private boolean enabled = true;
+
+    CellInterner(Charset charset, int capacity) {
+        this.charset = charset;
+        this.capacity = capacity;
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1;
+        this.mask = tableSize - 1;
+        this.keys = new byte[tableSize][];
+        this.values = new String[tableSize];
+    }
+
+    /**
+     * @return the value of {@code bytes[from, to)}, the same instance for equal bytes while cached
+     */
+    String intern(byte[] bytes, int from, int to) {
+        int length = to - from;
+        if (!enabled || length > MAX_VALUE_BYTES) {
+            return new String(bytes, from, length, charset);
+        }
+        int hash = 1;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        byte[] key;
+        while ((key = keys[slot]) != null) {
+            if (Arrays.equals(key, 0, key.length, bytes, from, to)) {
+                sample(true);
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        String value = new String(bytes, from, length, charset);
+        if (size < capacity) {
+            keys[slot] = Arrays.copyOfRange(bytes, from, to);
+            values[slot] = value;
+            size++;
+        } else {
+            sample(false);
+        }
+        return value;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Once the cache is full, switches it off if fewer than half the lookups of a window hit.
+     */
+    private void sample(boolean hit) {
+        if (size < capacity) {
+            return;
+        }
+        windowLookups++;
+        if (hit) {
+            windowHits++;
+        }
+        if (windowLookups == SAMPLE_WINDOW) {
+            if (windowHits * 2 < windowLookups) {
+                enabled = false;
+                Arrays.fill(keys, null);
+                Arrays.fill(values, null);
+            }
+            windowLookups = 0;
+            windowHits = 0;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+/**
+ * Converts the raw text of a CSV cell into the value written for one Avro field.
+ */
+@FunctionalInterface
+public interface ColumnConverter {
+
+    /**
+     * @param value the raw, non-null CSV cell
+     * @return the value to put into the Avro record
+     * @throws IllegalArgumentException if the text is not a valid value for the field
+     */
+    Object convert(String value);
+}
@@ -0,0 +1,307 @@
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+import org.apache.avro.Conversions;
+import org.apache.avro.LogicalType;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+
+/**
+ * Compiles a {@link ColumnConverter} for each Avro field type, so CSV text is written as native
+ * Parquet INT32/INT64/DOUBLE/DECIMAL/DATE/TIMESTAMP columns instead of BINARY strings.
+ *
+ * <p>Parsers are hand-written over the characters of the cell: no regular expressions, no
+ * formatters and no intermediate objects for ints, longs, dates and timestamps. Empty cells of
+ * non-string fields are written as null. Timestamps without an offset are read as UTC.
+ */
+public final class ColumnConverters {
+
+    static final String DATE_PATTERN = "yyyy-MM-dd";
+    static final String TIMESTAMP_PATTERN = "yyyy-MM-dd'T'HH:mm:ss";
+
+    private static final long DAYS_0000_TO_1970 = 719_528L;
+    private static final long SECONDS_PER_DAY = 86_400L;
+
+    private static final ColumnConverter STRING = value -> value;
+    private static final ColumnConverter INT = value -> value.isEmpty() ? null : Integer.parseInt(value.trim());
+    private static final ColumnConverter LONG = value -> value.isEmpty() ? null : Long.parseLong(value.trim());
+    private static final ColumnConverter FLOAT = value -> value.isEmpty() ? null : Float.parseFloat(value);
+    private static final ColumnConverter DOUBLE = value -> value.isEmpty() ? null : Double.parseDouble(value);
+    private static final ColumnConverter BOOLEAN = value -> value.isEmpty() ? null : parseBoolean(value);
+    private static final ColumnConverter DATE = value -> value.isEmpty() ? null : parseEpochDay(value);
+    private static final ColumnConverter TIMESTAMP_MILLIS = value -> value.isEmpty() ? null : parseEpochMicros(value) / 1_000L;
+    private static final ColumnConverter TIMESTAMP_MICROS = value -> value.isEmpty() ? null : parseEpochMicros(value);
+
+    private ColumnConverters() {
+    }
+
+    /**
+     * Resolves the converter for a field, looking through {@code ["null", T]} unions.
+     *
+     * @throws IllegalArgumentException if the field type cannot be read from CSV text
+     */
+    public static ColumnConverter forSchema(Schema fieldSchema) {
+        Schema schema = nonNullType(fieldSchema);
+        LogicalType logicalType = schema.getLogicalType();
+
+        if (logicalType instanceof LogicalTypes.Decimal) {
+            return decimal(schema, (LogicalTypes.Decimal) logicalType);
+        }
+        if (logicalType instanceof LogicalTypes.Date) {
+            return DATE;
+        }
+        if (logicalType instanceof LogicalTypes.TimestampMillis || logicalType instanceof LogicalTypes.LocalTimestampMillis) {
+            return TIMESTAMP_MILLIS;
+        }
+        if (logicalType instanceof LogicalTypes.TimestampMicros || logicalType instanceof LogicalTypes.LocalTimestampMicros) {
+            return TIMESTAMP_MICROS;
+        }
+
+        switch (schema.getType()) {
+            case STRING:
+            case ENUM:
+                return STRING;
+            case INT:
+                return INT;
+            case LONG:
+                return LONG;
+            case FLOAT:
+                return FLOAT;
+            case DOUBLE:
+                return DOUBLE;
+            case BOOLEAN:
+                return BOOLEAN;
+            case BYTES:
+                return value -> ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+            default:
+                throw new IllegalArgumentException("Unsupported Avro type for CSV conversion: " + fieldSchema);
+        }
+    }
+
+    /**
+     * @return true if the field is an Avro {@code string}, either directly or as a union branch
+     */
+    public static boolean isText(Schema fieldSchema) {
+        return nonNullType(fieldSchema).getType() == Schema.Type.STRING;
+    }
+
+    /**
+     * @return true if the field accepts null, either directly or as a union branch
+     */
+    public static boolean isNullable(Schema fieldSchema) {
+        if (fieldSchema.getType() == Schema.Type.NULL) {
+            return true;
+        }
+        if (fieldSchema.getType() == Schema.Type.UNION) {
+            return fieldSchema.getTypes().stream().anyMatch(branch -> branch.getType() == Schema.Type.NULL);
+        }
+        return false;
+    }
+
+    /**
+     * @return the load date in the representation of the field: epoch day for {@code date}, text otherwise
+     */
+    public static Object dateStamp(Schema fieldSchema, LocalDate loadDate) {
+        LogicalType logicalType = nonNullType(fieldSchema).getLogicalType();
+        if (logicalType instanceof LogicalTypes.Date) {
+            return (int) loadDate.toEpochDay();
+        }
+        return loadDate.format(DateTimeFormatter.ofPattern(DATE_PATTERN));
+    }
+
+    /**
+     * @param loadTime the load time on the JVM's clock, in its default time zone
+     * @return the load time in the representation of the field: epoch millis/micros for timestamps, text otherwise.
+     *         {@code timestamp-*} fields get the instant of the load time; {@code local-timestamp-*} fields get
+     *         its wall-clock time, encoded as if it were UTC
+     */
+    public static Object timestampStamp(Schema fieldSchema, LocalDateTime loadTime) {
+        LogicalType logicalType = nonNullType(fieldSchema).getLogicalType();
+        if (logicalType instanceof LogicalTypes.TimestampMillis) {
+            return loadTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+        if (logicalType instanceof LogicalTypes.LocalTimestampMillis) {
+            return loadTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+        }
+        if (logicalType instanceof LogicalTypes.TimestampMicros) {
+            return epochMicros(loadTime.atZone(ZoneId.systemDefault()).toInstant());
+        }
+        if (logicalType instanceof LogicalTypes.LocalTimestampMicros) {
+            return epochMicros(loadTime.toInstant(ZoneOffset.UTC));
+        }
+        if (logicalType instanceof LogicalTypes.Date) {
+            return (int) loadTime.toLocalDate().toEpochDay();
+        }
+        return loadTime.format(DateTimeFormatter.ofPattern(TIMESTAMP_PATTERN));
+    }
+
+    private static long epochMicros(Instant instant) {
+        return instant.getEpochSecond() * 1_000_000L + instant.getNano() / 1_000;
+    }
+
+    private static Schema nonNullType(Schema fieldSchema) {
+        if (fieldSchema.getType() != Schema.Type.UNION) {
+            return fieldSchema;
+        }
+        Schema nonNull = null;
+        for (Schema branch : fieldSchema.getTypes()) {
+            if (branch.getType() != Schema.Type.NULL) {
+                if (nonNull != null) {
+                    throw new IllegalArgumentException("Unsupported union for CSV conversion: " + fieldSchema);
+                }
+                nonNull = branch;
+            }
+        }
+        if (nonNull == null) {
+            throw new IllegalArgumentException("Unsupported union for CSV conversion: " + fieldSchema);
+        }
+        return nonNull;
+    }
+
+    private static ColumnConverter decimal(Schema schema, LogicalTypes.Decimal decimal) {
+        int scale = decimal.getScale();
+        int precision = decimal.getPrecision();
+        Conversions.DecimalConversion conversion = new Conversions.DecimalConversion();
+        boolean fixed = schema.getType() == Schema.Type.FIXED;
+
+        return value -> {
+            if (value.isEmpty()) {
+                return null;
+            }
+            BigDecimal number = new BigDecimal(value.trim()).setScale(scale, RoundingMode.UNNECESSARY);
+            if (number.precision() > precision) {
+                throw new IllegalArgumentException("Decimal " + value + " exceeds precision " + precision);
+            }
+            return fixed ? conversion.toFixed(number, schema, decimal) : conversion.toBytes(number, schema, decimal);
+        };
+    }
+
+    static boolean parseBoolean(String value) {
+        if (value.length() == 1) {
+            switch (value.charAt(0)) {
+                case '1': case 'Y': case 'y': case 'T': case 't':
+                    return true;
+                case '0': case 'N': case 'n': case 'F': case 'f':
+                    return false;
+                default:
+                    break;
+            }
+        } else if ("true".equalsIgnoreCase(value) || "yes".equalsIgnoreCase(value)) {
+            return true;
+        } else if ("false".equalsIgnoreCase(value) || "no".equalsIgnoreCase(value)) {
+            return false;
+        }
+        throw new IllegalArgumentException("Not a boolean: " + value);
+    }
+
+    /**
+     * Parses {@code yyyy-MM-dd} into days since 1970-01-01.
+     */
+    static int parseEpochDay(String value) {
+        if (value.length() != 10 || value.charAt(4) != '-' || value.charAt(7) != '-') {
+            throw new IllegalArgumentException("Not a yyyy-MM-dd date: " + value);
+        }
+        return (int) epochDay(digits(value, 0, 4), digits(value, 5, 7), digits(value, 8, 10), value);
+    }
+
+    /**
+     * Parses {@code yyyy-MM-dd'T'HH:mm:ss[.fraction][Z]} (a space may replace the {@code T}) into
+     * microseconds since the epoch, reading the value as UTC.
+     */
+    static long parseEpochMicros(String value) {
+        int length = value.length();
+        if (length > 0 && value.charAt(length - 1) == 'Z') {
+            length--;
+        }
+        if (length == 10) {
+            return parseEpochDay(value.substring(0, 10)) * SECONDS_PER_DAY * 1_000_000L;
+        }
+        if (length < 19 || value.charAt(4) != '-' || value.charAt(7) != '-'
+                || (value.charAt(10) != 'T' && value.charAt(10) != ' ') || value.charAt(13) != ':' || value.charAt(16) != ':') {
+            throw new IllegalArgumentException("Not a yyyy-MM-dd'T'HH:mm:ss timestamp: " + value);
+        }
+        long day = epochDay(digits(value, 0, 4), digits(value, 5, 7), digits(value, 8, 10), value);
+        int hour = digits(value, 11, 13);
+        int minute = digits(value, 14, 16);
+        int second = digits(value, 17, 19);
+        if (hour > 23 || minute > 59 || second > 59) {
+            throw new IllegalArgumentException("Invalid time of day: " + value);
+        }
+
+        long micros = 0;
+        if (length > 19) {
+            if (value.charAt(19) != '.' || length == 20 || length > 29) {
+                throw new IllegalArgumentException("Invalid fraction of second: " + value);
+            }
+            int fractionDigits = 0;
+            for (int i = 20; i < length; i++, fractionDigits++) {
+                int digit = value.charAt(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    throw new IllegalArgumentException("Invalid fraction of second: " + value);
+                }
+                if (fractionDigits < 6) {
+                    micros = micros * 10 + digit;
+                }
+            }
+            for (; fractionDigits < 6; fractionDigits++) {
+                micros *= 10;
+            }
+        }
+        return ((day * SECONDS_PER_DAY) + hour * 3_600L + minute * 60L + second) * 1_000_000L + micros;
+    }
+
+    private static int digits(String value, int from, int to) {
+        int result = 0;
+        for (int i = from; i < to; i++) {
+            int digit = value.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException("Expected a digit at position " + i + ": " + value);
+            }
+            result = result * 10 + digit;
+        }
+        return result;
+    }
+
+    /**
+     * Same arithmetic as {@link LocalDate#toEpochDay()} without allocating a {@link LocalDate}.
+     */
+    private static long epochDay(int year, int month, int day, String value) {
+        if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            throw new IllegalArgumentException("Invalid date: " + value);
+        }
+        long y = year;
+        long total = 365 * y + (y + 3) / 4 - (y + 99) / 100 + (y + 399) / 400;
+        total += (367L * month - 362) / 12;
+        total += day - 1;
+        if (month > 2) {
+            total--;
+            if (!isLeapYear(year)) {
+                total--;
+            }
+        }
+        return total - DAYS_0000_TO_1970;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return isLeapYear(year) ? 29 : 28;
+            case 4: case 6: case 9: case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+}
@@ -0,0 +1,144 @@
+import lombok.Builder;
+import lombok.Value;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * How far a conversion into part files got: the parts uploaded so far and where in the source the
+ * rows after them start. A retry of a failed conversion resumes from it instead of from byte 0.
+ *
+ * <p>The checkpoint is stored as JSON next to the destination, at the destination key without
+ * extension plus {@code snapshot.checkpoint.suffix}, and deleted once the conversion completes:
+ * <pre>
+ * {
+ *   "sourceBucketName": "source-bucket",
+ *   "sourceKey": "gbi/party.csv",
+ *   "sourceETag": "\"9b2cf535f27731c974343645a3985328\"",
+ *   "sourceSize": 4294967296,
+ *   "schemaVersion": "c4f3a1d29e0b7765",
+ *   "destinationBucketName": "destination-bucket",
+ *   "destinationPrefix": "gbi-report/party",
+ *   "headerLength": 58,
+ *   "sourceOffset": 1073741901,
+ *   "rowsRead": 12000000,
+ *   "parts": [
+ *     { "key": "gbi-report/party/part-00000.parquet", "rows": 6000000, "bytes": 536903680, "eTag": "\"...\"" },
+ *     { "key": "gbi-report/party/part-00001.parquet", "rows": 5999998, "bytes": 536887296, "eTag": "\"...\"" }
+ *   ],
+ *   "updatedAt": "2024-05-01T06:00:00Z"
+ * }
+ * </pre>
+ * Offsets are in bytes of the source object as stored, so only uncompressed sources can be resumed.
+ */
+@Value
+@Builder(toBuilder = true)
+public class ConversionCheckpoint {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    String sourceBucketName;
+    String sourceKey;
+    String sourceETag;
+    long sourceSize;
+    String schemaVersion;
+    String destinationBucketName;
+    String destinationPrefix;
+    /** Bytes of the source up to the end of the header row. */
+    long headerLength;
+    /** Where the first row not in any of the parts starts. */
+    long sourceOffset;
+    /** Rows read before {@code sourceOffset}, including rejected ones. */
+    long rowsRead;
+    @Builder.Default
+    List<ParquetPart> parts = List.of();
+    String updatedAt;
+
+    /**
+     * @return the rows written to the parts
+     */
+    public long getRowsWritten() {
+        return parts.stream().mapToLong(ParquetPart::getRows).sum();
+    }
+
+    /**
+     * @return whether this checkpoint records a conversion of the same source version, with the same
+     *         schema, to the same destination as the other, so that the other can resume from it
+     */
+    public boolean isSameConversion(ConversionCheckpoint other) {
+        return other != null
+                && sourceSize == other.sourceSize
+                && Objects.equals(sourceBucketName, other.sourceBucketName)
+                && Objects.equals(sourceKey, other.sourceKey)
+                && Objects.equals(sourceETag, other.sourceETag)
+                && Objects.equals(schemaVersion, other.schemaVersion)
+                && Objects.equals(destinationBucketName, other.destinationBucketName)
+                && Objects.equals(destinationPrefix, other.destinationPrefix);
+    }
+
+    public String toJson() throws IOException {
+        ObjectNode root = OBJECT_MAPPER.createObjectNode();
+        root.put("sourceBucketName", sourceBucketName);
+        root.put("sourceKey", sourceKey);
+        root.put("sourceETag", sourceETag);
+        root.put("sourceSize", sourceSize);
+        root.put("schemaVersion", schemaVersion);
+        root.put("destinationBucketName", destinationBucketName);
+        root.put("destinationPrefix", destinationPrefix);
+        root.put("headerLength", headerLength);
+        root.put("sourceOffset", sourceOffset);
+        root.put("rowsRead", rowsRead);
+        ArrayNode partsNode = root.putArray("parts");
+        for (ParquetPart part : parts) {
+            partsNode.addObject()
+                    .put("key", part.getKey())
+                    .put("rows", part.getRows())
+                    .put("bytes", part.getBytes())
+                    .put("eTag", part.getETag());
+        }
+        root.put("updatedAt", updatedAt);
+        return OBJECT_MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(root);
+    }
+
+    /**
+     * Parses a checkpoint written by {@link #toJson()}.
+     *
+     * @throws IOException if the JSON cannot be parsed or is not an object
+     */
+    public static ConversionCheckpoint parse(String json) throws IOException {
+        JsonNode root = OBJECT_MAPPER.readTree(json);
+        if (root == null || !root.isObject()) {
+            throw new IOException("Conversion checkpoint must be a JSON object");
+        }
+        String destinationBucketName = text(root, "destinationBucketName");
+        List<ParquetPart> parts = new ArrayList<>();
+        for (JsonNode part : root.path("parts")) {
+            parts.add(new ParquetPart(parts.size(), destinationBucketName, text(part, "key"), part.path("rows").asLong(),
+                    part.path("bytes").asLong(), text(part, "eTag")));
+        }
+        return ConversionCheckpoint.builder()
+                .sourceBucketName(text(root, "sourceBucketName"))
+                .sourceKey(text(root, "sourceKey"))
+                .sourceETag(text(root, "sourceETag"))
+                .sourceSize(root.path("sourceSize").asLong())
+                .schemaVersion(text(root, "schemaVersion"))
+                .destinationBucketName(destinationBucketName)
+                .destinationPrefix(text(root, "destinationPrefix"))
+                .headerLength(root.path("headerLength").asLong())
+                .sourceOffset(root.path("sourceOffset").asLong())
+                .rowsRead(root.path("rowsRead").asLong())
+                .parts(List.copyOf(parts))
+                .updatedAt(text(root, "updatedAt"))
+                .build();
+    }
+
+    private static String text(JsonNode node, String field) {
+        return node.hasNonNull(field) ? node.get(field).asText() : null;
+    }
+}
@@ -0,0 +1,190 @@
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+/**
+ * Writes the {@link ConversionCheckpoint} of a conversion into part files each time a part has been
+ * uploaded, and tells a {@link RollingParquetWriter} which parts a resumed conversion already has.
+ *
+ * <p>The position after a part is taken from the {@link FastCsvTokenizer} when the part is rolled
+ * over, on the writing thread; the checkpoint is written once the part's upload completes, on the
+ * thread that closed it. Parts may complete out of order, so a checkpoint only ever covers an
+ * unbroken run of parts from the first. Failing to write a checkpoint is logged, not thrown: the
+ * conversion itself can still complete, and a retry merely resumes from an earlier part.
+ */
+@Slf4j
+public class ConversionCheckpointer {
+
+    private final S3Client s3Client;
+    private final String key;
+    private final Map<Integer, Completed> completedByPart = new TreeMap<>();
+
+    private ConversionCheckpoint checkpoint;
+    private FastCsvTokenizer tokenizer;
+    /** Added to the tokenizer offset to give the source offset, for readers that skip to a checkpoint. */
+    private long offsetShift;
+    private ConversionMetrics metrics;
+
+    /**
+     * @param checkpoint the checkpoint to resume from, or one without parts for a new conversion
+     * @param key the key the checkpoint is stored at, in the destination bucket
+     */
+    public ConversionCheckpointer(S3Client s3Client, ConversionCheckpoint checkpoint, String key) {
+        this.s3Client = s3Client;
+        this.checkpoint = checkpoint;
+        this.key = key;
+    }
+
+    /**
+     * @return the checkpoint last written, or the one resumed from
+     */
+    public synchronized ConversionCheckpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * @return whether the conversion resumes after parts uploaded by an earlier attempt
+     */
+    public boolean isResumed() {
+        return !getCheckpoint().getParts().isEmpty();
+    }
+
+    /**
+     * Follows the position of a tokenizer that reads the header row, then either the whole source or,
+     * when resuming, the source from {@link ConversionCheckpoint#getSourceOffset()}.
+     *
+     * @return a reader over the tokenizer that notes the header length once the header is read
+     */
+    public CsvRowReader track(FastCsvTokenizer tokenizer, ConversionMetrics metrics) {
+        this.tokenizer = tokenizer;
+        this.metrics = metrics;
+        this.offsetShift = checkpoint.getParts().isEmpty() ? 0 : checkpoint.getSourceOffset() - checkpoint.getHeaderLength();
+        return new CsvRowReader() {
+            private boolean headerRead;
+
+            @Override
+            public String[] readNext() throws IOException {
+                String[] row = tokenizer.readNext();
+                if (!headerRead) {
+                    headerRead = true;
+                    if (checkpoint.getParts().isEmpty()) {
+                        checkpoint = checkpoint.toBuilder().headerLength(tokenizer.getOffset()).sourceOffset(tokenizer.getOffset()).build();
+                    }
+                }
+                return row;
+            }
+
+            @Override
+            public void project(boolean[] projectedColumns) {
+                tokenizer.project(projectedColumns);
+            }
+
+            @Override
+            public void close() throws IOException {
+                tokenizer.close();
+            }
+        };
+    }
+
+    /**
+     * Notes where the rows after a full part start. Called on the writing thread, after the last
+     * record of the part was written and before the next row is read.
+     */
+    public Position mark() {
+        return new Position(tokenizer.getOffset() + offsetShift, metrics.getRowsRead());
+    }
+
+    /**
+     * Records an uploaded part and, if it completes an unbroken run from the first part, writes the
+     * checkpoint covering that run.
+     */
+    public synchronized void partCompleted(ParquetPart part, Position position) {
+        completedByPart.put(part.getPartNumber(), new Completed(part, position));
+        int nextPart = checkpoint.getParts().size();
+        if (!completedByPart.containsKey(nextPart)) {
+            return;
+        }
+        List<ParquetPart> parts = new ArrayList<>(checkpoint.getParts());
+        Completed last = null;
+        Completed completed;
+        while ((completed = completedByPart.remove(nextPart)) != null) {
+            parts.add(completed.part);
+            last = completed;
+            nextPart++;
+        }
+        checkpoint = checkpoint.toBuilder()
+                .parts(List.copyOf(parts))
+                .sourceOffset(last.position.getSourceOffset())
+                .rowsRead(last.position.getRowsRead())
+                .updatedAt(Instant.now().toString())
+                .build();
+        try {
+            s3Client.putObject(PutObjectRequest.builder()
+                    .bucket(checkpoint.getDestinationBucketName())
+                    .key(key)
+                    .contentType("application/json")
+                    .build(), RequestBody.fromString(checkpoint.toJson(), StandardCharsets.UTF_8));
+            log.info("Checkpoint after {} Parquet parts at source offset {} written to {}/{}",
+                    parts.size(), checkpoint.getSourceOffset(), checkpoint.getDestinationBucketName(), key);
+        } catch (IOException | SdkException e) {
+            log.warn("Could not write conversion checkpoint to {}/{}: {}", checkpoint.getDestinationBucketName(), key, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Deletes the checkpoint once the conversion has completed. A failure is logged: a leftover
+     * checkpoint is ignored once the source changes, and until then only makes a reconversion
+     * resume from it.
+     */
+    public void completed() {
+        delete();
+    }
+
+    /**
+     * Deletes the checkpoint of a conversion that can no longer resume from it, e.g. because the source
+     * changed after it was matched, so that the next attempt starts from the beginning of the source.
+     */
+    public void discard() {
+        log.warn("Discarding conversion checkpoint {}/{}", checkpoint.getDestinationBucketName(), key);
+        delete();
+    }
+
+    private void delete() {
+        try {
+            s3Client.deleteObject(DeleteObjectRequest.builder().bucket(checkpoint.getDestinationBucketName()).key(key).build());
+        } catch (SdkException e) {
+            log.warn("Could not delete conversion checkpoint {}/{}: {}", checkpoint.getDestinationBucketName(), key, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Where the rows after a part start in the source, and how many rows were read before them.
+     */
+    @Value
+    public static class Position {
+        long sourceOffset;
+        long rowsRead;
+    }
+
+    private static final class Completed {
+        private final ParquetPart part;
+        private final Position position;
+
+        private Completed(ParquetPart part, Position position) {
+            this.part = part;
+            this.position = position;
+        }
+    }
+}
@@ -0,0 +1,269 @@
+import lombok.extern.slf4j.Slf4j;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.avro.Schema;
+
+/**
+ * Per-job counters and timers for a single CSV to Parquet conversion.
+ *
+ * <p>Hot-path updates only touch plain fields owned by the converting thread; values are published
+ * to the Micrometer registry in bulk when the job finishes, so the row loop pays no metering cost.
+ * The download counters are the exception: the source may be read ahead on another thread, so they
+ * are atomic.
+ */
+@Slf4j
+public class ConversionMetrics {
+
+    static final String ROWS_READ = "snapshot.rows.read";
+    static final String ROWS_WRITTEN = "snapshot.rows.written";
+    static final String ROWS_REJECTED = "snapshot.rows.rejected";
+    static final String NULL_FIELDS = "snapshot.fields.null";
+    static final String UNPARSABLE_FIELDS = "snapshot.fields.unparsable";
+    static final String BYTES_DOWNLOADED = "snapshot.bytes.downloaded";
+    static final String BYTES_UPLOADED = "snapshot.bytes.uploaded";
+    static final String PHASE_TIMER = "snapshot.phase";
+
+    private final MeterRegistry meterRegistry;
+    private final String fileType;
+    private final long progressRowInterval;
+    private final long progressTimeIntervalNanos;
+    private final long startNanos = System.nanoTime();
+
+    private long rowsRead;
+    private long rowsWritten;
+    private long rowsRejected;
+    private final AtomicLong bytesDownloaded = new AtomicLong();
+    private long bytesUploaded;
+    private final AtomicLong downloadNanos = new AtomicLong();
+    private long encodeNanos;
+    private long uploadNanos;
+    private long lastProgressNanos = startNanos;
+    private long[] nullsByField = new long[0];
+    private long[] unparsableByField = new long[0];
+    private List<Schema.Field> fields = List.of();
+    private volatile DecodeAheadInputStream readAhead;
+
+    public ConversionMetrics(MeterRegistry meterRegistry, String fileType, SnapshotProperties.Progress progress) {
+        this.meterRegistry = meterRegistry;
+        this.fileType = fileType;
+        this.progressRowInterval = Math.max(1, progress.getRowInterval());
+        this.progressTimeIntervalNanos = progress.getTimeInterval().toNanos();
+    }
+
+    /**
+     * Sizes the per-column null counters for the schema being written.
+     */
+    public void trackFields(Schema avroSchema) {
+        this.fields = avroSchema.getFields();
+        this.nullsByField = new long[fields.size()];
+        this.unparsableByField = new long[fields.size()];
+    }
+
+    /**
+     * @return per-field-position null counters, filled in by {@link CsvProjectionPlan#fill}
+     */
+    public long[] getNullsByField() {
+        return nullsByField;
+    }
+
+    /**
+     * @return per-field-position counters of cells that did not parse as their schema type
+     */
+    public long[] getUnparsableByField() {
+        return unparsableByField;
+    }
+
+    /**
+     * Wraps the source stream so that bytes read and time spent blocked on S3 are recorded. The
+     * stream may be read on another thread than the one converting.
+     */
+    public InputStream countDownloaded(InputStream source) {
+        return new FilterInputStream(source) {
+            @Override
+            public int read() throws IOException {
+                long start = System.nanoTime();
+                int value = super.read();
+                downloadNanos.addAndGet(System.nanoTime() - start);
+                if (value >= 0) {
+                    bytesDownloaded.incrementAndGet();
+                }
+                return value;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                long start = System.nanoTime();
+                int count = super.read(buffer, offset, length);
+                downloadNanos.addAndGet(System.nanoTime() - start);
+                if (count > 0) {
+                    bytesDownloaded.addAndGet(count);
+                }
+                return count;
+            }
+        };
+    }
+
+    /**
+     * Notes the stream that reads the source ahead of the parser, whose buffered chunks
+     * {@link #getChunksReadAhead()} reports.
+     */
+    public void trackReadAhead(DecodeAheadInputStream readAhead) {
+        this.readAhead = readAhead;
+    }
+
+    /**
+     * @return the chunks of the source read ahead and not yet parsed; zero without read-ahead
+     */
+    public int getChunksReadAhead() {
+        DecodeAheadInputStream stream = readAhead;
+        return stream == null ? 0 : stream.getBufferedChunks();
+    }
+
+    public void rowRead() {
+        rowsRead++;
+    }
+
+    /**
+     * Records a row that was read but not written because a value did not parse.
+     */
+    public void rowRejected() {
+        rowsRejected++;
+    }
+
+    /**
+     * Records a written row and emits a progress log every configured number of rows or seconds.
+     */
+    public void rowWritten() {
+        rowsWritten++;
+        if (rowsWritten % progressRowInterval == 0 || (rowsWritten & 0x3FF) == 0 && System.nanoTime() - lastProgressNanos >= progressTimeIntervalNanos) {
+            logProgress();
+        }
+    }
+
+    /**
+     * Adds the counts of a chunk converted on another thread. Progress is logged as for
+     * {@link #rowWritten()}.
+     */
+    public synchronized void merge(long chunkRowsRead, long chunkRowsWritten, long[] chunkNullsByField, long[] chunkUnparsableByField,
+                                   long chunkBytesUploaded, long chunkUploadNanos) {
+        rowsRead += chunkRowsRead;
+        long previousRowsWritten = rowsWritten;
+        rowsWritten += chunkRowsWritten;
+        rowsRejected += chunkRowsRead - chunkRowsWritten;
+        for (int position = 0; position < chunkNullsByField.length; position++) {
+            nullsByField[position] += chunkNullsByField[position];
+            unparsableByField[position] += chunkUnparsableByField[position];
+        }
+        bytesUploaded += chunkBytesUploaded;
+        uploadNanos += chunkUploadNanos;
+        if (rowsWritten / progressRowInterval != previousRowsWritten / progressRowInterval
+                || System.nanoTime() - lastProgressNanos >= progressTimeIntervalNanos) {
+            logProgress();
+        }
+    }
+
+    /**
+     * Records the wall time of the read-and-encode loop, less the time its reader was blocked on the
+     * source: waiting for chunks read ahead, or without read-ahead, the download itself. Download time
+     * on the read-ahead thread overlaps the encoding and is not subtracted.
+     */
+    public void encodeCompleted(long elapsedNanos) {
+        DecodeAheadInputStream stream = readAhead;
+        long blockedNanos = stream != null ? stream.getWaitNanos() : downloadNanos.get();
+        encodeNanos += Math.max(0, elapsedNanos - blockedNanos);
+    }
+
+    public void uploadCompleted(long bytes, long elapsedNanos) {
+        bytesUploaded += bytes;
+        uploadNanos += elapsedNanos;
+    }
+
+    public String getFileType() {
+        return fileType;
+    }
+
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    public long getRowsRejected() {
+        return rowsRejected;
+    }
+
+    public long getBytesDownloaded() {
+        return bytesDownloaded.get();
+    }
+
+    public long getBytesUploaded() {
+        return bytesUploaded;
+    }
+
+    /**
+     * @return the time spent blocked on reads of the source so far
+     */
+    public long getDownloadNanos() {
+        return downloadNanos.get();
+    }
+
+    /**
+     * Publishes the job totals to the meter registry and logs a one-line summary.
+     */
+    public synchronized void publish() {
+        long bytesDownloaded = this.bytesDownloaded.get();
+        long downloadNanos = this.downloadNanos.get();
+        counter(ROWS_READ).increment(rowsRead);
+        counter(ROWS_WRITTEN).increment(rowsWritten);
+        counter(ROWS_REJECTED).increment(rowsRejected);
+        counter(BYTES_DOWNLOADED).increment(bytesDownloaded);
+        counter(BYTES_UPLOADED).increment(bytesUploaded);
+        publishPerColumn(NULL_FIELDS, nullsByField);
+        publishPerColumn(UNPARSABLE_FIELDS, unparsableByField);
+        phaseTimer("download").record(downloadNanos, TimeUnit.NANOSECONDS);
+        phaseTimer("encode").record(encodeNanos, TimeUnit.NANOSECONDS);
+        phaseTimer("upload").record(uploadNanos, TimeUnit.NANOSECONDS);
+
+        log.info("Conversion metrics for {}: rows read = {}, rows written = {}, rows rejected = {}, bytes downloaded = {}, bytes uploaded = {}, download = {} ms, encode = {} ms, upload = {} ms",
+                fileType, rowsRead, rowsWritten, rowsRejected, bytesDownloaded, bytesUploaded,
+                TimeUnit.NANOSECONDS.toMillis(downloadNanos), TimeUnit.NANOSECONDS.toMillis(encodeNanos), TimeUnit.NANOSECONDS.toMillis(uploadNanos));
+    }
+
+    private void logProgress() {
+        long now = System.nanoTime();
+        lastProgressNanos = now;
+        double elapsedSeconds = Math.max(1, now - startNanos) / 1_000_000_000d;
+        log.info("Progress for {}: {} rows written, {} MB downloaded, {} rows/s",
+                fileType, rowsWritten, bytesDownloaded.get() / (1024 * 1024), (long) (rowsWritten / elapsedSeconds));
+    }
+
+    private void publishPerColumn(String name, long[] countsByField) {
+        for (int position = 0; position < countsByField.length; position++) {
+            if (countsByField[position] > 0) {
+                Counter.builder(name)
+                        .tag("fileType", fileType)
+                        .tag("column", fields.get(position).name())
+                        .register(meterRegistry)
+                        .increment(countsByField[position]);
+            }
+        }
+    }
+
+    private Counter counter(String name) {
+        return Counter.builder(name).tag("fileType", fileType).register(meterRegistry);
+    }
+
+    private Timer phaseTimer(String phase) {
+        return Timer.builder(PHASE_TIMER).tag("fileType", fileType).tag("phase", phase).register(meterRegistry);
+    }
+}
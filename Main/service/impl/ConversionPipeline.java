@@ -0,0 +1,417 @@
+import lombok.extern.slf4j.Slf4j;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+
+/**
+ * Runs the rows of a conversion through separate stages connected by bounded queues, so that the
+ * network and every core involved work at the same time instead of in turn:
+ * <ol>
+ *   <li>fetch: the source is read ahead of the parser into a {@link DecodeAheadInputStream}, on an
+ *       I/O thread;</li>
+ *   <li>parse: rows are tokenized into batches of {@code snapshot.pipeline.batch-rows}, on an I/O
+ *       thread, since it mostly waits for the fetch or for the queue below;</li>
+ *   <li>build: each batch is built into Avro records on the shared pool of
+ *       {@code snapshot.pipeline.build-threads};</li>
+ *   <li>encode: the records are written, in source order, on the calling thread, which owns the
+ *       Parquet writer;</li>
+ *   <li>upload: the writer's multipart upload, bounded by {@code snapshot.upload.max-in-flight-parts}.</li>
+ * </ol>
+ * Every hand-off is bounded, so a slow stage throttles the ones before it: an upload that falls behind
+ * blocks the encoder, which stops taking batches, which stops the parser, which stops reading ahead.
+ * At most {@code snapshot.pipeline.queue-capacity + 2} batches are held in memory.
+ *
+ * <p>I/O threads are virtual threads where the JVM has them (Java 21), otherwise daemon platform
+ * threads. The depth of each stage's input queue is exposed as the {@value #QUEUE_GAUGE} gauge while a
+ * conversion runs, and the time each stage spent working as the {@value #BUSY_TIMER} timer once it ends;
+ * the stage with the most busy time is the bottleneck.
+ */
+@Slf4j
+public class ConversionPipeline {
+
+    static final String QUEUE_GAUGE = "snapshot.pipeline.queue";
+    static final String BUSY_TIMER = "snapshot.pipeline.busy";
+    static final String WAIT_TIMER = "snapshot.pipeline.wait";
+
+    private final MeterRegistry meterRegistry;
+    private final SnapshotProperties snapshotProperties;
+    private final ExecutorService ioExecutor;
+    private final ExecutorService buildExecutor;
+    private final Set<Run> running = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param ioExecutor runs the parse stage of each conversion for as long as it lasts
+     * @param buildExecutor runs the build stage; its tasks never block, so it can be a small fixed pool
+     *                      shared by all conversions
+     */
+    public ConversionPipeline(MeterRegistry meterRegistry, SnapshotProperties snapshotProperties, ExecutorService ioExecutor,
+                              ExecutorService buildExecutor) {
+        this.meterRegistry = meterRegistry;
+        this.snapshotProperties = snapshotProperties;
+        this.ioExecutor = ioExecutor;
+        this.buildExecutor = buildExecutor;
+    }
+
+    /**
+     * Receives each converted record, on the calling thread.
+     */
+    @FunctionalInterface
+    public interface RecordSink {
+        void write(GenericRecord record) throws IOException;
+    }
+
+    /**
+     * Converts the remaining rows of the reader and hands them to the sink in source order. Row
+     * counts and null and unparsable counters are merged into the metrics after each batch is written.
+     * Returns once every row is written, or once a stage fails, after the parse stage has stopped
+     * reading, so the caller may close the reader.
+     *
+     * @param csvReader the reader, positioned after the header and projected for the plan
+     * @param plan the plan the records are built with
+     * @param currentDate the value stamped into EFF_DT
+     * @param currentTimestamp the value stamped into ETL_TS
+     * @throws IOException the failure of whichever stage failed first, as it was thrown there
+     */
+    public void run(CsvRowReader csvReader, CsvProjectionPlan plan, Object currentDate, Object currentTimestamp, RecordSink sink,
+                    ConversionMetrics metrics) throws IOException {
+        SnapshotProperties.Pipeline settings = snapshotProperties.getPipeline();
+        Run run = new Run(csvReader, plan, currentDate, currentTimestamp, metrics, Math.max(1, settings.getBatchRows()),
+                Math.max(1, settings.getQueueCapacity()), snapshotProperties.getCsv().getInternCapacity());
+        registerGauges(metrics.getFileType());
+        running.add(run);
+        try {
+            run.start();
+            run.encode(sink);
+        } finally {
+            run.stop();
+            running.remove(run);
+            publish(run);
+        }
+    }
+
+    /**
+     * Creates an executor that runs each task on a new virtual thread, or on a cached daemon platform
+     * thread on JVMs without virtual threads. Looked up reflectively, so the service still runs on Java 17.
+     */
+    public static ExecutorService newIoExecutor(String namePrefix) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 1L);
+            ThreadFactory threadFactory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, threadFactory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.info("Virtual threads are not available on Java {}. Pipeline I/O stages run on platform threads.", Runtime.version().feature());
+            AtomicInteger threadNumber = new AtomicInteger();
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, namePrefix + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private void registerGauges(String fileType) {
+        for (String stage : new String[]{"fetch", "build", "encode"}) {
+            // Registering again returns the existing gauge, which already sums every running conversion of the type
+            Gauge.builder(QUEUE_GAUGE, running, runs -> runs.stream()
+                            .filter(run -> run.metrics.getFileType().equals(fileType))
+                            .mapToInt(run -> run.queueDepth(stage))
+                            .sum())
+                    .tag("fileType", fileType)
+                    .tag("stage", stage)
+                    .description("Batches (chunks for fetch) waiting for the stage")
+                    .register(meterRegistry);
+        }
+    }
+
+    private void publish(Run run) {
+        String fileType = run.metrics.getFileType();
+        long fetchNanos = run.metrics.getDownloadNanos();
+        stageTimer(BUSY_TIMER, fileType, "fetch").record(fetchNanos, TimeUnit.NANOSECONDS);
+        stageTimer(BUSY_TIMER, fileType, "parse").record(run.parseNanos, TimeUnit.NANOSECONDS);
+        stageTimer(BUSY_TIMER, fileType, "build").record(run.buildNanos.get(), TimeUnit.NANOSECONDS);
+        stageTimer(BUSY_TIMER, fileType, "encode").record(run.encodeNanos, TimeUnit.NANOSECONDS);
+        stageTimer(WAIT_TIMER, fileType, "parse").record(run.parseBlockedNanos, TimeUnit.NANOSECONDS);
+        stageTimer(WAIT_TIMER, fileType, "encode").record(run.encodeWaitNanos, TimeUnit.NANOSECONDS);
+
+        log.info("Pipeline stages for {}: {} batches, fetch = {} ms, parse = {} ms (blocked {} ms), build = {} ms on {} threads, encode = {} ms (waiting {} ms)",
+                fileType, run.batches, TimeUnit.NANOSECONDS.toMillis(fetchNanos), TimeUnit.NANOSECONDS.toMillis(run.parseNanos),
+                TimeUnit.NANOSECONDS.toMillis(run.parseBlockedNanos), TimeUnit.NANOSECONDS.toMillis(run.buildNanos.get()),
+                snapshotProperties.getPipeline().getBuildThreads(), TimeUnit.NANOSECONDS.toMillis(run.encodeNanos),
+                TimeUnit.NANOSECONDS.toMillis(run.encodeWaitNanos));
+    }
+
+    private Timer stageTimer(String name, String fileType, String stage) {
+        return Timer.builder(name).tag("fileType", fileType).tag("stage", stage).register(meterRegistry);
+    }
+
+    /**
+     * Rows of one batch, the records built from them and the counters of the build. Batches are
+     * recycled once written, together with their records, row arrays and {@code Utf8} caches.
+     */
+    private static final class Batch {
+        final String[][] rows;
+        final GenericData.Record[] records;
+        final long[] nullsByField;
+        final long[] unparsableByField;
+        final Utf8Cache[] utf8ByField;
+        int size;
+        int built;
+
+        Batch(CsvProjectionPlan plan, int batchRows, int internCapacity) {
+            int fields = plan.getSchema().getFields().size();
+            rows = new String[batchRows][];
+            records = new GenericData.Record[batchRows];
+            nullsByField = new long[fields];
+            unparsableByField = new long[fields];
+            utf8ByField = plan.newUtf8Caches(internCapacity);
+        }
+    }
+
+    /**
+     * One conversion through the stages. The parse stage runs on an I/O thread, the build stage on the
+     * build pool, one task per batch, and the encode stage on the thread that called {@link #run}.
+     * Batches queue for the encoder as futures in source order, so they are written in that order
+     * however the build tasks finish; the end of the rows is queued as a future of null.
+     */
+    private final class Run {
+        private final CsvRowReader csvReader;
+        private final CsvProjectionPlan plan;
+        private final Object currentDate;
+        private final Object currentTimestamp;
+        private final ConversionMetrics metrics;
+        private final int batchRows;
+        private final int internCapacity;
+        private final BlockingQueue<Future<Batch>> built;
+        private final Queue<Batch> free = new ConcurrentLinkedQueue<>();
+        private final CountDownLatch parseStopped = new CountDownLatch(1);
+        private final AtomicInteger building = new AtomicInteger();
+        private final AtomicInteger awaitingEncode = new AtomicInteger();
+        private final AtomicLong buildNanos = new AtomicLong();
+
+        private boolean started;
+        private volatile boolean stopped;
+        // Guarded by this run; set while the parse stage runs, so that stopping can interrupt it
+        private Thread parseThread;
+        // Written by the parse thread, read once it has stopped
+        private long parseNanos;
+        private long parseBlockedNanos;
+        // Owned by the encoding thread
+        private long encodeNanos;
+        private long encodeWaitNanos;
+        private long batches;
+
+        Run(CsvRowReader csvReader, CsvProjectionPlan plan, Object currentDate, Object currentTimestamp, ConversionMetrics metrics,
+            int batchRows, int queueCapacity, int internCapacity) {
+            this.csvReader = csvReader;
+            this.plan = plan;
+            this.currentDate = currentDate;
+            this.currentTimestamp = currentTimestamp;
+            this.metrics = metrics;
+            this.batchRows = batchRows;
+            this.internCapacity = internCapacity;
+            this.built = new ArrayBlockingQueue<>(queueCapacity);
+        }
+
+        void start() {
+            ioExecutor.execute(this::parse);
+            started = true;
+        }
+
+        int queueDepth(String stage) {
+            switch (stage) {
+                case "fetch":
+                    return metrics.getChunksReadAhead();
+                case "build":
+                    return building.get();
+                default:
+                    return awaitingEncode.get();
+            }
+        }
+
+        /**
+         * Parse stage: fills batches with copies of the rows, since the reader reuses its arrays, and
+         * queues a build task for each. Blocks while the encoder is {@code queue-capacity} batches behind.
+         */
+        private void parse() {
+            synchronized (this) {
+                if (stopped) {
+                    parseStopped.countDown();
+                    return;
+                }
+                parseThread = Thread.currentThread();
+            }
+            try {
+                long start = System.nanoTime();
+                while (!stopped) {
+                    Batch batch = free.poll();
+                    if (batch == null) {
+                        batch = new Batch(plan, batchRows, internCapacity);
+                    }
+                    int size = 0;
+                    String[] row;
+                    while (size < batchRows && (row = csvReader.readNext()) != null) {
+                        String[] copy = batch.rows[size];
+                        if (copy == null || copy.length != row.length) {
+                            batch.rows[size] = row.clone();
+                        } else {
+                            System.arraycopy(row, 0, copy, 0, row.length);
+                        }
+                        size++;
+                    }
+                    batch.size = size;
+                    long parsed = System.nanoTime();
+                    parseNanos += parsed - start;
+                    if (size > 0) {
+                        building.incrementAndGet();
+                        Batch buildBatch = batch;
+                        built.put(buildExecutor.submit(() -> build(buildBatch)));
+                    }
+                    if (size == 0) {
+                        free.offer(batch);
+                    }
+                    if (size < batchRows) {
+                        built.put(CompletableFuture.completedFuture(null));
+                        return;
+                    }
+                    start = System.nanoTime();
+                    parseBlockedNanos += start - parsed;
+                }
+            } catch (InterruptedException e) {
+                // Stopped by the encoder
+            } catch (IOException | RuntimeException e) {
+                if (!stopped) {
+                    failed(e);
+                }
+            } finally {
+                synchronized (this) {
+                    parseThread = null;
+                }
+                parseStopped.countDown();
+            }
+        }
+
+        /**
+         * Build stage: fills a record per row, skipping rejected rows. Never blocks.
+         */
+        private Batch build(Batch batch) throws UnparsableValueException {
+            long start = System.nanoTime();
+            try {
+                int builtRecords = 0;
+                for (int index = 0; index < batch.size; index++) {
+                    GenericData.Record record = batch.records[builtRecords];
+                    if (record == null) {
+                        record = plan.newRecord();
+                        batch.records[builtRecords] = record;
+                    }
+                    if (plan.fill(record, batch.rows[index], currentDate, currentTimestamp, batch.nullsByField,
+                            batch.unparsableByField, batch.utf8ByField)) {
+                        builtRecords++;
+                    }
+                }
+                batch.built = builtRecords;
+                awaitingEncode.incrementAndGet();
+                return batch;
+            } finally {
+                building.decrementAndGet();
+                buildNanos.addAndGet(System.nanoTime() - start);
+            }
+        }
+
+        /**
+         * Hands a parse failure to the encoder, behind the batches parsed before it.
+         */
+        private void failed(Exception e) {
+            try {
+                built.put(CompletableFuture.failedFuture(e));
+            } catch (InterruptedException interrupted) {
+                // Stopped by the encoder
+            }
+        }
+
+        /**
+         * Encode stage: writes the batches in source order and merges their counters.
+         */
+        void encode(RecordSink sink) throws IOException {
+            try {
+                while (true) {
+                    long waitStart = System.nanoTime();
+                    Batch batch = built.take().get();
+                    long start = System.nanoTime();
+                    encodeWaitNanos += start - waitStart;
+                    if (batch == null) {
+                        return;
+                    }
+                    awaitingEncode.decrementAndGet();
+                    for (int index = 0; index < batch.built; index++) {
+                        sink.write(batch.records[index]);
+                    }
+                    encodeNanos += System.nanoTime() - start;
+                    batches++;
+                    metrics.merge(batch.size, batch.built, batch.nullsByField, batch.unparsableByField, 0, 0);
+                    Arrays.fill(batch.nullsByField, 0);
+                    Arrays.fill(batch.unparsableByField, 0);
+                    free.offer(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for converted records");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException("Error converting CSV data to Parquet", cause);
+            }
+        }
+
+        /**
+         * Stops the parse stage if it is still running and waits until it no longer reads. A parse thread
+         * blocked on the queue is interrupted, as is one waiting for the fetch stage.
+         */
+        void stop() {
+            synchronized (this) {
+                stopped = true;
+                if (parseThread != null) {
+                    parseThread.interrupt();
+                }
+            }
+            if (!started) {
+                return;
+            }
+            try {
+                parseStopped.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                built.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+import lombok.Value;
+
+/**
+ * The outcome of one successful CSV to Parquet conversion, or of one skipped because its source had
+ * not changed since the last conversion.
+ */
+@Value
+public class ConversionResult {
+    String destinationBucketName;
+    /** The Parquet object key, or the key prefix of the part files when converted in parallel. */
+    String destinationKey;
+    int parts;
+    long rowsRead;
+    long rowsWritten;
+    long rowsRejected;
+    long bytesDownloaded;
+    long bytesUploaded;
+    long elapsedMillis;
+    /** The source was already converted; nothing was read or written. */
+    boolean skipped;
+
+    static ConversionResult of(ConversionMetrics metrics, String destinationBucketName, String destinationKey, int parts, long startNanos) {
+        return new ConversionResult(destinationBucketName, destinationKey, parts, metrics.getRowsRead(), metrics.getRowsWritten(),
+                metrics.getRowsRejected(), metrics.getBytesDownloaded(), metrics.getBytesUploaded(),
+                (System.nanoTime() - startNanos) / 1_000_000, false);
+    }
+
+    static ConversionResult skipped(SnapshotManifest manifest, long startNanos) {
+        return new ConversionResult(manifest.getDestinationBucketName(), manifest.getDestinationKey(), manifest.getParts(),
+                0, 0, 0, 0, 0, (System.nanoTime() - startNanos) / 1_000_000, true);
+    }
+}
@@ -0,0 +1,26 @@
+import java.io.InputStream;
+
+/**
+ * The CSV parser used to read sources, selected with {@code snapshot.csv.engine}.
+ */
+public enum CsvEngine {
+    /** {@link FastCsvTokenizer}: byte-level RFC 4180 parsing that decodes only projected columns. */
+    FAST,
+    /** {@link OpenCsvRowReader}: opencsv, including its backslash escapes. */
+    OPENCSV;
+
+    /**
+     * Opens a row reader over a CSV byte stream. Closing the reader closes the stream.
+     *
+     * @param source the CSV bytes
+     * @param csv the delimiter, quote, charset, buffer size and intern capacity to read with
+     * @return a reader positioned before the header row
+     */
+    public CsvRowReader open(InputStream source, SnapshotProperties.Csv csv) {
+        if (this == OPENCSV) {
+            return new OpenCsvRowReader(source, csv.getCharset(), csv.getDelimiter(), csv.getQuote());
+        }
+        return new FastCsvTokenizer(source, (int) csv.getBufferSize().toBytes(), csv.getDelimiter(), csv.getQuote(), csv.getCharset(),
+                csv.getInternCapacity());
+    }
+}
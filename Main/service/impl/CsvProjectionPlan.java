@@ -0,0 +1,292 @@
+import lombok.extern.slf4j.Slf4j;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+
+/**
+ * Column-mapping plan that resolves a CSV header row against an Avro schema once, so that every
+ * data row can be copied into a record positionally without any per-row lookups. Each field also
+ * gets a precompiled {@link ColumnConverter} for the type its schema declares.
+ *
+ * <p>A plan is immutable and can be reused for any number of files sharing the same header and schema.
+ */
+@Slf4j
+public class CsvProjectionPlan {
+
+    static final String EFF_DT = "EFF_DT";
+    static final String ETL_TS = "ETL_TS";
+
+    private static final int NOT_MAPPED = -1;
+    private static final int STAMPED = -2;
+
+    private final Schema schema;
+    private final String[] headers;
+    private final int[] columnByField;
+    private final ColumnConverter[] converterByField;
+    private final boolean[] nullableByField;
+    private final boolean[] textByField;
+    private final int effDtPosition;
+    private final int etlTsPosition;
+    private final List<String> missingFields;
+    private final UnparsableValuePolicy unparsableValuePolicy;
+
+    private CsvProjectionPlan(Schema schema, String[] headers, int[] columnByField, ColumnConverter[] converterByField, boolean[] nullableByField,
+                              boolean[] textByField, int effDtPosition, int etlTsPosition, List<String> missingFields, UnparsableValuePolicy unparsableValuePolicy) {
+        this.schema = schema;
+        this.headers = headers;
+        this.columnByField = columnByField;
+        this.converterByField = converterByField;
+        this.nullableByField = nullableByField;
+        this.textByField = textByField;
+        this.effDtPosition = effDtPosition;
+        this.etlTsPosition = etlTsPosition;
+        this.missingFields = missingFields;
+        this.unparsableValuePolicy = unparsableValuePolicy;
+    }
+
+    /**
+     * Resolves the header row against the schema. Schema fields that are not present in the header
+     * are reported once here and written as null for every row; if they are not nullable, every row
+     * is handled as having an unparsable value.
+     *
+     * @param avroSchema the Avro schema of the output records
+     * @param headers the CSV header row
+     * @return the compiled plan, failing the job on unparsable values
+     */
+    public static CsvProjectionPlan compile(Schema avroSchema, String[] headers) {
+        return compile(avroSchema, headers, UnparsableValuePolicy.FAIL);
+    }
+
+    /**
+     * Resolves the header row against the schema and compiles a converter for every field.
+     *
+     * @param avroSchema the Avro schema of the output records
+     * @param headers the CSV header row
+     * @param unparsableValuePolicy what to do with cells that do not parse as their field type
+     * @return the compiled plan
+     * @throws IllegalArgumentException if the schema declares a type that cannot be read from CSV
+     */
+    public static CsvProjectionPlan compile(Schema avroSchema, String[] headers, UnparsableValuePolicy unparsableValuePolicy) {
+        Map<String, Integer> columnByHeader = new HashMap<>(headers.length * 2);
+        for (int column = 0; column < headers.length; column++) {
+            // First occurrence wins, matching the previous indexOf lookup
+            columnByHeader.putIfAbsent(headers[column], column);
+        }
+
+        List<Schema.Field> fields = avroSchema.getFields();
+        int[] columnByField = new int[fields.size()];
+        ColumnConverter[] converterByField = new ColumnConverter[fields.size()];
+        boolean[] nullableByField = new boolean[fields.size()];
+        boolean[] textByField = new boolean[fields.size()];
+        int effDtPosition = NOT_MAPPED;
+        int etlTsPosition = NOT_MAPPED;
+        List<String> missingFields = new ArrayList<>();
+
+        for (Schema.Field field : fields) {
+            String fieldName = field.name();
+            columnByField[field.pos()] = NOT_MAPPED;
+            nullableByField[field.pos()] = ColumnConverters.isNullable(field.schema());
+
+            if (EFF_DT.equals(fieldName)) {
+                effDtPosition = field.pos();
+                columnByField[field.pos()] = STAMPED;
+            } else if (ETL_TS.equals(fieldName)) {
+                etlTsPosition = field.pos();
+                columnByField[field.pos()] = STAMPED;
+            } else {
+                Integer column = columnByHeader.get(fieldName);
+                if (column == null) {
+                    missingFields.add(fieldName);
+                } else {
+                    columnByField[field.pos()] = column;
+                    converterByField[field.pos()] = ColumnConverters.forSchema(field.schema());
+                    textByField[field.pos()] = ColumnConverters.isText(field.schema());
+                }
+            }
+        }
+
+        if (!missingFields.isEmpty()) {
+            log.info("Fields {} not found in CSV header. Inserting null for every row.", missingFields);
+            List<String> requiredMissing = missingFields.stream()
+                    .filter(fieldName -> !nullableByField[avroSchema.getField(fieldName).pos()])
+                    .toList();
+            if (!requiredMissing.isEmpty()) {
+                log.warn("Fields {} are not nullable and not found in CSV header. Every row is {}.", requiredMissing,
+                        unparsableValuePolicy == UnparsableValuePolicy.FAIL ? "unparsable and fails the conversion" : "rejected");
+            }
+        }
+        log.debug("Compiled CSV projection plan for schema '{}': {} fields, {} CSV columns", avroSchema.getFullName(), fields.size(), headers.length);
+
+        return new CsvProjectionPlan(avroSchema, headers.clone(), columnByField, converterByField, nullableByField, textByField,
+                effDtPosition, etlTsPosition, Collections.unmodifiableList(missingFields), unparsableValuePolicy);
+    }
+
+    /**
+     * Copies a CSV row into the given record. Every field position is overwritten, so the same record
+     * instance can be reused for consecutive rows once the previous one has been written.
+     *
+     * @param avroRecord the record to fill; must have been created from this plan's schema
+     * @param row the CSV row
+     * @param currentDate the value stamped into EFF_DT, see {@link #dateStamp(LocalDate)}
+     * @param currentTimestamp the value stamped into ETL_TS, see {@link #timestampStamp(LocalDateTime)}
+     * @return false if the row was rejected and must not be written
+     * @throws UnparsableValueException if a cell does not parse, or a field that is not nullable has no
+     *         value, and the policy is {@link UnparsableValuePolicy#FAIL}
+     */
+    public boolean fill(GenericData.Record avroRecord, String[] row, Object currentDate, Object currentTimestamp) throws UnparsableValueException {
+        return fill(avroRecord, row, currentDate, currentTimestamp, new long[columnByField.length], new long[columnByField.length]);
+    }
+
+    /**
+     * Same as {@link #fill(GenericData.Record, String[], Object, Object)}, additionally counting
+     * null-filled and unparsable fields per field position.
+     *
+     * @param nullsByField counters indexed by field position, incremented for every null written
+     * @param unparsableByField counters indexed by field position, incremented for every cell that did not parse
+     */
+    public boolean fill(GenericData.Record avroRecord, String[] row, Object currentDate, Object currentTimestamp,
+                        long[] nullsByField, long[] unparsableByField) throws UnparsableValueException {
+        return fill(avroRecord, row, currentDate, currentTimestamp, nullsByField, unparsableByField, null);
+    }
+
+    /**
+     * Same as {@link #fill(GenericData.Record, String[], Object, Object, long[], long[])}, writing
+     * string fields as the {@code Utf8} their cache holds for repeated values. The record must then
+     * only be handed to a writer, not compared to strings.
+     *
+     * @param utf8ByField caches from {@link #newUtf8Caches(int)}, owned by the calling thread; null writes strings
+     */
+    public boolean fill(GenericData.Record avroRecord, String[] row, Object currentDate, Object currentTimestamp,
+                        long[] nullsByField, long[] unparsableByField, Utf8Cache[] utf8ByField) throws UnparsableValueException {
+        int[] columns = columnByField;
+        for (int position = 0; position < columns.length; position++) {
+            int column = columns[position];
+            if (column == STAMPED) {
+                continue;
+            }
+            String text = column >= 0 && column < row.length ? row[column] : null;
+            Object value = null;
+            if (text != null) {
+                try {
+                    value = converterByField[position].convert(text);
+                } catch (IllegalArgumentException | ArithmeticException e) {
+                    unparsableByField[position]++;
+                    if (unparsableValuePolicy == UnparsableValuePolicy.FAIL) {
+                        Schema.Field field = schema.getFields().get(position);
+                        throw new UnparsableValueException(field.name(), text, field.schema(), e);
+                    }
+                    if (unparsableValuePolicy == UnparsableValuePolicy.REJECT_ROW || !nullableByField[position]) {
+                        return false;
+                    }
+                }
+            }
+            if (value == null) {
+                if (!nullableByField[position]) {
+                    // An empty typed cell or a short row: handled as an unparsable value, since null cannot be written
+                    unparsableByField[position]++;
+                    if (unparsableValuePolicy == UnparsableValuePolicy.FAIL) {
+                        Schema.Field field = schema.getFields().get(position);
+                        throw new UnparsableValueException(field.name(), field.schema());
+                    }
+                    return false;
+                }
+                nullsByField[position]++;
+            } else if (utf8ByField != null && utf8ByField[position] != null) {
+                value = utf8ByField[position].get((String) value);
+            }
+            avroRecord.put(position, value);
+        }
+        stamp(avroRecord, currentDate, currentTimestamp);
+        return true;
+    }
+
+    /**
+     * @return the load date in the representation EFF_DT declares (epoch day for {@code date}, text otherwise)
+     */
+    public Object dateStamp(LocalDate loadDate) {
+        return effDtPosition == NOT_MAPPED ? null : ColumnConverters.dateStamp(schema.getFields().get(effDtPosition).schema(), loadDate);
+    }
+
+    /**
+     * @return the load time in the representation ETL_TS declares (epoch millis/micros for timestamps, text otherwise)
+     */
+    public Object timestampStamp(LocalDateTime loadTime) {
+        return etlTsPosition == NOT_MAPPED ? null : ColumnConverters.timestampStamp(schema.getFields().get(etlTsPosition).schema(), loadTime);
+    }
+
+    private void stamp(GenericData.Record avroRecord, Object currentDate, Object currentTimestamp) {
+        if (effDtPosition != NOT_MAPPED) {
+            avroRecord.put(effDtPosition, currentDate);
+        }
+        if (etlTsPosition != NOT_MAPPED) {
+            avroRecord.put(etlTsPosition, currentTimestamp);
+        }
+    }
+
+    /**
+     * @param capacity distinct values cached per string field; zero or less for no caching
+     * @return one cache per string field, indexed by field position, or null without capacity
+     */
+    public Utf8Cache[] newUtf8Caches(int capacity) {
+        if (capacity <= 0) {
+            return null;
+        }
+        Utf8Cache[] caches = new Utf8Cache[textByField.length];
+        for (int position = 0; position < textByField.length; position++) {
+            if (textByField[position]) {
+                caches[position] = new Utf8Cache(capacity);
+            }
+        }
+        return caches;
+    }
+
+    /**
+     * @return a new record of this plan's schema, suitable for reuse with {@link #fill}
+     */
+    public GenericData.Record newRecord() {
+        return new GenericData.Record(schema);
+    }
+
+    public Schema getSchema() {
+        return schema;
+    }
+
+    /**
+     * @return true if this plan was compiled for the given header row
+     */
+    public boolean matches(String[] otherHeaders) {
+        return Arrays.equals(headers, otherHeaders);
+    }
+
+    /**
+     * @return for each CSV column of the header, whether any field reads it
+     */
+    public boolean[] getProjectedColumns() {
+        boolean[] projected = new boolean[headers.length];
+        for (int column : columnByField) {
+            if (column >= 0) {
+                projected[column] = true;
+            }
+        }
+        return projected;
+    }
+
+    public UnparsableValuePolicy getUnparsableValuePolicy() {
+        return unparsableValuePolicy;
+    }
+
+    /**
+     * @return the schema fields (other than EFF_DT and ETL_TS) that have no matching CSV column
+     */
+    public List<String> getMissingFields() {
+        return missingFields;
+    }
+}
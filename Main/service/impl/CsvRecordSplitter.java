@@ -0,0 +1,110 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Cuts a CSV byte stream into chunks that end on record boundaries. A newline only ends a record
+ * when it is outside a quoted field, so quoted values containing line breaks are never split.
+ *
+ * <p>The delimiter, quote and newline bytes are all ASCII, so cutting on bytes is safe for UTF-8 and
+ * every other ASCII-compatible encoding.
+ */
+class CsvRecordSplitter {
+
+    private static final int NO_BOUNDARY = -1;
+
+    private final InputStream input;
+    private final int targetChunkSize;
+    private final byte quote;
+
+    private byte[] carry = new byte[0];
+    private int carryLength;
+    private boolean endOfInput;
+
+    CsvRecordSplitter(InputStream input, int targetChunkSize, char quote) {
+        this.input = input;
+        this.targetChunkSize = Math.max(1, targetChunkSize);
+        this.quote = (byte) quote;
+    }
+
+    /**
+     * A run of complete CSV records; only the first {@code length} bytes of {@code data} are valid.
+     */
+    static final class Chunk {
+        final byte[] data;
+        final int length;
+
+        Chunk(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    /**
+     * @return the first record of the stream (normally the header), or null if the stream is empty
+     */
+    Chunk nextRecord() throws IOException {
+        return next(1, true);
+    }
+
+    /**
+     * @return the next run of at least {@code targetChunkSize} bytes of complete records (less at the
+     *         end of the stream), or null once the stream is exhausted
+     */
+    Chunk nextChunk() throws IOException {
+        return next(targetChunkSize, false);
+    }
+
+    private Chunk next(int chunkSize, boolean firstRecordOnly) throws IOException {
+        byte[] buffer = new byte[Math.max(chunkSize, carryLength + 1)];
+        System.arraycopy(carry, 0, buffer, 0, carryLength);
+        int length = carryLength;
+        int scanned = 0;
+        boolean inQuotes = false;
+
+        while (true) {
+            length = fill(buffer, length);
+
+            int boundary = NO_BOUNDARY;
+            for (int i = scanned; i < length; i++) {
+                byte b = buffer[i];
+                if (b == quote) {
+                    inQuotes = !inQuotes;
+                } else if (b == '\n' && !inQuotes) {
+                    boundary = i + 1;
+                    if (firstRecordOnly) {
+                        break;
+                    }
+                }
+            }
+
+            if (boundary != NO_BOUNDARY) {
+                // Resume scanning after the cut next time; the carried bytes start outside any quote
+                carryLength = length - boundary;
+                carry = Arrays.copyOfRange(buffer, boundary, length);
+                return new Chunk(buffer, boundary);
+            }
+            scanned = length;
+
+            if (endOfInput) {
+                carryLength = 0;
+                carry = new byte[0];
+                return length == 0 ? null : new Chunk(buffer, length);
+            }
+            // A single record larger than the buffer: grow and keep reading
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+    }
+
+    private int fill(byte[] buffer, int length) throws IOException {
+        while (length < buffer.length && !endOfInput) {
+            int count = input.read(buffer, length, buffer.length - length);
+            if (count < 0) {
+                endOfInput = true;
+            } else {
+                length += count;
+            }
+        }
+        return length;
+    }
+}
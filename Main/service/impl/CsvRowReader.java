@@ -0,0 +1,27 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads CSV rows one at a time from a byte stream. Implementations are chosen by {@link CsvEngine}.
+ */
+public interface CsvRowReader extends Closeable {
+
+    /**
+     * Reads the next row.
+     *
+     * @return the cells of the row, or null at the end of the input. The array may be reused by the
+     *         next call, so callers that keep rows must copy them.
+     * @throws MalformedCsvException if the input is not valid CSV
+     * @throws IOException if the underlying stream fails
+     */
+    String[] readNext() throws IOException;
+
+    /**
+     * Tells the reader which columns the caller uses. Cells of other columns may be returned as null
+     * instead of being decoded. Readers that cannot skip cells ignore this.
+     *
+     * @param projectedColumns for each column, whether it is used; columns past the end are unused
+     */
+    default void project(boolean[] projectedColumns) {
+    }
+}
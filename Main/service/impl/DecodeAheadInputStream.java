@@ -0,0 +1,185 @@
+import lombok.extern.slf4j.Slf4j;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Input stream that reads a slow source, typically a decompressor, on a separate thread and hands
+ * its bytes over in chunks, so decompression overlaps with the CSV parsing and Parquet encoding done
+ * by the reader. At most {@code readAhead} chunks wait in memory, so memory is bounded by
+ * {@code chunkSize * (readAhead + 2)} however large the source is.
+ *
+ * <p>An error on the decoding thread is rethrown to the reader once the chunks decoded before it
+ * have been consumed, and again on every later read, so a truncated source never reads as a normal end.
+ */
+@Slf4j
+public class DecodeAheadInputStream extends InputStream {
+
+    private static final byte[] END_OF_STREAM = new byte[0];
+
+    private final InputStream source;
+    private final int chunkSize;
+    private final BlockingQueue<byte[]> chunks;
+    private final Future<?> decoder;
+
+    private volatile Throwable failure;
+    private byte[] chunk = new byte[0];
+    private int chunkPosition;
+    private boolean ended;
+    private volatile boolean closed;
+    /** Only the reader writes it; volatile so that metrics can read it from other threads. */
+    private volatile long waitNanos;
+
+    public DecodeAheadInputStream(InputStream source, int chunkSize, int readAhead, ExecutorService decodeExecutor) {
+        this.source = source;
+        this.chunkSize = Math.max(1, chunkSize);
+        this.chunks = new ArrayBlockingQueue<>(Math.max(1, readAhead));
+        this.decoder = decodeExecutor.submit(this::decode);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureChunk()) {
+            return -1;
+        }
+        return chunk[chunkPosition++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!ensureChunk()) {
+            return -1;
+        }
+        int count = Math.min(length, chunk.length - chunkPosition);
+        System.arraycopy(chunk, chunkPosition, buffer, offset, count);
+        chunkPosition += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return chunk.length - chunkPosition;
+    }
+
+    /**
+     * @return the time the reader spent waiting for chunks that were not decoded yet
+     */
+    public long getWaitNanos() {
+        return waitNanos;
+    }
+
+    /**
+     * @return the chunks read ahead and waiting for the reader
+     */
+    public int getBufferedChunks() {
+        return chunks.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        decoder.cancel(true);
+        chunks.clear();
+        chunk = new byte[0];
+        // Unblocks a decoding thread stuck in a network read, which the interrupt does not
+        source.close();
+    }
+
+    private boolean ensureChunk() throws IOException {
+        if (closed) {
+            throw new IOException("Stream already closed");
+        }
+        if (chunkPosition < chunk.length) {
+            return true;
+        }
+        if (ended) {
+            throwFailure();
+            return false;
+        }
+        byte[] next = chunks.poll();
+        if (next == null) {
+            long waitStart = System.nanoTime();
+            try {
+                next = chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for decoded data");
+            } finally {
+                waitNanos += System.nanoTime() - waitStart;
+            }
+        }
+        chunk = next;
+        chunkPosition = 0;
+        if (chunk == END_OF_STREAM) {
+            ended = true;
+            throwFailure();
+            return false;
+        }
+        return true;
+    }
+
+    private void throwFailure() throws IOException {
+        Throwable cause = failure;
+        if (cause != null) {
+            throw cause instanceof IOException ? (IOException) cause : new IOException("Error decoding CSV data from S3", cause);
+        }
+    }
+
+    private void decode() {
+        try {
+            while (true) {
+                byte[] decoded = source.readNBytes(chunkSize);
+                if (decoded.length > 0) {
+                    chunks.put(decoded);
+                }
+                if (decoded.length < chunkSize) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed by the reader, or the executor shut down under a reader still waiting
+            if (!closed) {
+                failure = new InterruptedIOException("Interrupted while decoding CSV data");
+            }
+        } catch (Throwable e) {
+            // Errors too, e.g. a codec's native library failing to load, or the reader would wait forever
+            if (!closed) {
+                log.debug("Decoding failed: {}", e.getMessage());
+                failure = e;
+            }
+        } finally {
+            endOfStream();
+        }
+    }
+
+    /**
+     * Hands the end of the stream to the reader, unless it has closed, even if interrupted.
+     */
+    private void endOfStream() {
+        boolean interrupted = Thread.interrupted();
+        try {
+            while (!closed) {
+                try {
+                    chunks.put(END_OF_STREAM);
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,289 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * {@link CsvRowReader} that tokenizes RFC 4180 CSV directly on bytes, without a {@code Reader} and
+ * without building a {@code String} for cells no field reads.
+ *
+ * <p>The source is read into one reusable buffer, which grows only if a single row does not fit.
+ * Cells are found by scanning bytes for the delimiter, quote and newline, so the charset must encode
+ * those as single ASCII bytes (UTF-8, ISO-8859-1, windows-1252 and the like). Only cells of projected
+ * columns are decoded; the others are returned as null. The returned row array is reused while the
+ * row width stays the same.
+ *
+ * <p>With an intern capacity, each column keeps a {@link CellInterner}, so repeated values (codes,
+ * flags, dates) come back as the same {@code String} without being decoded again.
+ *
+ * <p>Quoted cells may contain delimiters, newlines and doubled quotes. A row ends at {@code \n} or
+ * {@code \r\n} outside quotes; an empty line is a row with one empty cell, and a final newline does
+ * not start another row. A UTF-8 byte order mark at the start of the input is skipped. Unlike opencsv,
+ * backslash is not an escape character.
+ *
+ * <p>Not thread-safe.
+ */
+public class FastCsvTokenizer implements CsvRowReader {
+
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    private final InputStream source;
+    private final byte delimiter;
+    private final byte quote;
+    private final Charset charset;
+    private final int internCapacity;
+
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+    /** Offset in the source of {@code buffer[0]}. */
+    private long bufferOffset;
+    private long rowNumber;
+    private boolean[] projectedColumns;
+
+    private String[] cells = new String[16];
+    private String[] row = new String[0];
+    private CellInterner[] interners = new CellInterner[0];
+
+    public FastCsvTokenizer(InputStream source, int bufferSize, char delimiter, char quote, Charset charset) {
+        this(source, bufferSize, delimiter, quote, charset, 0);
+    }
+
+    /**
+     * @param internCapacity distinct values interned per column; zero or less interns nothing
+     */
+    public FastCsvTokenizer(InputStream source, int bufferSize, char delimiter, char quote, Charset charset, int internCapacity) {
+        if (delimiter > 0x7F || quote > 0x7F || delimiter == quote || delimiter == '\n' || delimiter == '\r') {
+            throw new IllegalArgumentException("Delimiter and quote must be distinct ASCII characters other than a newline");
+        }
+        if (!StandardCharsets.UTF_8.equals(charset) && charset.newEncoder().maxBytesPerChar() > 1) {
+            throw new IllegalArgumentException("Charset must encode ASCII as single bytes: " + charset);
+        }
+        this.source = source;
+        this.buffer = new byte[Math.max(1024, bufferSize)];
+        this.delimiter = (byte) delimiter;
+        this.quote = (byte) quote;
+        this.charset = charset;
+        this.internCapacity = internCapacity;
+    }
+
+    @Override
+    public void project(boolean[] projectedColumns) {
+        this.projectedColumns = projectedColumns == null ? null : projectedColumns.clone();
+    }
+
+    /**
+     * @return the offset in the source of the first byte not yet returned in a row, i.e. where the
+     *         next row starts
+     */
+    public long getOffset() {
+        return bufferOffset + position;
+    }
+
+    @Override
+    public String[] readNext() throws IOException {
+        if (bufferOffset == 0 && position == 0) {
+            skipByteOrderMark();
+        }
+        if (position == limit) {
+            refill(position);
+            if (position == limit) {
+                return null;
+            }
+        }
+        rowNumber++;
+
+        int column = 0;
+        boolean endOfRow;
+        do {
+            boolean decode = projectedColumns == null || column < projectedColumns.length && projectedColumns[column];
+            endOfRow = startsWithQuote() ? readQuotedCell(column, decode) : readCell(column, decode);
+            column++;
+        } while (!endOfRow);
+
+        if (row.length != column) {
+            row = new String[column];
+        }
+        System.arraycopy(cells, 0, row, 0, column);
+        return row;
+    }
+
+    /**
+     * Reads an unquoted cell starting at {@code position} and moves past its delimiter or newline.
+     *
+     * @return true if the cell ended the row
+     */
+    private boolean readCell(int column, boolean decode) throws IOException {
+        int start = position;
+        int index = start;
+        while (true) {
+            if (index == limit) {
+                if (endOfInput) {
+                    setCell(column, decode, start, index);
+                    position = index;
+                    return true;
+                }
+                int shift = refill(start);
+                start -= shift;
+                index -= shift;
+                continue;
+            }
+            byte b = buffer[index];
+            if (b == delimiter) {
+                setCell(column, decode, start, index);
+                position = index + 1;
+                return false;
+            }
+            if (b == LF) {
+                setCell(column, decode, start, index > start && buffer[index - 1] == CR ? index - 1 : index);
+                position = index + 1;
+                return true;
+            }
+            index++;
+        }
+    }
+
+    /**
+     * Reads a quoted cell starting at the opening quote at {@code position}. Doubled quotes are
+     * collapsed in place, so the cell's bytes stay contiguous in the buffer. Bytes between the closing
+     * quote and the next delimiter are kept as part of the cell.
+     *
+     * @return true if the cell ended the row
+     */
+    private boolean readQuotedCell(int column, boolean decode) throws IOException {
+        int start = position;
+        int contentStart = start + 1;
+        int write = contentStart;
+        int index = contentStart;
+        boolean inQuotes = true;
+        int closedAt = -1;
+        while (true) {
+            if (index == limit || inQuotes && index + 1 == limit && buffer[index] == quote && !endOfInput) {
+                if (endOfInput) {
+                    if (inQuotes) {
+                        throw new MalformedCsvException("Unterminated quoted field in CSV row " + rowNumber);
+                    }
+                    setCell(column, decode, contentStart, write);
+                    position = index;
+                    return true;
+                }
+                // Keep the whole cell, and see past a quote that may be the first of a doubled pair
+                int shift = refill(start);
+                start -= shift;
+                contentStart -= shift;
+                write -= shift;
+                index -= shift;
+                if (closedAt >= 0) {
+                    closedAt -= shift;
+                }
+                continue;
+            }
+            byte b = buffer[index];
+            if (inQuotes) {
+                if (b == quote) {
+                    if (index + 1 < limit && buffer[index + 1] == quote) {
+                        buffer[write++] = quote;
+                        index += 2;
+                    } else {
+                        inQuotes = false;
+                        closedAt = write;
+                        index++;
+                    }
+                } else {
+                    buffer[write++] = b;
+                    index++;
+                }
+            } else if (b == delimiter) {
+                setCell(column, decode, contentStart, write);
+                position = index + 1;
+                return false;
+            } else if (b == LF) {
+                if (write > closedAt && buffer[write - 1] == CR) {
+                    write--;
+                }
+                setCell(column, decode, contentStart, write);
+                position = index + 1;
+                return true;
+            } else {
+                buffer[write++] = b;
+                index++;
+            }
+        }
+    }
+
+    private boolean startsWithQuote() throws IOException {
+        if (position == limit) {
+            refill(position);
+        }
+        return position < limit && buffer[position] == quote;
+    }
+
+    private void setCell(int column, boolean decode, int from, int to) {
+        if (column == cells.length) {
+            cells = Arrays.copyOf(cells, cells.length * 2);
+        }
+        cells[column] = !decode ? null : from == to ? "" : internCapacity > 0 ? interner(column).intern(buffer, from, to)
+                : new String(buffer, from, to - from, charset);
+    }
+
+    private CellInterner interner(int column) {
+        if (column >= interners.length) {
+            interners = Arrays.copyOf(interners, Math.max(column + 1, interners.length * 2));
+        }
+        CellInterner interner = interners[column];
+        if (interner == null) {
+            interner = new CellInterner(charset, internCapacity);
+            interners[column] = interner;
+        }
+        return interner;
+    }
+
+    /**
+     * Moves {@code buffer[keepFrom, limit)} to the front of the buffer, growing it if that is already
+     * full, and reads more of the source after it. Sets {@link #endOfInput} once the source is exhausted.
+     *
+     * @return the distance the kept bytes moved, to be subtracted from indexes into them
+     */
+    private int refill(int keepFrom) throws IOException {
+        int kept = limit - keepFrom;
+        if (keepFrom > 0) {
+            System.arraycopy(buffer, keepFrom, buffer, 0, kept);
+            bufferOffset += keepFrom;
+        } else if (kept == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        position -= keepFrom;
+        limit = kept;
+        if (!endOfInput) {
+            int read = source.read(buffer, limit, buffer.length - limit);
+            while (read == 0) {
+                read = source.read(buffer, limit, buffer.length - limit);
+            }
+            if (read < 0) {
+                endOfInput = true;
+            } else {
+                limit += read;
+            }
+        }
+        return keepFrom;
+    }
+
+    private void skipByteOrderMark() throws IOException {
+        while (limit < UTF8_BOM.length && !endOfInput) {
+            refill(0);
+        }
+        if (StandardCharsets.UTF_8.equals(charset) && limit >= UTF8_BOM.length
+                && buffer[0] == UTF8_BOM[0] && buffer[1] == UTF8_BOM[1] && buffer[2] == UTF8_BOM[2]) {
+            position = UTF8_BOM.length;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
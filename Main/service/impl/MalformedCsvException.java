@@ -0,0 +1,15 @@
+import java.io.IOException;
+
+/**
+ * Thrown when the CSV source itself cannot be tokenized, such as a quoted field that is never closed.
+ */
+public class MalformedCsvException extends IOException {
+
+    public MalformedCsvException(String message) {
+        super(message);
+    }
+
+    public MalformedCsvException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,223 @@
+import lombok.extern.slf4j.Slf4j;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Shares a fixed memory budget between the conversions running in the JVM, so that adding
+ * concurrent jobs slows them down instead of running the heap out of memory. Each conversion reserves
+ * its estimated footprint before it opens a writer and releases it when it ends:
+ * <ul>
+ *   <li>per open Parquet writer, the row group buffered before a flush, plus per column a page of
+ *       buffer slack and, when dictionary encoding is on, the dictionary, which Parquet keeps besides
+ *       the row group;</li>
+ *   <li>the download, upload and chunk buffers of the conversion path, and the row batches of the
+ *       staged pipeline, as estimated by the caller.</li>
+ * </ul>
+ * When the rest of the budget does not cover a reservation, its row group size is halved until it
+ * does, down to {@code snapshot.memory.min-row-group-size}. When even that does not fit, the
+ * conversion waits, in arrival order, until others release enough. A reservation larger than the whole
+ * budget is granted once no other is held, so it runs alone rather than never.
+ *
+ * <p>The budget, the bytes reserved, and the reservations held and waiting are exposed as gauges
+ * under {@code snapshot.memory.*}.
+ */
+@Slf4j
+public class MemoryGovernor {
+
+    static final String BUDGET_GAUGE = "snapshot.memory.budget";
+    static final String RESERVED_GAUGE = "snapshot.memory.reserved";
+    static final String RESERVATIONS_GAUGE = "snapshot.memory.reservations";
+    static final String WAITING_GAUGE = "snapshot.memory.waiting";
+    static final String SHRUNK_COUNTER = "snapshot.memory.shrunk";
+    static final String WAIT_TIMER = "snapshot.memory.wait";
+
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final long budgetBytes;
+    private final long minRowGroupSize;
+    private final long acquireTimeoutNanos;
+    /** Reservations waiting for memory, in arrival order; only the first may be granted. */
+    private final Deque<Object> waiting = new ArrayDeque<>();
+
+    private long reservedBytes;
+    private int reservations;
+
+    public MemoryGovernor(MeterRegistry meterRegistry, SnapshotProperties.Memory memory) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = memory.isEnabled();
+        this.budgetBytes = memory.getBudget() != null
+                ? memory.getBudget().toBytes()
+                : (long) (Runtime.getRuntime().maxMemory() * memory.getHeapFraction());
+        this.minRowGroupSize = memory.getMinRowGroupSize().toBytes();
+        this.acquireTimeoutNanos = memory.getAcquireTimeout().toNanos();
+        if (enabled) {
+            Gauge.builder(BUDGET_GAUGE, this, governor -> governor.budgetBytes).baseUnit("bytes").register(meterRegistry);
+            Gauge.builder(RESERVED_GAUGE, this, MemoryGovernor::getReservedBytes).baseUnit("bytes").register(meterRegistry);
+            Gauge.builder(RESERVATIONS_GAUGE, this, MemoryGovernor::getReservations).register(meterRegistry);
+            Gauge.builder(WAITING_GAUGE, this, MemoryGovernor::getWaiting).register(meterRegistry);
+            log.info("Conversions share a memory budget of {} MB", budgetBytes / (1024 * 1024));
+        }
+    }
+
+    /**
+     * Reserves the memory of a conversion, waiting while the budget is used up.
+     *
+     * @param fileType the file type converted, for logs and metrics
+     * @param profile the profile the conversion would write with
+     * @param columns the number of columns written
+     * @param writers the Parquet writers the conversion keeps open at once
+     * @param bufferBytes the conversion's other buffers, which do not shrink
+     * @return the reservation, to be closed when the conversion ends, with the profile to write with;
+     *         its row group size may be smaller than requested. Without {@code snapshot.memory.enabled},
+     *         a reservation of nothing with the profile unchanged.
+     * @throws IOException if no memory became available within {@code snapshot.memory.acquire-timeout}
+     */
+    public Reservation reserve(String fileType, WriterProfile profile, int columns, int writers, long bufferBytes) throws IOException {
+        if (!enabled) {
+            return new Reservation(profile, 0);
+        }
+        long waitStart = System.nanoTime();
+        Object waiter = new Object();
+        synchronized (this) {
+            waiting.addLast(waiter);
+            try {
+                while (true) {
+                    if (waiting.peekFirst() == waiter) {
+                        Reservation reservation = fit(profile, columns, writers, bufferBytes);
+                        if (reservation != null) {
+                            granted(fileType, profile, reservation, System.nanoTime() - waitStart);
+                            return reservation;
+                        }
+                    }
+                    long remainingNanos = acquireTimeoutNanos - (System.nanoTime() - waitStart);
+                    if (remainingNanos <= 0) {
+                        throw new IOException("Timed out after " + TimeUnit.NANOSECONDS.toMillis(acquireTimeoutNanos)
+                                + " ms waiting for memory to convert " + fileType + ": " + reservedBytes + " of " + budgetBytes
+                                + " bytes are reserved by " + reservations + " conversions");
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for memory to convert " + fileType);
+            } finally {
+                waiting.remove(waiter);
+                // The next waiter may now be first, or fit in what this one left
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return the estimated memory of a conversion that keeps {@code writers} writers of the profile
+     *         open, with the given row group size
+     */
+    static long estimate(WriterProfile profile, long rowGroupSize, int columns, int writers, long bufferBytes) {
+        long perColumn = profile.getPageSize() + (profile.isDictionaryEnabled() ? profile.getDictionaryPageSize() : 0);
+        return writers * (rowGroupSize + columns * perColumn) + bufferBytes;
+    }
+
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    public synchronized int getReservations() {
+        return reservations;
+    }
+
+    public synchronized int getWaiting() {
+        return waiting.size();
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * Tries the requested row group size, then halves of it down to the minimum.
+     *
+     * @return the reservation if one fits, or if none is held and the smallest does not fit either;
+     *         otherwise null
+     */
+    private Reservation fit(WriterProfile profile, int columns, int writers, long bufferBytes) {
+        long rowGroupSize = profile.getRowGroupSize();
+        while (true) {
+            long bytes = estimate(profile, rowGroupSize, columns, writers, bufferBytes);
+            boolean smallest = rowGroupSize / 2 < minRowGroupSize;
+            if (reservedBytes + bytes <= budgetBytes || smallest && reservations == 0) {
+                reservedBytes += bytes;
+                reservations++;
+                WriterProfile granted = rowGroupSize == profile.getRowGroupSize() ? profile : profile.toBuilder().rowGroupSize(rowGroupSize).build();
+                return new Reservation(granted, bytes);
+            }
+            if (smallest) {
+                return null;
+            }
+            rowGroupSize /= 2;
+        }
+    }
+
+    private void granted(String fileType, WriterProfile requested, Reservation reservation, long waitNanos) {
+        Timer.builder(WAIT_TIMER).tag("fileType", fileType).register(meterRegistry).record(waitNanos, TimeUnit.NANOSECONDS);
+        long rowGroupSize = reservation.getProfile().getRowGroupSize();
+        if (rowGroupSize < requested.getRowGroupSize()) {
+            Counter.builder(SHRUNK_COUNTER).tag("fileType", fileType).register(meterRegistry).increment();
+            log.info("Reduced the row group size of {} from {} MB to {} MB to fit the memory budget",
+                    fileType, requested.getRowGroupSize() / (1024 * 1024), rowGroupSize / (1024 * 1024));
+        }
+        if (reservedBytes > budgetBytes) {
+            log.warn("Converting {} needs an estimated {} MB, more than the memory budget of {} MB. Running it alone.",
+                    fileType, reservation.getBytes() / (1024 * 1024), budgetBytes / (1024 * 1024));
+        }
+        log.debug("Reserved {} bytes for {} after waiting {} ms; {} of {} bytes now reserved", reservation.getBytes(), fileType,
+                TimeUnit.NANOSECONDS.toMillis(waitNanos), reservedBytes, budgetBytes);
+    }
+
+    private synchronized void release(long bytes) {
+        reservedBytes -= bytes;
+        reservations--;
+        notifyAll();
+    }
+
+    /**
+     * Memory held by one conversion, released on {@link #close()}.
+     */
+    public final class Reservation implements AutoCloseable {
+        private final WriterProfile profile;
+        private final long bytes;
+        private boolean released;
+
+        private Reservation(WriterProfile profile, long bytes) {
+            this.profile = profile;
+            this.bytes = bytes;
+        }
+
+        /**
+         * @return the profile to write with, with the row group size that was reserved for
+         */
+        public WriterProfile getProfile() {
+            return profile;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public void close() {
+            if (released || !enabled) {
+                return;
+            }
+            released = true;
+            release(bytes);
+        }
+    }
+}
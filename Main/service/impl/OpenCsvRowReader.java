@@ -0,0 +1,42 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+import com.opencsv.CSVParserBuilder;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.exceptions.CsvValidationException;
+
+/**
+ * {@link CsvRowReader} backed by opencsv, for sources that rely on its backslash escapes or other
+ * behaviour the byte-level tokenizer does not reproduce.
+ */
+public class OpenCsvRowReader implements CsvRowReader {
+
+    private final CSVReader csvReader;
+
+    public OpenCsvRowReader(CSVReader csvReader) {
+        this.csvReader = csvReader;
+    }
+
+    public OpenCsvRowReader(InputStream source, Charset charset, char delimiter, char quote) {
+        this(new CSVReaderBuilder(new InputStreamReader(source, charset))
+                .withCSVParser(new CSVParserBuilder().withSeparator(delimiter).withQuoteChar(quote).build())
+                .build());
+    }
+
+    @Override
+    public String[] readNext() throws IOException {
+        try {
+            return csvReader.readNext();
+        } catch (CsvValidationException e) {
+            throw new MalformedCsvException("Invalid CSV row " + e.getLineNumber() + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        csvReader.close();
+    }
+}
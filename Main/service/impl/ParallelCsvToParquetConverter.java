@@ -0,0 +1,304 @@
+import lombok.extern.slf4j.Slf4j;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.parquet.hadoop.ParquetWriter;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+/**
+ * Converts a CSV stream into Parquet on several cores. The stream is cut into chunks at record
+ * boundaries; each chunk is parsed, built into Avro records and encoded into its own part file
+ * ({@code <prefix>/part-00000.parquet}, ...) on a worker pool. Part numbers follow the order of the
+ * chunks in the source, so reading the parts in key order returns the rows in their original order.
+ *
+ * <p>At most {@code workers + 1} chunks are held in memory at once; the reader blocks until a worker
+ * frees a slot.
+ *
+ * <p>Parts are written over those of an earlier conversion under the same prefix. Once every part is
+ * uploaded, the earlier parts numbered past the new ones are deleted, so a rerun that produces fewer
+ * parts does not leave stale ones behind to be read with the new.
+ */
+@Slf4j
+public class ParallelCsvToParquetConverter {
+
+    static final String PART_FILE_FORMAT = "part-%05d.parquet";
+    private static final String PART_FILE_PREFIX = "part-";
+    private static final String PART_FILE_SUFFIX = ".parquet";
+    /** The most keys one DeleteObjects request accepts. */
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private final S3Client s3Client;
+    private final SnapshotService snapshotService;
+    private final ParquetWriterFactory parquetWriterFactory;
+    private final SchemaCache schemaCache;
+    private final int workers;
+    private final int chunkSize;
+    private final UnparsableValuePolicy unparsableValuePolicy;
+    private final SnapshotProperties.Csv csv;
+
+    public ParallelCsvToParquetConverter(S3Client s3Client, SnapshotService snapshotService, ParquetWriterFactory parquetWriterFactory,
+                                         SchemaCache schemaCache, int workers, int chunkSize, UnparsableValuePolicy unparsableValuePolicy,
+                                         SnapshotProperties.Csv csv) {
+        this.s3Client = s3Client;
+        this.snapshotService = snapshotService;
+        this.parquetWriterFactory = parquetWriterFactory;
+        this.schemaCache = schemaCache;
+        this.workers = Math.max(1, workers);
+        this.chunkSize = chunkSize;
+        this.unparsableValuePolicy = unparsableValuePolicy;
+        this.csv = csv;
+    }
+
+    /**
+     * Converts the CSV stream and uploads one Parquet part per chunk. If any chunk fails, the
+     * remaining chunks are cancelled and every part already uploaded is deleted.
+     *
+     * @param source the CSV byte stream; the first record is the header
+     * @param avroSchema the Avro schema of the output records
+     * @param destinationBucketName the bucket the parts are uploaded to
+     * @param destinationPrefix the key prefix the part files are written under
+     * @param metrics the job metrics that the per-chunk counts are merged into
+     * @return the uploaded parts in source order
+     * @throws IOException if reading, encoding or uploading fails
+     */
+    public List<ParquetPart> convert(InputStream source, Schema avroSchema, String destinationBucketName, String destinationPrefix, ConversionMetrics metrics) throws IOException {
+        return convert(source, avroSchema, destinationBucketName, destinationPrefix, metrics, parquetWriterFactory.getProfile(metrics.getFileType()));
+    }
+
+    /**
+     * Same as {@link #convert(InputStream, Schema, String, String, ConversionMetrics)}, writing every part
+     * with the given profile instead of the file type's.
+     */
+    public List<ParquetPart> convert(InputStream source, Schema avroSchema, String destinationBucketName, String destinationPrefix, ConversionMetrics metrics,
+                                     WriterProfile writerProfile) throws IOException {
+        long encodeStart = System.nanoTime();
+        metrics.trackFields(avroSchema);
+
+        CsvRecordSplitter splitter = new CsvRecordSplitter(source, chunkSize, csv.getQuote());
+        CsvRecordSplitter.Chunk headerRecord = splitter.nextRecord();
+        if (headerRecord == null) {
+            log.warn("CSV source is empty. No Parquet parts written under: {}/{}", destinationBucketName, destinationPrefix);
+            deleteStaleParts(s3Client, destinationBucketName, destinationPrefix, 0);
+            return List.of();
+        }
+        String[] headers = parseHeader(headerRecord);
+        CsvProjectionPlan plan = schemaCache.getPlan(avroSchema, headers, unparsableValuePolicy);
+
+        LocalDateTime loadTime = LocalDateTime.now();
+        Object currentDate = Utf8Cache.encodeOnce(plan.dateStamp(loadTime.toLocalDate()));
+        Object currentTimestamp = Utf8Cache.encodeOnce(plan.timestampStamp(loadTime));
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService workerPool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "parquet-encode-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore chunkSlots = new Semaphore(workers + 1);
+        List<Future<ParquetPart>> partFutures = new ArrayList<>();
+        List<ParquetPart> parts;
+
+        try {
+            CsvRecordSplitter.Chunk chunk;
+            while (true) {
+                chunkSlots.acquire();
+                chunk = splitter.nextChunk();
+                if (chunk == null) {
+                    chunkSlots.release();
+                    break;
+                }
+                failFast(partFutures);
+
+                int partNumber = partFutures.size();
+                String key = destinationPrefix + "/" + String.format(PART_FILE_FORMAT, partNumber);
+                CsvRecordSplitter.Chunk partChunk = chunk;
+                partFutures.add(workerPool.submit(() -> {
+                    try {
+                        return convertChunk(partNumber, partChunk, plan, writerProfile, destinationBucketName, key, currentDate, currentTimestamp, metrics);
+                    } finally {
+                        chunkSlots.release();
+                    }
+                }));
+            }
+
+            parts = new ArrayList<>(partFutures.size());
+            for (Future<ParquetPart> partFuture : partFutures) {
+                parts.add(partFuture.get());
+            }
+            metrics.encodeCompleted(System.nanoTime() - encodeStart);
+            log.info("Converted CSV into {} Parquet parts with {} workers under: {}/{}", parts.size(), workers, destinationBucketName, destinationPrefix);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            discardParts(partFutures, destinationBucketName);
+            throw new InterruptedIOException("Interrupted during parallel CSV to Parquet conversion");
+        } catch (ExecutionException e) {
+            discardParts(partFutures, destinationBucketName);
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException("Error converting CSV data to Parquet", cause);
+        } catch (IOException | RuntimeException e) {
+            discardParts(partFutures, destinationBucketName);
+            throw e;
+        } finally {
+            workerPool.shutdownNow();
+        }
+        deleteStaleParts(s3Client, destinationBucketName, destinationPrefix, parts.size());
+        return parts;
+    }
+
+    private ParquetPart convertChunk(int partNumber, CsvRecordSplitter.Chunk chunk, CsvProjectionPlan plan, WriterProfile writerProfile, String bucketName,
+                                     String key, Object currentDate, Object currentTimestamp, ConversionMetrics metrics) throws IOException {
+        Schema avroSchema = plan.getSchema();
+        GenericData.Record avroRecord = plan.newRecord();
+        long[] nullsByField = new long[avroSchema.getFields().size()];
+        long[] unparsableByField = new long[avroSchema.getFields().size()];
+        Utf8Cache[] utf8ByField = plan.newUtf8Caches(csv.getInternCapacity());
+        long rowsRead = 0;
+        long rows = 0;
+
+        S3MultipartOutputFile outputFile = snapshotService.openParquetOutputToS3(bucketName, key);
+        try (CsvRowReader csvReader = csv.getEngine().open(new ByteArrayInputStream(chunk.data, 0, chunk.length), csv);
+             ParquetWriter<GenericRecord> writer = parquetWriterFactory.create(outputFile, avroSchema, writerProfile)) {
+            try {
+                csvReader.project(plan.getProjectedColumns());
+                String[] record;
+                while ((record = csvReader.readNext()) != null) {
+                    rowsRead++;
+                    if (plan.fill(avroRecord, record, currentDate, currentTimestamp, nullsByField, unparsableByField, utf8ByField)) {
+                        writer.write(avroRecord);
+                        rows++;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                outputFile.abort();
+                if (e instanceof MalformedCsvException) {
+                    throw new IOException("Error reading CSV data from S3", e);
+                }
+                throw e;
+            }
+        }
+
+        metrics.merge(rowsRead, rows, nullsByField, unparsableByField, outputFile.getBytesWritten(), outputFile.getUploadWaitNanos());
+        log.debug("Wrote part {} with {} rows to {}", partNumber, rows, outputFile);
+        return new ParquetPart(partNumber, bucketName, key, rows, outputFile.getBytesWritten(), outputFile.getETag());
+    }
+
+    private String[] parseHeader(CsvRecordSplitter.Chunk headerRecord) throws IOException {
+        try (CsvRowReader csvReader = csv.getEngine().open(new ByteArrayInputStream(headerRecord.data, 0, headerRecord.length), csv)) {
+            String[] headers = csvReader.readNext();
+            return headers == null ? null : headers.clone();
+        } catch (MalformedCsvException e) {
+            throw new IOException("Error reading CSV data from S3", e);
+        }
+    }
+
+    /**
+     * Deletes the part files under the prefix numbered {@code firstPartNumber} or higher, which an
+     * earlier conversion of the same destination left behind.
+     *
+     * @return the number of part files deleted
+     * @throws IOException if the parts could not be listed or deleted
+     */
+    static int deleteStaleParts(S3Client s3Client, String bucketName, String prefix, int firstPartNumber) throws IOException {
+        String partPrefix = prefix + "/" + PART_FILE_PREFIX;
+        try {
+            List<ObjectIdentifier> staleParts = new ArrayList<>();
+            String continuationToken = null;
+            do {
+                ListObjectsV2Response listing = s3Client.listObjectsV2(ListObjectsV2Request.builder()
+                        .bucket(bucketName)
+                        .prefix(partPrefix)
+                        .continuationToken(continuationToken)
+                        .build());
+                for (S3Object object : listing.contents()) {
+                    if (partNumber(object.key().substring(partPrefix.length())) >= firstPartNumber) {
+                        staleParts.add(ObjectIdentifier.builder().key(object.key()).build());
+                    }
+                }
+                continuationToken = Boolean.TRUE.equals(listing.isTruncated()) ? listing.nextContinuationToken() : null;
+            } while (continuationToken != null);
+
+            for (int from = 0; from < staleParts.size(); from += DELETE_BATCH_SIZE) {
+                List<ObjectIdentifier> batch = staleParts.subList(from, Math.min(from + DELETE_BATCH_SIZE, staleParts.size()));
+                DeleteObjectsResponse response = s3Client.deleteObjects(DeleteObjectsRequest.builder()
+                        .bucket(bucketName)
+                        .delete(Delete.builder().objects(batch).quiet(true).build())
+                        .build());
+                if (response.hasErrors() && !response.errors().isEmpty()) {
+                    throw new IOException("Error deleting stale Parquet part " + bucketName + "/" + response.errors().get(0).key()
+                            + ": " + response.errors().get(0).message());
+                }
+            }
+            if (!staleParts.isEmpty()) {
+                log.info("Deleted {} stale Parquet parts under: {}/{}", staleParts.size(), bucketName, prefix);
+            }
+            return staleParts.size();
+        } catch (SdkException e) {
+            throw new IOException("Error deleting stale Parquet parts under " + bucketName + "/" + prefix, e);
+        }
+    }
+
+    /**
+     * @return the number of a part file name after its prefix, or -1 if it is not a part file
+     */
+    private static int partNumber(String name) {
+        if (!name.endsWith(PART_FILE_SUFFIX)) {
+            return -1;
+        }
+        String digits = name.substring(0, name.length() - PART_FILE_SUFFIX.length());
+        if (digits.isEmpty() || !digits.chars().allMatch(Character::isDigit) || digits.length() > 9) {
+            return -1;
+        }
+        return Integer.parseInt(digits);
+    }
+
+    private static void failFast(List<Future<ParquetPart>> partFutures) throws ExecutionException, InterruptedException {
+        for (Future<ParquetPart> partFuture : partFutures) {
+            if (partFuture.isDone()) {
+                partFuture.get();
+            }
+        }
+    }
+
+    private void discardParts(List<Future<ParquetPart>> partFutures, String bucketName) {
+        // Chunks already being encoded run to completion so their uploads can be deleted below
+        partFutures.forEach(partFuture -> partFuture.cancel(false));
+        for (Future<ParquetPart> partFuture : partFutures) {
+            try {
+                ParquetPart part = partFuture.get();
+                s3Client.deleteObject(DeleteObjectRequest.builder().bucket(bucketName).key(part.getKey()).build());
+                log.warn("Deleted Parquet part after failed conversion: {}/{}", bucketName, part.getKey());
+            } catch (ExecutionException | CancellationException e) {
+                // Nothing was published for this part
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (SdkException e) {
+                log.error("Error deleting Parquet part after failed conversion: {}", e.getMessage(), e);
+            }
+        }
+    }
+}
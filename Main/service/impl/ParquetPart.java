@@ -0,0 +1,15 @@
+import lombok.Value;
+
+/**
+ * A Parquet part file that has been written and uploaded to S3.
+ */
+@Value
+public class ParquetPart {
+    int partNumber;
+    String bucketName;
+    String key;
+    long rows;
+    long bytes;
+    /** The ETag S3 returned for the part, or null if none was returned. */
+    String eTag;
+}
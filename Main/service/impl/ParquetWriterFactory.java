@@ -0,0 +1,159 @@
+import lombok.extern.slf4j.Slf4j;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.avro.AvroParquetWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.OutputFile;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Builds the Avro Parquet writers used by every conversion path, so the single-threaded and parallel
+ * converters produce identically configured files.
+ *
+ * <p>Each file type is written with its {@link WriterProfile}, read once from
+ * {@code /schemas/<fileTobeProcessed>.writer.json}; file types without one use the
+ * {@code snapshot.writer.*} defaults.
+ *
+ * <p>The Hadoop {@link Configuration} is built once and shared by every writer. Creating one scans
+ * the classpath for default XML resources, which costs more than converting a small file. The shared
+ * instance is fully loaded up front and never modified afterwards, so concurrent writers only read it.
+ * Profiles with a compression level get their own copy carrying the level, made once per profile.
+ */
+@Slf4j
+@Component
+public class ParquetWriterFactory {
+
+    static final String ZSTD_LEVEL = "parquet.compression.codec.zstd.level";
+    static final String GZIP_LEVEL = "zlib.compress.level";
+    /** Hadoop's zlib level names, indexed by level. */
+    private static final String[] GZIP_LEVEL_NAMES = {"NO_COMPRESSION", "BEST_SPEED", "TWO", "THREE", "FOUR",
+            "FIVE", "SIX", "SEVEN", "EIGHT", "BEST_COMPRESSION"};
+
+    private final Configuration hadoopConfig;
+    private final WriterProfile defaultProfile;
+    private final Map<String, WriterProfile> profilesByFileType = new ConcurrentHashMap<>();
+    private final Map<WriterProfile, Configuration> configByProfile = new ConcurrentHashMap<>();
+
+    public ParquetWriterFactory() {
+        this(new SnapshotProperties());
+    }
+
+    @Autowired
+    public ParquetWriterFactory(final SnapshotProperties snapshotProperties) {
+        Configuration configuration = new Configuration();
+        configuration.set("parquet.native.enabled", "false");
+        // Force the lazy resource load now rather than on first use by concurrent writers
+        configuration.size();
+        this.hadoopConfig = configuration;
+        this.defaultProfile = WriterProfile.defaults(snapshotProperties.getWriter());
+    }
+
+    /**
+     * Creates a Parquet writer for the given output with the default profile.
+     *
+     * @param outputFile the destination of the Parquet file
+     * @param avroSchema the Avro schema of the records to be written
+     * @return a new writer; the caller must close it
+     * @throws IOException if the writer cannot be created
+     */
+    public ParquetWriter<GenericRecord> create(OutputFile outputFile, Schema avroSchema) throws IOException {
+        return create(outputFile, avroSchema, defaultProfile);
+    }
+
+    /**
+     * Creates a Parquet writer for the given output, encoding it as the profile describes.
+     *
+     * @param outputFile the destination of the Parquet file
+     * @param avroSchema the Avro schema of the records to be written
+     * @param profile the codec, sizes, dictionary and bloom filter settings to write with
+     * @return a new writer; the caller must close it
+     * @throws IOException if the writer cannot be created
+     */
+    public ParquetWriter<GenericRecord> create(OutputFile outputFile, Schema avroSchema, WriterProfile profile) throws IOException {
+        AvroParquetWriter.Builder<GenericRecord> builder = AvroParquetWriter.<GenericRecord>builder(outputFile)
+                .withSchema(avroSchema)
+                .withConf(configurationFor(profile))
+                .withValidation(false)
+                .withCompressionCodec(profile.getCodec())
+                .withRowGroupSize(profile.getRowGroupSize())
+                .withPageSize(profile.getPageSize())
+                .withDictionaryPageSize(profile.getDictionaryPageSize())
+                .withDictionaryEncoding(profile.isDictionaryEnabled());
+        profile.getDictionaryByColumn().forEach(builder::withDictionaryEncoding);
+        profile.getBloomFilterColumns().forEach((column, expectedDistinctValues) -> {
+            builder.withBloomFilterEnabled(column, true);
+            if (expectedDistinctValues > 0) {
+                builder.withBloomFilterNDV(column, expectedDistinctValues);
+            }
+        });
+        return builder.build();
+    }
+
+    /**
+     * Returns the writer profile of a file type, reading it from the classpath on first use.
+     *
+     * @param fileTobeProcessed the type of file to be processed
+     * @return the file type's profile, or the default profile if it has none
+     * @throws IOException if the file type's profile cannot be read or is invalid
+     */
+    public WriterProfile getProfile(String fileTobeProcessed) throws IOException {
+        if (fileTobeProcessed == null) {
+            return defaultProfile;
+        }
+        WriterProfile profile = profilesByFileType.get(fileTobeProcessed);
+        if (profile == null) {
+            profile = loadProfile(fileTobeProcessed);
+            profilesByFileType.put(fileTobeProcessed, profile);
+        }
+        return profile;
+    }
+
+    public WriterProfile getDefaultProfile() {
+        return defaultProfile;
+    }
+
+    /**
+     * Drops every loaded profile so that each is read again on next use.
+     */
+    public void invalidateProfiles() {
+        profilesByFileType.clear();
+        configByProfile.clear();
+    }
+
+    private WriterProfile loadProfile(String fileTobeProcessed) throws IOException {
+        String profilePath = "/schemas/" + fileTobeProcessed + ".writer.json";
+        try (InputStream inputStream = getClass().getResourceAsStream(profilePath)) {
+            if (inputStream == null) {
+                log.debug("No writer profile at path: {}. Using the default profile.", profilePath);
+                return defaultProfile;
+            }
+            WriterProfile profile = WriterProfile.parse(fileTobeProcessed, new String(inputStream.readAllBytes(), StandardCharsets.UTF_8), defaultProfile);
+            log.info("Loaded writer profile for file type {}: {}", fileTobeProcessed, profile);
+            return profile;
+        }
+    }
+
+    private Configuration configurationFor(WriterProfile profile) {
+        if (profile.getCompressionLevel() == null) {
+            return hadoopConfig;
+        }
+        return configByProfile.computeIfAbsent(profile, key -> {
+            Configuration configuration = new Configuration(hadoopConfig);
+            if (key.getCodec() == CompressionCodecName.ZSTD) {
+                configuration.setInt(ZSTD_LEVEL, key.getCompressionLevel());
+            } else if (key.getCodec() == CompressionCodecName.GZIP) {
+                configuration.set(GZIP_LEVEL, GZIP_LEVEL_NAMES[key.getCompressionLevel()]);
+            }
+            return configuration;
+        });
+    }
+}
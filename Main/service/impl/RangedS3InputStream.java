@@ -0,0 +1,156 @@
+import lombok.extern.slf4j.Slf4j;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+/**
+ * Input stream over an S3 object that is fetched with concurrent byte-range GETs and reassembled in
+ * order. At most {@code concurrency} chunks are requested ahead of the reader, so memory is bounded by
+ * {@code chunkSize * (concurrency + 1)} no matter how large the object is.
+ *
+ * <p>Every range request is pinned to the object's ETag, so a source overwritten mid-read fails the
+ * read instead of producing a mix of two versions.
+ */
+@Slf4j
+public class RangedS3InputStream extends InputStream {
+
+    private final S3Client s3Client;
+    private final String bucketName;
+    private final String key;
+    private final String eTag;
+    private final long objectLength;
+    private final int chunkSize;
+    private final int concurrency;
+    private final Executor downloadExecutor;
+    private final Deque<CompletableFuture<byte[]>> readAhead = new ArrayDeque<>();
+
+    private long nextRangeStart;
+    private byte[] chunk = new byte[0];
+    private int chunkPosition;
+    private boolean closed;
+
+    public RangedS3InputStream(S3Client s3Client, String bucketName, String key, String eTag, long objectLength,
+                               int chunkSize, int concurrency, Executor downloadExecutor) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.key = key;
+        this.eTag = eTag;
+        this.objectLength = objectLength;
+        this.chunkSize = chunkSize;
+        this.concurrency = Math.max(1, concurrency);
+        this.downloadExecutor = downloadExecutor;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureChunk()) {
+            return -1;
+        }
+        return chunk[chunkPosition++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!ensureChunk()) {
+            return -1;
+        }
+        int count = Math.min(length, chunk.length - chunkPosition);
+        System.arraycopy(chunk, chunkPosition, buffer, offset, count);
+        chunkPosition += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return chunk.length - chunkPosition;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        readAhead.forEach(pending -> pending.cancel(true));
+        readAhead.clear();
+        chunk = new byte[0];
+    }
+
+    private boolean ensureChunk() throws IOException {
+        if (closed) {
+            throw new IOException("Stream already closed: " + bucketName + "/" + key);
+        }
+        if (chunkPosition < chunk.length) {
+            return true;
+        }
+        fillReadAhead();
+        CompletableFuture<byte[]> next = readAhead.pollFirst();
+        if (next == null) {
+            return false;
+        }
+        try {
+            chunk = next.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InterruptedIOException) {
+                throw (InterruptedIOException) cause;
+            }
+            throw new IOException("Error fetching CSV data from S3", cause);
+        } catch (CancellationException e) {
+            throw new InterruptedIOException("Ranged download cancelled: " + bucketName + "/" + key);
+        }
+        chunkPosition = 0;
+        // Keep the pipeline full while the caller consumes this chunk
+        fillReadAhead();
+        return true;
+    }
+
+    private void fillReadAhead() {
+        while (readAhead.size() < concurrency && nextRangeStart < objectLength) {
+            long rangeStart = nextRangeStart;
+            long rangeEnd = Math.min(objectLength, rangeStart + chunkSize) - 1;
+            nextRangeStart = rangeEnd + 1;
+            readAhead.addLast(CompletableFuture.supplyAsync(() -> fetchRange(rangeStart, rangeEnd), downloadExecutor));
+        }
+    }
+
+    private byte[] fetchRange(long rangeStart, long rangeEnd) {
+        GetObjectRequest.Builder request = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .range("bytes=" + rangeStart + "-" + rangeEnd);
+        if (eTag != null) {
+            request.ifMatch(eTag);
+        }
+
+        int expectedLength = (int) (rangeEnd - rangeStart + 1);
+        try (ResponseInputStream<GetObjectResponse> rangeStream = s3Client.getObject(request.build())) {
+            byte[] bytes = rangeStream.readNBytes(expectedLength);
+            if (bytes.length != expectedLength) {
+                throw new IOException("Short range read for " + bucketName + "/" + key + ": expected "
+                        + expectedLength + " bytes at offset " + rangeStart + " but got " + bytes.length);
+            }
+            log.trace("Fetched range {}-{} of {}/{}", rangeStart, rangeEnd, bucketName, key);
+            return bytes;
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        } catch (SdkException e) {
+            throw new CompletionException(new IOException("Error fetching range " + rangeStart + "-" + rangeEnd + " from S3: " + e.getMessage(), e));
+        }
+    }
+}
@@ -0,0 +1,257 @@
+import lombok.extern.slf4j.Slf4j;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.parquet.hadoop.ParquetWriter;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+
+/**
+ * Writes one stream of records as a sequence of Parquet part files ({@code <prefix>/part-00000.parquet}, ...),
+ * starting a new part once the current one reaches a size or row limit.
+ *
+ * <p>A full part is closed on the upload executor, which flushes its last row group and completes its
+ * upload, while records keep being encoded into the next part. At most {@code pendingCloses} parts are
+ * closing at once; beyond that, rolling over waits, so memory stays bounded by the open part plus the
+ * closing ones. The size limit is checked against the writer's estimate of written and buffered bytes
+ * every {@value #SIZE_CHECK_INTERVAL} records, so parts end slightly past it.
+ *
+ * <p>Parts are written over those of an earlier conversion under the same prefix; once {@link #finish()}
+ * has every part uploaded, the earlier parts numbered past the new ones are deleted, so a rerun that
+ * produces fewer parts does not leave stale ones behind. With a {@link ConversionCheckpointer}, the
+ * writer continues after the parts a resumed conversion already has, reports each part to it once
+ * uploaded, and keeps uploaded parts on {@link #abort()} so that a retry can resume after them.
+ *
+ * <p>Not thread-safe: records must be written from a single thread.
+ */
+@Slf4j
+public class RollingParquetWriter implements Closeable {
+
+    static final int SIZE_CHECK_INTERVAL = 1024;
+
+    private final SnapshotService snapshotService;
+    private final ParquetWriterFactory parquetWriterFactory;
+    private final S3Client s3Client;
+    private final Schema avroSchema;
+    private final WriterProfile writerProfile;
+    private final String bucketName;
+    private final String prefix;
+    private final long maxPartBytes;
+    private final long maxPartRows;
+    private final ExecutorService closeExecutor;
+    private final Semaphore pendingCloses;
+    private final ConversionCheckpointer checkpointer;
+
+    private final List<Future<ParquetPart>> closedParts = new ArrayList<>();
+    private final List<S3MultipartOutputFile> outputFiles = new ArrayList<>();
+    private ParquetWriter<GenericRecord> writer;
+    private S3MultipartOutputFile outputFile;
+    private long partRows;
+    private boolean finished;
+
+    /**
+     * @param maxPartBytes roll over once a part holds about this many bytes; zero or less for no limit
+     * @param maxPartRows roll over once a part holds this many records; zero or less for no limit
+     * @param pendingCloses parts allowed to be closing while the next one is written
+     */
+    public RollingParquetWriter(SnapshotService snapshotService, ParquetWriterFactory parquetWriterFactory, S3Client s3Client,
+                                Schema avroSchema, WriterProfile writerProfile, String bucketName, String prefix,
+                                long maxPartBytes, long maxPartRows, ExecutorService closeExecutor, int pendingCloses) {
+        this(snapshotService, parquetWriterFactory, s3Client, avroSchema, writerProfile, bucketName, prefix, maxPartBytes, maxPartRows,
+                closeExecutor, pendingCloses, null);
+    }
+
+    /**
+     * @param checkpointer records each uploaded part for a retry to resume from; null for none
+     */
+    public RollingParquetWriter(SnapshotService snapshotService, ParquetWriterFactory parquetWriterFactory, S3Client s3Client,
+                                Schema avroSchema, WriterProfile writerProfile, String bucketName, String prefix,
+                                long maxPartBytes, long maxPartRows, ExecutorService closeExecutor, int pendingCloses,
+                                ConversionCheckpointer checkpointer) {
+        this.snapshotService = snapshotService;
+        this.parquetWriterFactory = parquetWriterFactory;
+        this.s3Client = s3Client;
+        this.avroSchema = avroSchema;
+        this.writerProfile = writerProfile;
+        this.bucketName = bucketName;
+        this.prefix = prefix;
+        this.maxPartBytes = maxPartBytes > 0 ? maxPartBytes : Long.MAX_VALUE;
+        this.maxPartRows = maxPartRows > 0 ? maxPartRows : Long.MAX_VALUE;
+        this.closeExecutor = closeExecutor;
+        this.pendingCloses = new Semaphore(Math.max(1, pendingCloses));
+        this.checkpointer = checkpointer;
+        if (checkpointer != null) {
+            for (ParquetPart part : checkpointer.getCheckpoint().getParts()) {
+                closedParts.add(CompletableFuture.completedFuture(part));
+            }
+        }
+    }
+
+    /**
+     * @return whether uploaded parts are reported to a {@link ConversionCheckpointer}, which takes the
+     *         source position from the reader when a part is rolled over
+     */
+    public boolean isCheckpointed() {
+        return checkpointer != null;
+    }
+
+    public void write(GenericRecord record) throws IOException {
+        if (writer == null) {
+            openPart();
+        }
+        writer.write(record);
+        partRows++;
+        if (partRows >= maxPartRows || partRows % SIZE_CHECK_INTERVAL == 0 && writer.getDataSize() >= maxPartBytes) {
+            closePart();
+        }
+    }
+
+    /**
+     * Closes the last part and waits for every part to be uploaded. A source without records produces
+     * no parts.
+     *
+     * @return the uploaded parts in order
+     * @throws IOException if a part could not be written or uploaded; the caller should then {@link #abort()}
+     */
+    public List<ParquetPart> finish() throws IOException {
+        if (writer != null) {
+            closePart();
+        }
+        List<ParquetPart> parts = new ArrayList<>(closedParts.size());
+        try {
+            for (Future<ParquetPart> closedPart : closedParts) {
+                parts.add(closedPart.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while uploading Parquet parts");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException("Error converting CSV data to Parquet", cause);
+        }
+        ParallelCsvToParquetConverter.deleteStaleParts(s3Client, bucketName, prefix, parts.size());
+        finished = true;
+        log.info("Wrote {} Parquet parts under: {}/{}", parts.size(), bucketName, prefix);
+        return parts;
+    }
+
+    /**
+     * @return the time spent waiting on uploads, summed over every part
+     */
+    public long getUploadWaitNanos() {
+        return outputFiles.stream().mapToLong(S3MultipartOutputFile::getUploadWaitNanos).sum();
+    }
+
+    /**
+     * Aborts the open part and deletes every part already uploaded, so that no partial output stays
+     * visible. Parts still closing are waited for first. With a checkpointer, uploaded parts are kept
+     * for a retry instead. Does nothing once finished or aborted.
+     */
+    public void abort() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (writer != null) {
+            outputFile.abort();
+            try {
+                writer.close();
+            } catch (IOException | RuntimeException e) {
+                log.debug("Error closing aborted Parquet part: {}", e.getMessage());
+            }
+            writer = null;
+        }
+        for (Future<ParquetPart> closedPart : closedParts) {
+            try {
+                ParquetPart part = closedPart.get();
+                if (checkpointer != null) {
+                    continue;
+                }
+                s3Client.deleteObject(DeleteObjectRequest.builder().bucket(bucketName).key(part.getKey()).build());
+                log.warn("Deleted Parquet part after failed conversion: {}/{}", bucketName, part.getKey());
+            } catch (ExecutionException | CancellationException e) {
+                // Nothing was published for this part
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (SdkException e) {
+                log.error("Error deleting Parquet part after failed conversion: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Aborts unless {@link #finish()} completed.
+     */
+    @Override
+    public void close() {
+        abort();
+    }
+
+    /**
+     * Surfaces the failure of a part that has already finished closing, so encoding stops early.
+     */
+    private void failFast() throws ExecutionException, InterruptedException {
+        for (Future<ParquetPart> closedPart : closedParts) {
+            if (closedPart.isDone()) {
+                closedPart.get();
+            }
+        }
+    }
+
+    private void openPart() throws IOException {
+        String key = prefix + "/" + String.format(ParallelCsvToParquetConverter.PART_FILE_FORMAT, closedParts.size());
+        outputFile = snapshotService.openParquetOutputToS3(bucketName, key);
+        writer = parquetWriterFactory.create(outputFile, avroSchema, writerProfile);
+        partRows = 0;
+        log.debug("Opened Parquet part: {}", outputFile);
+    }
+
+    private void closePart() throws IOException {
+        try {
+            pendingCloses.acquire();
+            failFast();
+        } catch (ExecutionException e) {
+            pendingCloses.release();
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException("Error converting CSV data to Parquet", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a Parquet part to close");
+        }
+        ParquetWriter<GenericRecord> closingWriter = writer;
+        S3MultipartOutputFile closingOutput = outputFile;
+        int partNumber = closedParts.size();
+        long rows = partRows;
+        ConversionCheckpointer.Position position = checkpointer == null ? null : checkpointer.mark();
+        writer = null;
+        outputFile = null;
+        outputFiles.add(closingOutput);
+        closedParts.add(closeExecutor.submit(() -> {
+            try {
+                closingWriter.close();
+                log.debug("Closed Parquet part {} with {} rows: {}", partNumber, rows, closingOutput);
+                ParquetPart part = new ParquetPart(partNumber, bucketName, closingOutput.getKey(), rows, closingOutput.getBytesWritten(),
+                        closingOutput.getETag());
+                if (checkpointer != null) {
+                    checkpointer.partCompleted(part, position);
+                }
+                return part;
+            } finally {
+                pendingCloses.release();
+            }
+        }));
+    }
+}
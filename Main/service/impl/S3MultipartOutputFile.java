@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+
+/**
+ * Parquet {@link OutputFile} that writes straight to an S3 object through a
+ * {@link S3MultipartOutputStream}, so no local temporary file is needed. When a transfer manager is
+ * given, the object is streamed through it with an {@link S3TransferOutputStream} instead.
+ */
+public class S3MultipartOutputFile implements OutputFile {
+
+    private final S3Client s3Client;
+    private final String bucketName;
+    private final String key;
+    private final int partSize;
+    private final int maxInFlightParts;
+    private final Executor uploadExecutor;
+    private final S3TransferManager transferManager;
+
+    private S3OutputStream stream;
+
+    public S3MultipartOutputFile(S3Client s3Client, String bucketName, String key, int partSize, int maxInFlightParts, Executor uploadExecutor) {
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.key = key;
+        this.partSize = partSize;
+        this.maxInFlightParts = maxInFlightParts;
+        this.uploadExecutor = uploadExecutor;
+        this.transferManager = null;
+    }
+
+    public S3MultipartOutputFile(S3TransferManager transferManager, String bucketName, String key) {
+        this.s3Client = null;
+        this.bucketName = bucketName;
+        this.key = key;
+        this.partSize = 0;
+        this.maxInFlightParts = 0;
+        this.uploadExecutor = null;
+        this.transferManager = transferManager;
+    }
+
+    @Override
+    public PositionOutputStream create(long blockSizeHint) throws IOException {
+        if (stream != null) {
+            throw new IOException("S3 output already created: " + bucketName + "/" + key);
+        }
+        stream = transferManager != null
+                ? new S3TransferOutputStream(transferManager, bucketName, key)
+                : new S3MultipartOutputStream(s3Client, bucketName, key, partSize, maxInFlightParts, uploadExecutor);
+        return stream;
+    }
+
+    @Override
+    public PositionOutputStream createOrOverwrite(long blockSizeHint) throws IOException {
+        return create(blockSizeHint);
+    }
+
+    @Override
+    public boolean supportsBlockSize() {
+        return false;
+    }
+
+    @Override
+    public long defaultBlockSize() {
+        return 0;
+    }
+
+    /**
+     * Aborts the upload so that closing the Parquet writer does not publish a partial object.
+     */
+    public void abort() {
+        if (stream != null) {
+            stream.abort();
+        }
+    }
+
+    /**
+     * @return the number of bytes written so far
+     */
+    public long getBytesWritten() {
+        return stream == null ? 0 : stream.getPos();
+    }
+
+    /**
+     * @return the time the writer spent blocked on part uploads, in nanoseconds
+     */
+    public long getUploadWaitNanos() {
+        return stream == null ? 0 : stream.getUploadWaitNanos();
+    }
+
+    /**
+     * @return the ETag of the uploaded object once the Parquet writer is closed, or null
+     */
+    public String getETag() {
+        return stream == null ? null : stream.getETag();
+    }
+
+    public String getBucketName() {
+        return bucketName;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public String toString() {
+        return "s3://" + bucketName + "/" + key;
+    }
+}
@@ -0,0 +1,271 @@
+import lombok.extern.slf4j.Slf4j;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+
+/**
+ * Output stream that uploads to S3 while it is being written. Bytes are collected into part-sized
+ * buffers; every full buffer is sent as a multipart upload part on the upload executor while the
+ * caller keeps writing. At most {@code maxInFlightParts} parts are buffered or uploading at once, so
+ * memory is bounded by {@code partSize * (maxInFlightParts + 1)}.
+ *
+ * <p>Objects smaller than one part are sent with a single PutObject. If the stream is
+ * {@linkplain #abort() aborted}, closing it aborts the multipart upload instead of completing it.
+ */
+@Slf4j
+public class S3MultipartOutputStream extends S3OutputStream {
+
+    /** S3 rejects multipart parts (other than the last one) smaller than 5 MiB. */
+    static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private final S3Client s3Client;
+    private final String bucketName;
+    private final String key;
+    private final int partSize;
+    private final Semaphore inFlightParts;
+    private final Executor uploadExecutor;
+    private final List<CompletableFuture<CompletedPart>> partUploads = new ArrayList<>();
+
+    private byte[] buffer;
+    private int bufferPosition;
+    private long position;
+    private String uploadId;
+    private String eTag;
+    private long uploadWaitNanos;
+    private boolean aborted;
+    private boolean closed;
+
+    public S3MultipartOutputStream(S3Client s3Client, String bucketName, String key, int partSize, int maxInFlightParts, Executor uploadExecutor) {
+        if (partSize < MIN_PART_SIZE) {
+            throw new IllegalArgumentException("Multipart part size must be at least " + MIN_PART_SIZE + " bytes: " + partSize);
+        }
+        this.s3Client = s3Client;
+        this.bucketName = bucketName;
+        this.key = key;
+        this.partSize = partSize;
+        this.inFlightParts = new Semaphore(Math.max(1, maxInFlightParts));
+        this.uploadExecutor = uploadExecutor;
+        this.buffer = new byte[partSize];
+    }
+
+    @Override
+    public long getPos() {
+        return position;
+    }
+
+    /**
+     * @return the time the writer spent blocked waiting for part uploads, in nanoseconds
+     */
+    @Override
+    public long getUploadWaitNanos() {
+        return uploadWaitNanos;
+    }
+
+    @Override
+    public String getETag() {
+        return eTag;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureWritable();
+        buffer[bufferPosition++] = (byte) b;
+        position++;
+        if (bufferPosition == partSize) {
+            uploadBufferedPart();
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        ensureWritable();
+        while (length > 0) {
+            int count = Math.min(length, partSize - bufferPosition);
+            System.arraycopy(bytes, offset, buffer, bufferPosition, count);
+            bufferPosition += count;
+            position += count;
+            offset += count;
+            length -= count;
+            if (bufferPosition == partSize) {
+                uploadBufferedPart();
+            }
+        }
+    }
+
+    /**
+     * Marks the upload as failed. Further writes are discarded and {@link #close()} aborts the
+     * multipart upload so no partial object becomes visible.
+     */
+    @Override
+    public void abort() {
+        aborted = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        if (aborted) {
+            abortMultipartUpload();
+            return;
+        }
+
+        try {
+            if (uploadId == null) {
+                // Everything fitted into a single part: one PutObject is cheaper than a multipart upload
+                PutObjectResponse response = s3Client.putObject(PutObjectRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .build(), RequestBody.fromInputStream(new ByteArrayInputStream(buffer, 0, bufferPosition), bufferPosition));
+                eTag = response == null ? null : response.eTag();
+                buffer = null;
+                log.debug("Uploaded {} bytes to S3 with a single request: {}/{}", position, bucketName, key);
+                return;
+            }
+
+            if (bufferPosition > 0) {
+                uploadBufferedPart();
+            }
+            List<CompletedPart> completedParts = awaitParts();
+            CompleteMultipartUploadResponse response = s3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                    .build());
+            eTag = response == null ? null : response.eTag();
+            log.debug("Completed multipart upload of {} bytes in {} parts: {}/{}", position, completedParts.size(), bucketName, key);
+        } catch (IOException | SdkException e) {
+            abortMultipartUpload();
+            throw e instanceof IOException ? (IOException) e : new IOException("Error uploading Parquet file to S3: " + e.getMessage(), e);
+        }
+    }
+
+    private void ensureWritable() throws IOException {
+        if (closed) {
+            throw new IOException("Stream already closed: " + bucketName + "/" + key);
+        }
+    }
+
+    private void uploadBufferedPart() throws IOException {
+        if (aborted) {
+            bufferPosition = 0;
+            return;
+        }
+        failFast();
+
+        try {
+            if (uploadId == null) {
+                uploadId = s3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .build()).uploadId();
+                log.debug("Started multipart upload {} for {}/{}", uploadId, bucketName, key);
+            }
+        } catch (SdkException e) {
+            throw new IOException("Error starting multipart upload to S3: " + e.getMessage(), e);
+        }
+
+        long waitStart = System.nanoTime();
+        try {
+            inFlightParts.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a part upload slot");
+        }
+        uploadWaitNanos += System.nanoTime() - waitStart;
+
+        final byte[] partBytes = buffer;
+        final int partLength = bufferPosition;
+        final int partNumber = partUploads.size() + 1;
+        final String currentUploadId = uploadId;
+
+        partUploads.add(CompletableFuture.supplyAsync(() -> {
+            try {
+                String eTag = s3Client.uploadPart(UploadPartRequest.builder()
+                        .bucket(bucketName)
+                        .key(key)
+                        .uploadId(currentUploadId)
+                        .partNumber(partNumber)
+                        .contentLength((long) partLength)
+                        .build(), RequestBody.fromInputStream(new ByteArrayInputStream(partBytes, 0, partLength), partLength)).eTag();
+                return CompletedPart.builder().partNumber(partNumber).eTag(eTag).build();
+            } finally {
+                inFlightParts.release();
+            }
+        }, uploadExecutor));
+
+        buffer = new byte[partSize];
+        bufferPosition = 0;
+    }
+
+    private void failFast() throws IOException {
+        for (CompletableFuture<CompletedPart> partUpload : partUploads) {
+            if (partUpload.isCompletedExceptionally()) {
+                try {
+                    partUpload.join();
+                } catch (CompletionException e) {
+                    throw new IOException("Error uploading part to S3: " + e.getCause().getMessage(), e.getCause());
+                }
+            }
+        }
+    }
+
+    private List<CompletedPart> awaitParts() throws IOException {
+        long waitStart = System.nanoTime();
+        List<CompletedPart> completedParts = new ArrayList<>(partUploads.size());
+        try {
+            for (CompletableFuture<CompletedPart> partUpload : partUploads) {
+                completedParts.add(partUpload.join());
+            }
+        } catch (CompletionException e) {
+            throw new IOException("Error uploading part to S3: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            uploadWaitNanos += System.nanoTime() - waitStart;
+        }
+        completedParts.sort(Comparator.comparing(CompletedPart::partNumber));
+        return completedParts;
+    }
+
+    private void abortMultipartUpload() {
+        buffer = null;
+        if (uploadId == null) {
+            return;
+        }
+        // Let running part uploads finish so the abort is not raced by a late part
+        partUploads.forEach(partUpload -> partUpload.handle((part, error) -> null).join());
+        try {
+            s3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+            log.warn("Aborted multipart upload {} for {}/{}", uploadId, bucketName, key);
+        } catch (SdkException e) {
+            log.error("Error aborting multipart upload {} for {}/{}: {}", uploadId, bucketName, key, e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+import org.apache.parquet.io.PositionOutputStream;
+
+/**
+ * Output stream that publishes an S3 object when it is closed, unless it has been aborted first.
+ */
+public abstract class S3OutputStream extends PositionOutputStream {
+
+    /**
+     * Marks the upload as failed. Further writes are discarded and closing the stream discards
+     * whatever was uploaded, so no partial object becomes visible.
+     */
+    public abstract void abort();
+
+    /**
+     * @return the time the writer spent blocked waiting for uploads, in nanoseconds
+     */
+    public abstract long getUploadWaitNanos();
+
+    /**
+     * @return the ETag of the published object once the stream is closed; null before that, or if
+     *         none was returned
+     */
+    public abstract String getETag();
+}
@@ -0,0 +1,136 @@
+import lombok.extern.slf4j.Slf4j;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.BlockingOutputStreamAsyncRequestBody;
+import software.amazon.awssdk.utils.CancellableOutputStream;
+import software.amazon.awssdk.transfer.s3.S3TransferManager;
+import software.amazon.awssdk.transfer.s3.model.CompletedUpload;
+import software.amazon.awssdk.transfer.s3.model.Upload;
+import software.amazon.awssdk.transfer.s3.model.UploadRequest;
+
+/**
+ * Output stream that uploads through an {@link S3TransferManager} while it is being written. The
+ * object length is not known up front; the CRT client behind the transfer manager splits the stream
+ * into multipart parts and uploads them concurrently, applying back-pressure to the writer when it
+ * runs ahead of the network.
+ *
+ * <p>If the stream is {@linkplain #abort() aborted}, closing it cancels the transfer, which aborts
+ * the multipart upload instead of completing it.
+ */
+@Slf4j
+public class S3TransferOutputStream extends S3OutputStream {
+
+    private final String bucketName;
+    private final String key;
+    private final Upload upload;
+    private final CancellableOutputStream outputStream;
+
+    private long position;
+    private long uploadWaitNanos;
+    private String eTag;
+    private boolean aborted;
+    private boolean closed;
+
+    public S3TransferOutputStream(S3TransferManager transferManager, String bucketName, String key) {
+        this.bucketName = bucketName;
+        this.key = key;
+        BlockingOutputStreamAsyncRequestBody requestBody = AsyncRequestBody.forBlockingOutputStream(null);
+        this.upload = transferManager.upload(UploadRequest.builder()
+                .putObjectRequest(request -> request.bucket(bucketName).key(key))
+                .requestBody(requestBody)
+                .build());
+        this.outputStream = requestBody.outputStream();
+    }
+
+    @Override
+    public long getPos() {
+        return position;
+    }
+
+    /**
+     * @return the time the writer spent in writes blocked by transfer back-pressure, in nanoseconds
+     */
+    @Override
+    public long getUploadWaitNanos() {
+        return uploadWaitNanos;
+    }
+
+    @Override
+    public String getETag() {
+        return eTag;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Stream already closed: " + bucketName + "/" + key);
+        }
+        position += length;
+        if (aborted) {
+            return;
+        }
+        failFast();
+
+        long writeStart = System.nanoTime();
+        outputStream.write(bytes, offset, length);
+        uploadWaitNanos += System.nanoTime() - writeStart;
+    }
+
+    @Override
+    public void abort() {
+        aborted = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        if (aborted) {
+            outputStream.cancel();
+            upload.completionFuture().cancel(true);
+            log.debug("Cancelled transfer of {}/{}", bucketName, key);
+            return;
+        }
+
+        long waitStart = System.nanoTime();
+        try {
+            outputStream.close();
+            CompletedUpload completed = upload.completionFuture().get();
+            eTag = completed.response().eTag();
+            log.debug("Uploaded {} bytes to S3 through the transfer manager: {}/{} (eTag {})", position, bucketName, key, eTag);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            upload.completionFuture().cancel(true);
+            throw new InterruptedIOException("Interrupted while completing upload of " + bucketName + "/" + key);
+        } catch (ExecutionException | CancellationException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            throw new IOException("Error uploading Parquet file to S3: " + cause.getMessage(), cause);
+        } finally {
+            uploadWaitNanos += System.nanoTime() - waitStart;
+        }
+    }
+
+    private void failFast() throws IOException {
+        if (upload.completionFuture().isCompletedExceptionally()) {
+            try {
+                upload.completionFuture().join();
+            } catch (CompletionException | CancellationException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                throw new IOException("Error uploading Parquet file to S3: " + cause.getMessage(), cause);
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+import lombok.extern.slf4j.Slf4j;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.avro.Schema;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the parsed Avro schema of each file type, and the projection plan last compiled against it,
+ * so that repeated invocations for the same file type skip the classpath read, the JSON parse and the
+ * header resolution.
+ *
+ * <p>The cache holds at most {@code snapshot.schemas.cache-size} file types, evicting the least
+ * recently used. With a positive {@code snapshot.schemas.reload-interval}, an entry older than the
+ * interval is reloaded on its next use; {@link #invalidate(String)} forces a reload immediately.
+ *
+ * <p>All methods are thread-safe. Loading and compiling happen outside the lock, so a slow load of
+ * one file type does not hold up the others; two threads missing on the same type at once may both
+ * load it, and the last one wins.
+ */
+@Slf4j
+@Component
+public class SchemaCache {
+
+    /**
+     * Supplies the JSON text of a file type's schema on a cache miss.
+     */
+    @FunctionalInterface
+    public interface SchemaLoader {
+        String load(String fileTobeProcessed) throws IOException;
+    }
+
+    private final int maxEntries;
+    private final long reloadIntervalNanos;
+    private final Map<String, Entry> entriesByFileType;
+    private final Map<Schema, CsvProjectionPlan> planBySchema;
+
+    @Autowired
+    public SchemaCache(final SnapshotProperties snapshotProperties) {
+        SnapshotProperties.Schemas schemas = snapshotProperties.getSchemas();
+        this.maxEntries = Math.max(1, schemas.getCacheSize());
+        Duration reloadInterval = schemas.getReloadInterval();
+        this.reloadIntervalNanos = reloadInterval == null || reloadInterval.isZero() || reloadInterval.isNegative()
+                ? Long.MAX_VALUE : reloadInterval.toNanos();
+        this.entriesByFileType = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > maxEntries) {
+                    planBySchema.remove(eldest.getValue().schema);
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.planBySchema = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Schema, CsvProjectionPlan> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the parsed schema of a file type, loading and parsing it on a miss or when the cached
+     * copy is older than the reload interval.
+     *
+     * @param fileTobeProcessed the type of file to be processed
+     * @param loader reads the schema JSON for the file type
+     * @return the parsed schema; the same instance for every call until the entry is reloaded or evicted
+     * @throws IOException if the schema cannot be loaded
+     */
+    public Schema getSchema(String fileTobeProcessed, SchemaLoader loader) throws IOException {
+        long now = System.nanoTime();
+        synchronized (this) {
+            Entry entry = entriesByFileType.get(fileTobeProcessed);
+            if (entry != null && now - entry.loadedAtNanos < reloadIntervalNanos) {
+                return entry.schema;
+            }
+        }
+
+        log.debug("Schema cache miss for file type: {}", fileTobeProcessed);
+        Schema schema = new Schema.Parser().parse(loader.load(fileTobeProcessed));
+
+        synchronized (this) {
+            Entry previous = entriesByFileType.put(fileTobeProcessed, new Entry(schema, now));
+            if (previous != null) {
+                planBySchema.remove(previous.schema);
+            }
+        }
+        return schema;
+    }
+
+    /**
+     * Returns a projection plan of the header row against the schema, reusing the plan last compiled
+     * for the same schema instance when its header and policy match.
+     *
+     * @param avroSchema the Avro schema of the output records
+     * @param headers the CSV header row
+     * @param unparsableValuePolicy what the plan does with a cell that does not parse
+     * @return the compiled plan
+     */
+    public CsvProjectionPlan getPlan(Schema avroSchema, String[] headers, UnparsableValuePolicy unparsableValuePolicy) {
+        synchronized (this) {
+            CsvProjectionPlan plan = planBySchema.get(avroSchema);
+            if (plan != null && plan.getSchema() == avroSchema && plan.matches(headers)
+                    && plan.getUnparsableValuePolicy() == unparsableValuePolicy) {
+                return plan;
+            }
+        }
+
+        CsvProjectionPlan plan = CsvProjectionPlan.compile(avroSchema, headers, unparsableValuePolicy);
+        synchronized (this) {
+            planBySchema.put(avroSchema, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Drops a file type so that its schema is reloaded on next use.
+     */
+    public synchronized void invalidate(String fileTobeProcessed) {
+        Entry entry = entriesByFileType.remove(fileTobeProcessed);
+        if (entry != null) {
+            planBySchema.remove(entry.schema);
+        }
+    }
+
+    /**
+     * Drops every cached schema and plan.
+     */
+    public synchronized void invalidateAll() {
+        entriesByFileType.clear();
+        planBySchema.clear();
+    }
+
+    public synchronized int size() {
+        return entriesByFileType.size();
+    }
+
+    private static final class Entry {
+        private final Schema schema;
+        private final long loadedAtNanos;
+
+        private Entry(Schema schema, long loadedAtNanos) {
+            this.schema = schema;
+            this.loadedAtNanos = loadedAtNanos;
+        }
+    }
+}
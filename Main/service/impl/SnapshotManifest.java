@@ -0,0 +1,120 @@
+import lombok.Builder;
+import lombok.Value;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaNormalization;
+
+/**
+ * Records what a completed conversion was made from and where it was written, so that the next
+ * event for an unchanged source can skip the conversion.
+ *
+ * <p>The manifest is stored as JSON next to the destination, at the destination key without extension
+ * plus {@code snapshot.manifest.suffix}:
+ * <pre>
+ * {
+ *   "sourceBucketName": "source-bucket",
+ *   "sourceKey": "gbi/party.csv",
+ *   "sourceETag": "\"9b2cf535f27731c974343645a3985328\"",
+ *   "sourceSize": 1048576,
+ *   "schemaVersion": "c4f3a1d29e0b7765",
+ *   "destinationBucketName": "destination-bucket",
+ *   "destinationKey": "gbi-report/party.parquet",
+ *   "parts": 1,
+ *   "rowsWritten": 10000,
+ *   "completedAt": "2024-05-01T06:00:00Z"
+ * }
+ * </pre>
+ * The schema version is a fingerprint of the file type's whole parsed schema, logical types, precision
+ * and scale, and defaults included, so any schema change causes a reconversion while a reformatted
+ * schema file does not. The Parsing Canonical Form would drop those attributes.
+ */
+@Value
+@Builder(toBuilder = true)
+public class SnapshotManifest {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    String sourceBucketName;
+    String sourceKey;
+    String sourceETag;
+    long sourceSize;
+    String schemaVersion;
+    String destinationBucketName;
+    /** The Parquet object key, or the key prefix of the part files when converted in parallel. */
+    String destinationKey;
+    int parts;
+    long rowsWritten;
+    /** When the conversion completed, as an ISO-8601 instant; null until it has. */
+    String completedAt;
+
+    /**
+     * @return the version recorded for a schema: the 64-bit Avro fingerprint of its full JSON in hex
+     */
+    public static String schemaVersion(Schema avroSchema) {
+        return Long.toHexString(SchemaNormalization.fingerprint64(avroSchema.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * @return whether this manifest records a conversion of the same source version, with the same
+     *         schema, to the same destination as the other
+     */
+    public boolean isSameConversion(SnapshotManifest other) {
+        return other != null
+                && sourceSize == other.sourceSize
+                && Objects.equals(sourceBucketName, other.sourceBucketName)
+                && Objects.equals(sourceKey, other.sourceKey)
+                && Objects.equals(sourceETag, other.sourceETag)
+                && Objects.equals(schemaVersion, other.schemaVersion)
+                && Objects.equals(destinationBucketName, other.destinationBucketName)
+                && Objects.equals(destinationKey, other.destinationKey);
+    }
+
+    public String toJson() throws IOException {
+        ObjectNode root = OBJECT_MAPPER.createObjectNode();
+        root.put("sourceBucketName", sourceBucketName);
+        root.put("sourceKey", sourceKey);
+        root.put("sourceETag", sourceETag);
+        root.put("sourceSize", sourceSize);
+        root.put("schemaVersion", schemaVersion);
+        root.put("destinationBucketName", destinationBucketName);
+        root.put("destinationKey", destinationKey);
+        root.put("parts", parts);
+        root.put("rowsWritten", rowsWritten);
+        root.put("completedAt", completedAt);
+        return OBJECT_MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(root);
+    }
+
+    /**
+     * Parses a manifest written by {@link #toJson()}.
+     *
+     * @throws IOException if the JSON cannot be parsed or is not an object
+     */
+    public static SnapshotManifest parse(String json) throws IOException {
+        JsonNode root = OBJECT_MAPPER.readTree(json);
+        if (root == null || !root.isObject()) {
+            throw new IOException("Snapshot manifest must be a JSON object");
+        }
+        return SnapshotManifest.builder()
+                .sourceBucketName(text(root, "sourceBucketName"))
+                .sourceKey(text(root, "sourceKey"))
+                .sourceETag(text(root, "sourceETag"))
+                .sourceSize(root.path("sourceSize").asLong())
+                .schemaVersion(text(root, "schemaVersion"))
+                .destinationBucketName(text(root, "destinationBucketName"))
+                .destinationKey(text(root, "destinationKey"))
+                .parts(root.path("parts").asInt())
+                .rowsWritten(root.path("rowsWritten").asLong())
+                .completedAt(text(root, "completedAt"))
+                .build();
+    }
+
+    private static String text(JsonNode root, String field) {
+        return root.hasNonNull(field) ? root.get(field).asText() : null;
+    }
+}
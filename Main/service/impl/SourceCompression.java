@@ -0,0 +1,95 @@
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
+
+/**
+ * Compression of a CSV source object, detected from its key extension or, failing that, from the
+ * magic bytes at the start of the object.
+ */
+public enum SourceCompression {
+    NONE,
+    /** gzip, including multi-member files made by concatenating several gzip streams. */
+    GZIP,
+    /** Zstandard, including files of several concatenated frames. */
+    ZSTD,
+    /** bzip2, including concatenated streams such as pbzip2 output. */
+    BZIP2;
+
+    private static final int DECODE_BUFFER_SIZE = 64 * 1024;
+    private static final int MAGIC_LENGTH = 4;
+
+    /**
+     * Detects the compression of a source. A known extension ({@code .gz}, {@code .zst},
+     * {@code .bz2}) decides; otherwise the first bytes are checked, so a compressed file with a plain
+     * {@code .csv} key is still decoded.
+     *
+     * @param key the key of the source object
+     * @param source the start of the object; it is marked and reset, so no bytes are consumed
+     * @return the detected compression, or {@link #NONE}
+     * @throws IOException if the first bytes cannot be read
+     */
+    public static SourceCompression detect(String key, BufferedInputStream source) throws IOException {
+        SourceCompression byExtension = fromExtension(key);
+        if (byExtension != NONE) {
+            return byExtension;
+        }
+        source.mark(MAGIC_LENGTH);
+        byte[] magic = source.readNBytes(MAGIC_LENGTH);
+        source.reset();
+        return fromMagic(magic);
+    }
+
+    static SourceCompression fromExtension(String key) {
+        String lowerCaseKey = key == null ? "" : key.toLowerCase(Locale.ROOT);
+        if (lowerCaseKey.endsWith(".gz") || lowerCaseKey.endsWith(".gzip")) {
+            return GZIP;
+        }
+        if (lowerCaseKey.endsWith(".zst") || lowerCaseKey.endsWith(".zstd")) {
+            return ZSTD;
+        }
+        if (lowerCaseKey.endsWith(".bz2")) {
+            return BZIP2;
+        }
+        return NONE;
+    }
+
+    static SourceCompression fromMagic(byte[] magic) {
+        if (magic.length >= 2 && (magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B) {
+            return GZIP;
+        }
+        if (magic.length >= 4 && (magic[0] & 0xFF) == 0x28 && (magic[1] & 0xFF) == 0xB5
+                && (magic[2] & 0xFF) == 0x2F && (magic[3] & 0xFF) == 0xFD) {
+            return ZSTD;
+        }
+        // "BZh" plus the block size digit, so a CSV that merely starts with "BZh" is not mistaken for bzip2
+        if (magic.length >= 4 && magic[0] == 'B' && magic[1] == 'Z' && magic[2] == 'h' && magic[3] >= '1' && magic[3] <= '9') {
+            return BZIP2;
+        }
+        return NONE;
+    }
+
+    /**
+     * Wraps a compressed stream in a streaming decoder. Closing the decoder closes the source.
+     *
+     * @param source the compressed bytes
+     * @return the decoded bytes, or the source itself for {@link #NONE}
+     * @throws IOException if the stream header cannot be read
+     */
+    public InputStream decode(InputStream source) throws IOException {
+        switch (this) {
+            case GZIP:
+                return new GZIPInputStream(source, DECODE_BUFFER_SIZE);
+            case ZSTD:
+                return new ZstdCompressorInputStream(source);
+            case BZIP2:
+                return new BZip2CompressorInputStream(source, true);
+            default:
+                return source;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * The {@code _SUCCESS} object written under a part file prefix once every part is uploaded. Readers
+ * that wait for it never see a partial set of parts, and its body lists the parts in order:
+ * <pre>
+ * {
+ *   "parts": [
+ *     { "key": "gbi-report/party/part-00000.parquet", "rows": 1000000, "bytes": 73400320 },
+ *     { "key": "gbi-report/party/part-00001.parquet", "rows": 412345, "bytes": 30146560 }
+ *   ],
+ *   "rows": 1412345,
+ *   "completedAt": "2024-05-01T06:00:00Z"
+ * }
+ * </pre>
+ */
+public final class SuccessMarker {
+
+    static final String KEY = "_SUCCESS";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private SuccessMarker() {
+    }
+
+    /**
+     * @return the key of the marker for the parts under a prefix
+     */
+    public static String key(String prefix) {
+        return prefix + "/" + KEY;
+    }
+
+    /**
+     * @return the marker body listing the parts in the given order
+     */
+    public static String toJson(List<ParquetPart> parts) throws IOException {
+        ObjectNode root = OBJECT_MAPPER.createObjectNode();
+        ArrayNode partsNode = root.putArray("parts");
+        long rows = 0;
+        for (ParquetPart part : parts) {
+            partsNode.addObject()
+                    .put("key", part.getKey())
+                    .put("rows", part.getRows())
+                    .put("bytes", part.getBytes());
+            rows += part.getRows();
+        }
+        root.put("rows", rows);
+        root.put("completedAt", Instant.now().toString());
+        return OBJECT_MAPPER.writerWithDefaultPrettyPrinter().writeValueAsString(root);
+    }
+}
@@ -0,0 +1,21 @@
+import java.io.IOException;
+import org.apache.avro.Schema;
+
+/**
+ * Thrown when a CSV cell cannot be converted to its schema type, or a field that is not nullable has no
+ * value, under {@link UnparsableValuePolicy#FAIL}.
+ */
+public class UnparsableValueException extends IOException {
+
+    public UnparsableValueException(String fieldName, String value, Schema fieldSchema, Throwable cause) {
+        super("Unparsable value '" + value + "' for field '" + fieldName + "' of type " + fieldSchema, cause);
+    }
+
+    /**
+     * For a field that is not nullable but has no value: an empty cell of a non-string type, or a
+     * column missing from the row or the header.
+     */
+    public UnparsableValueException(String fieldName, Schema fieldSchema) {
+        super("Missing value for field '" + fieldName + "' of type " + fieldSchema + ", which is not nullable");
+    }
+}
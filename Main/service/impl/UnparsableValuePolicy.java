@@ -0,0 +1,11 @@
+/**
+ * What to do with a CSV cell that cannot be converted to the type its schema field declares.
+ */
+public enum UnparsableValuePolicy {
+    /** Write null for the field (rows are rejected instead if the field is not nullable). */
+    NULL,
+    /** Skip the whole row and keep converting. */
+    REJECT_ROW,
+    /** Fail the conversion job. */
+    FAIL
+}
@@ -0,0 +1,102 @@
+import java.util.Arrays;
+
+import org.apache.avro.util.Utf8;
+
+/**
+ * Bounded cache of the encoded form of one string field's values. The Parquet writer takes a
+ * {@link Utf8} as the bytes of a string column as is, while a {@code String} is encoded into new
+ * bytes for every row; handing it the same {@code Utf8} for a repeated value saves that allocation.
+ *
+ * <p>Holds at most {@code capacity} values of up to {@value #MAX_VALUE_LENGTH} characters each; once
+ * full, new values are passed through as strings. A field whose values mostly miss after that stops
+ * being looked up at all. Lookups are cheapest when repeated values are the same {@code String}
+ * instance, as {@link CellInterner} makes them, since the hash is then cached and equality is identity.
+ *
+ * <p>The returned instances are shared between rows and must not be modified. Not thread-safe; each
+ * encoding thread keeps its own, see {@link CsvProjectionPlan#newUtf8Caches(int)}.
+ */
+final class Utf8Cache {
+
+    static final int MAX_VALUE_LENGTH = 64;
+    /** Lookups per hit-rate check once the cache is full. */
+    private static final int SAMPLE_WINDOW = 4096;
+
+    private final int capacity;
+    private final int mask;
+    private final String[] keys;
+    private final Utf8[] values;
+    private int size;
+    private int windowLookups;
+    private int windowHits;
+    private boolean enabled = true;
+
+    Utf8Cache(int capacity) {
+        this.capacity = capacity;
+        int tableSize = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1;
+        this.mask = tableSize - 1;
+        this.keys = new String[tableSize];
+        this.values = new Utf8[tableSize];
+    }
+
+    /**
+     * @return the cached {@code Utf8} of the value, or the value itself if it is not cached
+     */
+    CharSequence get(String value) {
+        if (!enabled || value.length() > MAX_VALUE_LENGTH) {
+            return value;
+        }
+        int hash = value.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        String key;
+        while ((key = keys[slot]) != null) {
+            if (key == value || key.equals(value)) {
+                sample(true);
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size < capacity) {
+            Utf8 utf8 = new Utf8(value);
+            keys[slot] = value;
+            values[slot] = utf8;
+            size++;
+            return utf8;
+        }
+        sample(false);
+        return value;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the value as a {@code Utf8} if it is a string, otherwise unchanged; for values such as
+     *         the EFF_DT and ETL_TS stamps that are written into every row
+     */
+    static Object encodeOnce(Object value) {
+        return value instanceof String ? new Utf8((String) value) : value;
+    }
+
+    /**
+     * Once the cache is full, switches it off if fewer than half the lookups of a window hit.
+     */
+    private void sample(boolean hit) {
+        if (size < capacity) {
+            return;
+        }
+        windowLookups++;
+        if (hit) {
+            windowHits++;
+        }
+        if (windowLookups == SAMPLE_WINDOW) {
+            if (windowHits * 2 < windowLookups) {
+                enabled = false;
+                Arrays.fill(keys, null);
+                Arrays.fill(values, null);
+            }
+            windowLookups = 0;
+            windowHits = 0;
+        }
+    }
+}
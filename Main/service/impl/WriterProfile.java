@@ -0,0 +1,188 @@
+import lombok.Builder;
+import lombok.Value;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * How the Parquet writer encodes one file type: compression codec and level, row group and page
+ * sizes, dictionary encoding and bloom filters.
+ *
+ * <p>A profile is read from {@code /schemas/<fileTobeProcessed>.writer.json}, next to the file
+ * type's schema. Every key is optional and falls back to {@code snapshot.writer.*}:
+ * <pre>
+ * {
+ *   "codec": "ZSTD",
+ *   "compressionLevel": 9,
+ *   "rowGroupSize": "256MB",
+ *   "pageSize": "1MB",
+ *   "dictionaryPageSize": "2MB",
+ *   "dictionary": { "enabled": true, "columns": { "FREE_TEXT": false } },
+ *   "bloomFilters": { "PARTY_ID": 5000000 }
+ * }
+ * </pre>
+ * Sizes are bytes or data sizes such as {@code "8MB"}. A bloom filter's value is the expected number
+ * of distinct values in a row group; zero leaves it to Parquet. The compression level applies to
+ * ZSTD (1-22) and GZIP (1-9).
+ */
+@Value
+@Builder(toBuilder = true)
+public class WriterProfile {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    /** Identifies the profile in logs and evaluation reports. */
+    String name;
+    CompressionCodecName codec;
+    /** Codec-specific compression level, or null for the codec's default. */
+    Integer compressionLevel;
+    long rowGroupSize;
+    int pageSize;
+    int dictionaryPageSize;
+    /** Dictionary encoding for columns not listed in {@link #dictionaryByColumn}. */
+    boolean dictionaryEnabled;
+    /** Per-column overrides of {@link #dictionaryEnabled}. */
+    Map<String, Boolean> dictionaryByColumn;
+    /** Columns with a bloom filter, mapped to their expected distinct values per row group. */
+    Map<String, Long> bloomFilterColumns;
+
+    /**
+     * Returns the profile configured by {@code snapshot.writer.*}, used for file types without a
+     * profile of their own.
+     */
+    public static WriterProfile defaults(SnapshotProperties.Writer writer) {
+        return WriterProfile.builder()
+                .name("default")
+                .codec(writer.getCodec())
+                .compressionLevel(writer.getCompressionLevel())
+                .rowGroupSize(writer.getRowGroupSize().toBytes())
+                .pageSize((int) writer.getPageSize().toBytes())
+                .dictionaryPageSize((int) writer.getDictionaryPageSize().toBytes())
+                .dictionaryEnabled(writer.isDictionaryEnabled())
+                .dictionaryByColumn(Map.of())
+                .bloomFilterColumns(Map.of())
+                .build()
+                .validate();
+    }
+
+    /**
+     * Parses a writer profile, taking every setting it leaves out from the base profile.
+     *
+     * @param name the name of the parsed profile
+     * @param json the profile JSON
+     * @param base the profile supplying defaults
+     * @return the parsed profile
+     * @throws IOException if the JSON cannot be parsed or a setting is invalid
+     */
+    public static WriterProfile parse(String name, String json, WriterProfile base) throws IOException {
+        JsonNode root = OBJECT_MAPPER.readTree(json);
+        if (root == null || !root.isObject()) {
+            throw new IOException("Writer profile must be a JSON object: " + name);
+        }
+        try {
+            WriterProfileBuilder builder = base.toBuilder().name(name);
+            if (root.hasNonNull("codec")) {
+                builder.codec(CompressionCodecName.valueOf(root.get("codec").asText().toUpperCase()));
+                // A level only makes sense for the codec it was chosen for
+                builder.compressionLevel(null);
+            }
+            if (root.hasNonNull("compressionLevel")) {
+                builder.compressionLevel(root.get("compressionLevel").asInt());
+            }
+            if (root.hasNonNull("rowGroupSize")) {
+                builder.rowGroupSize(size(root.get("rowGroupSize")));
+            }
+            if (root.hasNonNull("pageSize")) {
+                builder.pageSize(Math.toIntExact(size(root.get("pageSize"))));
+            }
+            if (root.hasNonNull("dictionaryPageSize")) {
+                builder.dictionaryPageSize(Math.toIntExact(size(root.get("dictionaryPageSize"))));
+            }
+            JsonNode dictionary = root.path("dictionary");
+            if (dictionary.hasNonNull("enabled")) {
+                builder.dictionaryEnabled(dictionary.get("enabled").asBoolean());
+            }
+            if (dictionary.has("columns")) {
+                Map<String, Boolean> dictionaryByColumn = new LinkedHashMap<>();
+                dictionary.get("columns").fields().forEachRemaining(column -> dictionaryByColumn.put(column.getKey(), column.getValue().asBoolean()));
+                builder.dictionaryByColumn(Map.copyOf(dictionaryByColumn));
+            }
+            if (root.has("bloomFilters")) {
+                Map<String, Long> bloomFilterColumns = new LinkedHashMap<>();
+                JsonNode bloomFilters = root.get("bloomFilters");
+                if (bloomFilters.isArray()) {
+                    bloomFilters.forEach(column -> bloomFilterColumns.put(column.asText(), 0L));
+                } else {
+                    bloomFilters.fields().forEachRemaining(column -> bloomFilterColumns.put(column.getKey(), column.getValue().asLong()));
+                }
+                builder.bloomFilterColumns(Map.copyOf(bloomFilterColumns));
+            }
+            return builder.build().validate();
+        } catch (IllegalArgumentException | ArithmeticException e) {
+            throw new IOException("Invalid writer profile " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the profiles a writer profile evaluation compares: this one, its codec without
+     * dictionary encoding, and the common codecs and levels with this profile's sizes.
+     */
+    public List<WriterProfile> candidates() {
+        WriterProfileBuilder sameSizes = toBuilder();
+        return List.of(
+                this,
+                toBuilder().name(name + "-no-dictionary").dictionaryEnabled(false).dictionaryByColumn(Map.of()).build(),
+                sameSizes.name("uncompressed").codec(CompressionCodecName.UNCOMPRESSED).compressionLevel(null).build(),
+                sameSizes.name("snappy").codec(CompressionCodecName.SNAPPY).compressionLevel(null).build(),
+                sameSizes.name("gzip-6").codec(CompressionCodecName.GZIP).compressionLevel(6).build(),
+                sameSizes.name("zstd-1").codec(CompressionCodecName.ZSTD).compressionLevel(1).build(),
+                sameSizes.name("zstd-3").codec(CompressionCodecName.ZSTD).compressionLevel(3).build(),
+                sameSizes.name("zstd-9").codec(CompressionCodecName.ZSTD).compressionLevel(9).build(),
+                sameSizes.name("zstd-19").codec(CompressionCodecName.ZSTD).compressionLevel(19).build());
+    }
+
+    /**
+     * @return whether the given column is dictionary encoded under this profile
+     */
+    public boolean isDictionaryEnabled(String column) {
+        return dictionaryByColumn.getOrDefault(column, dictionaryEnabled);
+    }
+
+    private WriterProfile validate() {
+        if (codec == null) {
+            throw new IllegalArgumentException("codec is required");
+        }
+        if (compressionLevel != null) {
+            switch (codec) {
+                case ZSTD:
+                    checkRange(compressionLevel, 1, 22);
+                    break;
+                case GZIP:
+                    checkRange(compressionLevel, 1, 9);
+                    break;
+                default:
+                    throw new IllegalArgumentException("compressionLevel is not supported for codec " + codec);
+            }
+        }
+        if (rowGroupSize <= 0 || pageSize <= 0 || dictionaryPageSize <= 0) {
+            throw new IllegalArgumentException("rowGroupSize, pageSize and dictionaryPageSize must be positive");
+        }
+        return this;
+    }
+
+    private void checkRange(int level, int min, int max) {
+        if (level < min || level > max) {
+            throw new IllegalArgumentException("compressionLevel for " + codec + " must be between " + min + " and " + max + ": " + level);
+        }
+    }
+
+    private static long size(JsonNode node) {
+        return node.isNumber() ? node.asLong() : DataSize.parse(node.asText()).toBytes();
+    }
+}
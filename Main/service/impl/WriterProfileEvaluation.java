@@ -0,0 +1,17 @@
+import lombok.Value;
+
+/**
+ * The size and encode time of a sample written with one candidate {@link WriterProfile}.
+ */
+@Value
+public class WriterProfileEvaluation {
+    String profile;
+    String codec;
+    /** The codec-specific level, or null for the codec's default. */
+    Integer compressionLevel;
+    boolean dictionaryEnabled;
+    long rows;
+    long bytes;
+    /** The fastest of the measured encodes of the sample. */
+    long encodeNanos;
+}
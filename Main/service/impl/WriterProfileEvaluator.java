@@ -0,0 +1,113 @@
+import lombok.extern.slf4j.Slf4j;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+
+/**
+ * Writes a sample of records with each candidate {@link WriterProfile} and reports the encoded size
+ * against the encode time, to help choose a profile for a file type.
+ *
+ * <p>Output is counted and discarded, so only encoding and compression are measured. Each candidate
+ * is encoded once to warm up and then {@code rounds} times; the fastest round is reported.
+ */
+@Slf4j
+public class WriterProfileEvaluator {
+
+    private final ParquetWriterFactory parquetWriterFactory;
+    private final int rounds;
+
+    public WriterProfileEvaluator(ParquetWriterFactory parquetWriterFactory, int rounds) {
+        this.parquetWriterFactory = parquetWriterFactory;
+        this.rounds = Math.max(1, rounds);
+    }
+
+    /**
+     * Encodes the sample with every candidate.
+     *
+     * @param sample the records to encode, all of the given schema
+     * @param avroSchema the Avro schema of the records
+     * @param candidates the profiles to compare
+     * @return one evaluation per candidate, in the order of the candidates
+     * @throws IOException if a candidate cannot encode the sample
+     */
+    public List<WriterProfileEvaluation> evaluate(List<? extends GenericRecord> sample, Schema avroSchema, List<WriterProfile> candidates) throws IOException {
+        List<WriterProfileEvaluation> evaluations = new ArrayList<>(candidates.size());
+        for (WriterProfile candidate : candidates) {
+            long bytes = encode(sample, avroSchema, candidate);
+            long fastestNanos = Long.MAX_VALUE;
+            for (int round = 0; round < rounds; round++) {
+                long start = System.nanoTime();
+                encode(sample, avroSchema, candidate);
+                fastestNanos = Math.min(fastestNanos, System.nanoTime() - start);
+            }
+            WriterProfileEvaluation evaluation = new WriterProfileEvaluation(candidate.getName(), candidate.getCodec().name(),
+                    candidate.getCompressionLevel(), candidate.isDictionaryEnabled(), sample.size(), bytes, fastestNanos);
+            log.info("Writer profile {}: {} rows encoded to {} bytes in {} ms", evaluation.getProfile(), evaluation.getRows(),
+                    evaluation.getBytes(), evaluation.getEncodeNanos() / 1_000_000);
+            evaluations.add(evaluation);
+        }
+        return evaluations;
+    }
+
+    private long encode(List<? extends GenericRecord> sample, Schema avroSchema, WriterProfile profile) throws IOException {
+        CountingOutputFile outputFile = new CountingOutputFile();
+        try (ParquetWriter<GenericRecord> writer = parquetWriterFactory.create(outputFile, avroSchema, profile)) {
+            for (GenericRecord record : sample) {
+                writer.write(record);
+            }
+        }
+        return outputFile.bytesWritten;
+    }
+
+    private static final class CountingOutputFile implements OutputFile {
+        private long bytesWritten;
+
+        @Override
+        public PositionOutputStream create(long blockSizeHint) {
+            return new PositionOutputStream() {
+                private long position;
+
+                @Override
+                public long getPos() {
+                    return position;
+                }
+
+                @Override
+                public void write(int b) {
+                    position++;
+                }
+
+                @Override
+                public void write(byte[] bytes, int offset, int length) {
+                    position += length;
+                }
+
+                @Override
+                public void close() {
+                    bytesWritten = position;
+                }
+            };
+        }
+
+        @Override
+        public PositionOutputStream createOrOverwrite(long blockSizeHint) {
+            return create(blockSizeHint);
+        }
+
+        @Override
+        public boolean supportsBlockSize() {
+            return false;
+        }
+
+        @Override
+        public long defaultBlockSize() {
+            return 0;
+        }
+    }
+}
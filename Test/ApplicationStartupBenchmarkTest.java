@@ -0,0 +1,48 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+/**
+ * Compares the cost of the first invocation in a JVM (context start) with later invocations that
+ * reuse the warm context, for both the full and the lean startup configuration. No event is
+ * processed, so the numbers are the per-invocation overhead before the handler runs. The full
+ * configuration is measured first and so also pays the JVM's class loading, as a real cold start does.
+ *
+ * <pre>
+ * mvn test -Dtest=ApplicationStartupBenchmarkTest -Dsnapshot.benchmark=true
+ * </pre>
+ */
+@EnabledIfSystemProperty(named = "snapshot.benchmark", matches = "true")
+class ApplicationStartupBenchmarkTest {
+
+    private static final int WARM_INVOCATIONS = 1000;
+
+    @Test
+    void benchmarkColdVersusWarmInvocation() {
+        String leanStartup = System.getProperty(Application.LEAN_STARTUP_PROPERTY);
+        try {
+            for (boolean lean : new boolean[] {false, true}) {
+                System.setProperty(Application.LEAN_STARTUP_PROPERTY, Boolean.toString(lean));
+                Application.closeApplicationContext();
+
+                long start = System.nanoTime();
+                Application.getapplicationcontext(new String[] {}).getBean(Handler.class);
+                long coldNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < WARM_INVOCATIONS; i++) {
+                    Application.getapplicationcontext(new String[] {}).getBean(Handler.class);
+                }
+                long warmNanos = (System.nanoTime() - start) / WARM_INVOCATIONS;
+
+                System.out.printf("%-5s startup  cold %,10.1f ms  warm %,10.3f ms%n", lean ? "lean" : "full", coldNanos / 1e6, warmNanos / 1e6);
+            }
+        } finally {
+            Application.closeApplicationContext();
+            if (leanStartup == null) {
+                System.clearProperty(Application.LEAN_STARTUP_PROPERTY);
+            } else {
+                System.setProperty(Application.LEAN_STARTUP_PROPERTY, leanStartup);
+            }
+        }
+    }
+}
@@ -1,3 +1,4 @@
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
@@ -5,9 +6,13 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ConfigurableApplicationContext;
+import software.amazon.awssdk.services.s3.S3Client;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.*;
 
 class ApplicationTest {
@@ -18,6 +23,9 @@ class ApplicationTest {
     @Mock
     private Handler handler;
 
+    @Mock
+    private SnapshotService snapshotService;
+
     @InjectMocks
     private Application application;
 
@@ -25,13 +33,19 @@ class ApplicationTest {
     void setUp() {
         MockitoAnnotations.openMocks(this);
         when(configurableApplicationContext.getBean(Handler.class)).thenReturn(handler);
+        when(configurableApplicationContext.isActive()).thenReturn(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Application.closeApplicationContext();
     }
 
     @Test
     void testApply() {
-        Map<String, String> event = new HashMap<>();
+        Map<String, Object> event = new HashMap<>();
         Map<String, Object> expectedResponse = new HashMap<>();
-        when(handler.apply(event)).thenReturn(expectedResponse);
+        when(handler.handle(event)).thenReturn(expectedResponse);
 
         // Mock the static method to return the mocked application context
         try (var mockedContext = mockStatic(Application.class)) {
@@ -41,7 +55,64 @@ class ApplicationTest {
             Map result = application.apply(event);
 
             assertEquals(expectedResponse, result);
-            verify(handler).apply(event);
+            verify(handler).handle(event);
+        }
+    }
+
+    @Test
+    void testApply_JobsArrayConvertsEachJob() throws Exception {
+        Map<String, Object> event = new HashMap<>();
+        event.put("sourceBucketName", "my-source-bucket");
+        event.put("destinationBucketName", "my-destination-bucket");
+        event.put("fileTobeProcessed", "gbi_party");
+        event.put("jobs", List.of(
+                Map.of("sourceFileKey", "gbi/party.csv", "destinationFileKey", "gbi-report/party.csv"),
+                Map.of("sourceFileKey", "gbi/account.csv", "destinationFileKey", "gbi-report/account.csv",
+                        "fileTobeProcessed", "gbi_account", "forceReprocess", true)));
+
+        Map response = applyWithRealHandler(event);
+
+        assertEquals(2, response.get("succeeded"));
+        verify(snapshotService).convertCsvToParquetAndUpload(
+                "my-source-bucket", "gbi/party.csv", "gbi_party", "my-destination-bucket", "gbi-report/party.csv", false);
+        verify(snapshotService).convertCsvToParquetAndUpload(
+                "my-source-bucket", "gbi/account.csv", "gbi_account", "my-destination-bucket", "gbi-report/account.csv", true);
+    }
+
+    @Test
+    void testApply_JobsAsJsonString() throws Exception {
+        Map<String, Object> event = new HashMap<>();
+        event.put("sourceBucketName", "my-source-bucket");
+        event.put("destinationBucketName", "my-destination-bucket");
+        event.put("fileTobeProcessed", "gbi_party");
+        event.put("jobs", "[{\"sourceFileKey\": \"gbi/party.csv\", \"destinationFileKey\": \"gbi-report/party.csv\"}]");
+
+        Map response = applyWithRealHandler(event);
+
+        assertEquals(1, response.get("succeeded"));
+        verify(snapshotService).convertCsvToParquetAndUpload(
+                "my-source-bucket", "gbi/party.csv", "gbi_party", "my-destination-bucket", "gbi-report/party.csv", false);
+    }
+
+    @Test
+    void testApply_RejectsJobsThatAreNotAnArray() {
+        Map<String, Object> event = new HashMap<>();
+        event.put("jobs", "gbi/party.csv");
+
+        assertThrows(IllegalArgumentException.class, () -> applyWithRealHandler(event));
+        verifyNoInteractions(snapshotService);
+    }
+
+    private Map applyWithRealHandler(Map<String, Object> event) {
+        Handler realHandler = new Handler(snapshotService, mock(S3Client.class), new SnapshotProperties());
+        when(configurableApplicationContext.getBean(Handler.class)).thenReturn(realHandler);
+        try (var mockedContext = mockStatic(Application.class)) {
+            mockedContext.when(() -> Application.getapplicationcontext(any(String[].class)))
+                         .thenReturn(configurableApplicationContext);
+
+            return application.apply(event);
+        } finally {
+            realHandler.shutdown();
         }
     }
 
@@ -59,4 +130,35 @@ class ApplicationTest {
             assertEquals(configurableApplicationContext, context);
         }
     }
+
+    @Test
+    void testGetApplicationContext_StartsOnceAndReuses() {
+        try (var mockedContext = mockStatic(Application.class, CALLS_REAL_METHODS)) {
+            mockedContext.when(() -> Application.startContext(any(String[].class)))
+                         .thenReturn(configurableApplicationContext);
+
+            ApplicationContext first = Application.getapplicationcontext(new String[] {});
+            ApplicationContext second = Application.getapplicationcontext(new String[] {});
+
+            assertSame(first, second);
+            mockedContext.verify(() -> Application.startContext(any(String[].class)), times(1));
+        }
+    }
+
+    @Test
+    void testGetApplicationContext_RestartsClosedContext() {
+        ConfigurableApplicationContext restarted = mock(ConfigurableApplicationContext.class);
+        when(restarted.isActive()).thenReturn(true);
+
+        try (var mockedContext = mockStatic(Application.class, CALLS_REAL_METHODS)) {
+            mockedContext.when(() -> Application.startContext(any(String[].class)))
+                         .thenReturn(configurableApplicationContext, restarted);
+
+            Application.getapplicationcontext(new String[] {});
+            when(configurableApplicationContext.isActive()).thenReturn(false);
+            ApplicationContext context = Application.getapplicationcontext(new String[] {});
+
+            assertSame(restarted, context);
+        }
+    }
 }
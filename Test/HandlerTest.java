@@ -1,12 +1,20 @@
 import static org.mockito.Mockito.*;
 import static org.junit.jupiter.api.Assertions.*;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class HandlerTest {
@@ -14,6 +22,12 @@ public class HandlerTest {
     @Mock
     private SnapshotService snapshotService;
 
+    @Mock
+    private S3Client s3Client;
+
+    @Spy
+    private SnapshotProperties snapshotProperties = new SnapshotProperties();
+
     @InjectMocks
     private Handler handler;
 
@@ -22,8 +36,23 @@ public class HandlerTest {
         MockitoAnnotations.openMocks(this);
     }
 
+    @AfterEach
+    public void tearDown() {
+        handler.shutdown();
+    }
+
+    private static Map<String, String> event(String sourceFileKey) {
+        Map<String, String> event = new HashMap<>();
+        event.put("sourceBucketName", "my-source-bucket");
+        event.put("sourceFileKey", sourceFileKey);
+        event.put("destinationBucketName", "my-destination-bucket");
+        event.put("destinationFileKey", "gbi-report/");
+        event.put("fileTobeProcessed", "someFileType");
+        return event;
+    }
+
     @Test
-    public void testApply_success() {
+    public void testApply_success() throws Exception {
         // Arrange
         Map<String, String> event = new HashMap<>();
         event.put("sourceBucketName", "my-source-bucket");
@@ -37,11 +66,11 @@ public class HandlerTest {
 
         // Assert
         verify(snapshotService).convertCsvToParquetAndUpload(
-                "my-source-bucket", "gbi/party.csv", "someFileType", "my-destination-bucket", "gbi-report/");
+                "my-source-bucket", "gbi/party.csv", "someFileType", "my-destination-bucket", "gbi-report/", false);
     }
 
     @Test
-    public void testApply_exception() {
+    public void testApply_exception() throws Exception {
         // Arrange
         Map<String, String> event = new HashMap<>();
         event.put("sourceBucketName", "my-source-bucket");
@@ -52,7 +81,7 @@ public class HandlerTest {
 
         doThrow(new RuntimeException("Exception occurred during file conversion. Please try again..."))
                 .when(snapshotService)
-                .convertCsvToParquetAndUpload(anyString(), anyString(), anyString(), anyString(), anyString());
+                .convertCsvToParquetAndUpload(anyString(), anyString(), anyString(), anyString(), anyString(), anyBoolean());
 
         // Act & Assert
         RuntimeException thrown = assertThrows(RuntimeException.class, () -> {
@@ -61,4 +90,157 @@ public class HandlerTest {
 
         assertEquals("Exception occurred during file conversion. Please try again...", thrown.getMessage());
     }
+
+    @Test
+    public void testApply_reportsRowCounts() throws Exception {
+        when(snapshotService.convertCsvToParquetAndUpload(anyString(), anyString(), anyString(), anyString(), anyString(), anyBoolean()))
+                .thenReturn(new ConversionResult("my-destination-bucket", "gbi-report/party.parquet", 1, 10, 9, 1, 100, 50, 5, false));
+
+        Map response = handler.apply(event("gbi/party.csv"));
+
+        assertEquals(Handler.STATUS_SUCCEEDED, response.get("status"));
+        assertEquals(9L, response.get("rowsWritten"));
+        assertEquals(1L, response.get("rowsRejected"));
+        assertEquals("gbi-report/party.parquet", response.get("destinationFileKey"));
+    }
+
+    @Test
+    public void testApply_reportsSkippedUnchangedSource() throws Exception {
+        when(snapshotService.convertCsvToParquetAndUpload(anyString(), anyString(), anyString(), anyString(), anyString(), anyBoolean()))
+                .thenReturn(new ConversionResult("my-destination-bucket", "gbi-report/party.parquet", 1, 0, 0, 0, 0, 0, 2, true));
+
+        Map response = handler.apply(event("gbi/party.csv"));
+
+        assertEquals(Handler.STATUS_SKIPPED, response.get("status"));
+        assertEquals(true, response.get("skipped"));
+        assertEquals("gbi-report/party.parquet", response.get("destinationFileKey"));
+    }
+
+    @Test
+    public void testApply_forceReprocessIsPassedOn() throws Exception {
+        Map<String, String> event = event("gbi/party.csv");
+        event.put("forceReprocess", "true");
+
+        handler.apply(event);
+
+        verify(snapshotService).convertCsvToParquetAndUpload(
+                "my-source-bucket", "gbi/party.csv", "someFileType", "my-destination-bucket", "gbi-report/", true);
+    }
+
+    @Test
+    public void testApplyBatch_countsSkippedFilesSeparately() throws Exception {
+        when(snapshotService.convertCsvToParquetAndUpload(anyString(), anyString(), anyString(), anyString(), anyString(), anyBoolean()))
+                .thenReturn(new ConversionResult("my-destination-bucket", "gbi-report/a.parquet", 1, 5, 5, 0, 50, 25, 3, false));
+        when(snapshotService.convertCsvToParquetAndUpload(anyString(), eq("gbi/b.csv"), anyString(), anyString(), anyString(), anyBoolean()))
+                .thenReturn(new ConversionResult("my-destination-bucket", "gbi-report/b.parquet", 1, 0, 0, 0, 0, 0, 1, true));
+
+        Map<String, Object> response = handler.applyBatch(List.of(event("gbi/a.csv"), event("gbi/b.csv")));
+
+        assertEquals(1, response.get("succeeded"));
+        assertEquals(1, response.get("skipped"));
+        assertEquals(0, response.get("failed"));
+    }
+
+    @Test
+    public void testApplyBatch_failedFileDoesNotAbortOthers() throws Exception {
+        doThrow(new IOException("Error converting CSV data to Parquet"))
+                .when(snapshotService)
+                .convertCsvToParquetAndUpload(anyString(), eq("gbi/bad.csv"), anyString(), anyString(), anyString(), anyBoolean());
+
+        Map<String, Object> response = handler.applyBatch(List.of(event("gbi/a.csv"), event("gbi/bad.csv"), event("gbi/b.csv")));
+
+        assertEquals(2, response.get("succeeded"));
+        assertEquals(1, response.get("failed"));
+        List<Map<String, Object>> files = (List<Map<String, Object>>) response.get("files");
+        assertEquals(List.of("gbi/a.csv", "gbi/bad.csv", "gbi/b.csv"), files.stream().map(file -> file.get("sourceFileKey")).toList());
+        assertEquals(Handler.STATUS_FAILED, files.get(1).get("status"));
+        assertEquals("Error converting CSV data to Parquet", files.get(1).get("error"));
+        verify(snapshotService, times(3)).convertCsvToParquetAndUpload(anyString(), anyString(), anyString(), anyString(), anyString(), anyBoolean());
+    }
+
+    @Test
+    public void testApplyBatch_errorIsTimedFromItsOwnStart() throws Exception {
+        SnapshotProperties sequential = new SnapshotProperties();
+        sequential.getBatch().setConcurrency(1);
+        Handler sequentialHandler = new Handler(snapshotService, s3Client, sequential);
+        when(snapshotService.convertCsvToParquetAndUpload(anyString(), eq("gbi/slow.csv"), anyString(), anyString(), anyString(), anyBoolean()))
+                .thenAnswer(invocation -> {
+                    Thread.sleep(500);
+                    return null;
+                });
+        when(snapshotService.convertCsvToParquetAndUpload(anyString(), eq("gbi/broken.csv"), anyString(), anyString(), anyString(), anyBoolean()))
+                .thenThrow(new AssertionError("Broken converter"));
+
+        Map<String, Object> response;
+        try {
+            response = sequentialHandler.applyBatch(List.of(event("gbi/slow.csv"), event("gbi/broken.csv")));
+        } finally {
+            sequentialHandler.shutdown();
+        }
+
+        List<Map<String, Object>> files = (List<Map<String, Object>>) response.get("files");
+        assertEquals(Handler.STATUS_FAILED, files.get(1).get("status"));
+        assertEquals("Broken converter", files.get(1).get("error"));
+        // It only started once the slow file ended, so the batch's elapsed time is not its own
+        assertTrue((Long) files.get(1).get("elapsedMillis") < 500, "elapsed " + files.get(1).get("elapsedMillis"));
+    }
+
+    @Test
+    public void testHandle_jobsWithSourcePrefixExpand() throws Exception {
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(ListObjectsV2Response.builder()
+                        .contents(S3Object.builder().key("gbi/party.csv").build())
+                        .isTruncated(false).build());
+        Map<String, Object> event = new HashMap<>(event(null));
+        event.remove("sourceFileKey");
+        event.put("jobs", List.of(Map.of("sourcePrefix", "gbi/"), Map.of("sourceFileKey", "other/account.csv", "destinationFileKey", "other-report/account.csv")));
+
+        Map response = handler.handle(event);
+
+        assertEquals(2, response.get("succeeded"));
+        verify(snapshotService).convertCsvToParquetAndUpload(
+                "my-source-bucket", "gbi/party.csv", "someFileType", "my-destination-bucket", "gbi-report/party.csv", false);
+        verify(snapshotService).convertCsvToParquetAndUpload(
+                "my-source-bucket", "other/account.csv", "someFileType", "my-destination-bucket", "other-report/account.csv", false);
+    }
+
+    @Test
+    public void testApply_sourcePrefixExpandsToBatch() throws Exception {
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(ListObjectsV2Response.builder()
+                        .contents(S3Object.builder().key("gbi/").build(), S3Object.builder().key("gbi/party.csv").build())
+                        .isTruncated(true).nextContinuationToken("page-2").build())
+                .thenReturn(ListObjectsV2Response.builder()
+                        .contents(S3Object.builder().key("gbi/2024/account.csv").build())
+                        .isTruncated(false).build());
+        Map<String, String> event = event(null);
+        event.remove("sourceFileKey");
+        event.put("sourcePrefix", "gbi/");
+
+        Map response = handler.apply(event);
+
+        assertEquals(2, response.get("succeeded"));
+        verify(snapshotService).convertCsvToParquetAndUpload(
+                "my-source-bucket", "gbi/party.csv", "someFileType", "my-destination-bucket", "gbi-report/party.csv", false);
+        verify(snapshotService).convertCsvToParquetAndUpload(
+                "my-source-bucket", "gbi/2024/account.csv", "someFileType", "my-destination-bucket", "gbi-report/2024/account.csv", false);
+        verify(s3Client, times(2)).listObjectsV2(any(ListObjectsV2Request.class));
+    }
+
+    @Test
+    public void testApply_evaluateWriterProfilesConvertsNothing() throws Exception {
+        when(snapshotService.evaluateWriterProfiles("my-source-bucket", "gbi/party.csv", "someFileType")).thenReturn(List.of(
+                new WriterProfileEvaluation("someFileType", "SNAPPY", null, true, 1000, 52_000, 4_000_000),
+                new WriterProfileEvaluation("zstd-9", "ZSTD", 9, true, 1000, 31_000, 9_500_000)));
+        Map<String, String> event = event("gbi/party.csv");
+        event.put("mode", Handler.MODE_EVALUATE_WRITER_PROFILES);
+
+        Map response = handler.apply(event);
+
+        List<Map<String, Object>> candidates = (List<Map<String, Object>>) response.get("candidates");
+        assertEquals(List.of("someFileType", "zstd-9"), candidates.stream().map(candidate -> candidate.get("profile")).toList());
+        assertEquals(31_000L, candidates.get(1).get("bytes"));
+        assertEquals(9.5, candidates.get(1).get("encodeMillis"));
+        verify(snapshotService, never()).convertCsvToParquetAndUpload(anyString(), anyString(), anyString(), anyString(), anyString(), anyBoolean());
+    }
 }
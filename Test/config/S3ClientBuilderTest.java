@@ -0,0 +1,37 @@
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ServiceClientConfiguration;
+import java.net.URI;
+import java.time.Duration;
+import static org.junit.jupiter.api.Assertions.*;
+
+class S3ClientBuilderTest {
+
+    @Test
+    void testS3Client_AppliesRegionAndEndpointOverride() {
+        SnapshotProperties properties = new SnapshotProperties();
+        properties.getS3().setRegion("eu-west-1");
+        properties.getS3().setEndpointOverride("http://localhost:9090");
+        properties.getS3().setPathStyleAccess(true);
+        properties.getS3().setApiCallAttemptTimeout(Duration.ofSeconds(30));
+
+        try (S3Client s3Client = new S3ClientBuilder().s3Client(properties)) {
+            S3ServiceClientConfiguration configuration = s3Client.serviceClientConfiguration();
+
+            assertEquals(Region.EU_WEST_1, configuration.region());
+            assertEquals(URI.create("http://localhost:9090"), configuration.endpointOverride().orElseThrow());
+            assertEquals(Duration.ofSeconds(30), configuration.overrideConfiguration().apiCallAttemptTimeout().orElseThrow());
+        }
+    }
+
+    @Test
+    void testS3Client_DefaultsToRegionalEndpoint() {
+        try (S3Client s3Client = new S3ClientBuilder().s3Client(new SnapshotProperties())) {
+            S3ServiceClientConfiguration configuration = s3Client.serviceClientConfiguration();
+
+            assertEquals(Region.US_EAST_1, configuration.region());
+            assertTrue(configuration.endpointOverride().isEmpty());
+        }
+    }
+}
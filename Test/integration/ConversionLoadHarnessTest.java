@@ -0,0 +1,403 @@
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.parquet.avro.AvroParquetReader;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.services.s3.S3Client;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs {@link Handler} and {@link SnapshotServiceImpl} end to end against {@link LocalS3Server}, with the
+ * real S3 client configured by {@link S3ClientBuilder}. Nothing is mocked and no traffic leaves the
+ * loopback interface. Each run prints wall time, peak heap, peak RSS, temporary directory growth and
+ * the S3 requests made, then reads every Parquet output back and checks its row count and values.
+ *
+ * <p>By default each source is small so the suite stays fast. For a multi-GB load run:
+ * <pre>
+ * mvn test -Dtest=ConversionLoadHarnessTest -Dsnapshot.load.bytes=4294967296 -DargLine=-Xmx512m
+ * </pre>
+ */
+class ConversionLoadHarnessTest {
+
+    private static final long DEFAULT_SOURCE_BYTES = 24L * 1024 * 1024;
+    private static final int COLUMNS = 4;
+
+    private static final String SCHEMA = "{\"type\": \"record\", \"name\": \"test\", \"fields\": ["
+            + "{\"name\": \"header1\", \"type\": [\"null\", \"string\"]}, {\"name\": \"header2\", \"type\": [\"null\", \"string\"]}, "
+            + "{\"name\": \"header3\", \"type\": [\"null\", \"string\"]}, {\"name\": \"header4\", \"type\": [\"null\", \"string\"]}, "
+            + "{\"name\": \"EFF_DT\", \"type\": \"string\"}, {\"name\": \"ETL_TS\", \"type\": \"string\"}]}";
+
+    private static String previousAccessKey;
+    private static String previousSecretKey;
+
+    private final long sourceBytes = Long.getLong("snapshot.load.bytes", DEFAULT_SOURCE_BYTES);
+
+    private LocalS3Server s3Server;
+    private S3Client s3Client;
+    private SnapshotServiceImpl snapshotService;
+    private Handler handler;
+
+    @BeforeAll
+    static void useStaticCredentials() {
+        // The default credentials chain reads these, so the client is built exactly as in production
+        previousAccessKey = System.setProperty("aws.accessKeyId", "local");
+        previousSecretKey = System.setProperty("aws.secretAccessKey", "local");
+    }
+
+    @AfterAll
+    static void restoreCredentials() {
+        restore("aws.accessKeyId", previousAccessKey);
+        restore("aws.secretAccessKey", previousSecretKey);
+    }
+
+    @BeforeEach
+    void startStandIn() throws IOException {
+        s3Server = new LocalS3Server(Files.createTempDirectory("local-s3"));
+    }
+
+    @AfterEach
+    void stopStandIn() throws IOException {
+        if (handler != null) {
+            handler.shutdown();
+        }
+        if (snapshotService != null) {
+            snapshotService.shutdown();
+        }
+        if (s3Client != null) {
+            s3Client.close();
+        }
+        s3Server.close();
+    }
+
+    @Test
+    void testSingleStreamConversion() throws Exception {
+        long rows = putSyntheticSource("source-bucket", "gbi/party.csv");
+        start(new SnapshotProperties());
+
+        LoadRun run = LoadRun.measure(s3Server, () -> handler.apply(event("gbi/party.csv", "gbi-report/party.csv")));
+
+        run.print("single stream");
+        assertEquals(rows, readBack("destination-bucket", "gbi-report/party.parquet"));
+        assertEquals(1, s3Server.requests("GetObject"));
+        assertEquals(0, s3Server.requests("AbortMultipartUpload"));
+        assertEquals(0, run.sampler.getPeakTmpGrowthBytes(), "conversion must not spool to the temporary directory");
+    }
+
+    @Test
+    void testStagedPipeline() throws Exception {
+        long rows = putSyntheticSource("source-bucket", "gbi/party.csv");
+        SnapshotProperties properties = new SnapshotProperties();
+        properties.getPipeline().setEnabled(true);
+        properties.getPipeline().setBuildThreads(2);
+        start(properties);
+
+        LoadRun run = LoadRun.measure(s3Server, () -> handler.apply(event("gbi/party.csv", "gbi-report/party.csv")));
+
+        run.print("staged pipeline");
+        assertEquals(rows, readBack("destination-bucket", "gbi-report/party.parquet"));
+        assertEquals(1, s3Server.requests("GetObject"));
+        assertEquals(0, s3Server.requests("AbortMultipartUpload"));
+    }
+
+    @Test
+    void testParallelEngineWithRangedDownloads() throws Exception {
+        long rows = putSyntheticSource("source-bucket", "gbi/party.csv");
+        SnapshotProperties properties = new SnapshotProperties();
+        properties.getDownload().setParallelEnabled(true);
+        properties.getDownload().setChunkSize(DataSize.ofMegabytes(4));
+        properties.getParallel().setEnabled(true);
+        properties.getParallel().setChunkSize(DataSize.ofMegabytes(8));
+        start(properties);
+
+        LoadRun run = LoadRun.measure(s3Server, () -> handler.apply(event("gbi/party.csv", "gbi-report/party.csv")));
+
+        run.print("parallel engine, ranged GETs");
+        long total = 0;
+        long expectedRow = 1;
+        for (String key : s3Server.listKeys("destination-bucket", "gbi-report/party/")) {
+            if (key.endsWith(".parquet")) {
+                total += readBack("destination-bucket", key, expectedRow);
+                expectedRow = total + 1;
+            }
+        }
+        assertEquals(rows, total);
+        assertTrue(Files.exists(s3Server.getObjectFile("destination-bucket", "gbi-report/party/_SUCCESS")));
+        assertTrue(s3Server.requests("GetObject") > 1, "large sources are fetched with several range requests");
+        assertEquals(0, s3Server.requests("AbortMultipartUpload"));
+    }
+
+    @Test
+    void testRollingPartFiles() throws Exception {
+        long rows = putSyntheticSource("source-bucket", "gbi/party.csv");
+        SnapshotProperties properties = new SnapshotProperties();
+        properties.getOutput().setRollingEnabled(true);
+        properties.getOutput().setMaxPartSize(DataSize.ofMegabytes(4));
+        start(properties);
+
+        LoadRun run = LoadRun.measure(s3Server, () -> handler.apply(event("gbi/party.csv", "gbi-report/party.csv")));
+
+        run.print("rolling part files");
+        List<String> keys = s3Server.listKeys("destination-bucket", "gbi-report/party/");
+        assertTrue(keys.contains("gbi-report/party/_SUCCESS"));
+        long total = 0;
+        for (String key : keys) {
+            if (key.endsWith(".parquet")) {
+                total += readBack("destination-bucket", key, total + 1);
+            }
+        }
+        assertEquals(rows, total);
+        assertEquals(keys.size() - 1, run.response.get("parts"));
+        assertTrue((int) run.response.get("parts") > 1, "the source is larger than one part");
+        assertEquals(0, s3Server.requests("AbortMultipartUpload"));
+    }
+
+    @Test
+    void testFailedRerunLeavesNoStaleMarkerOrManifest() throws Exception {
+        putSyntheticSource("source-bucket", "gbi/party.csv");
+        SnapshotProperties properties = new SnapshotProperties();
+        properties.getManifest().setEnabled(true);
+        properties.getOutput().setRollingEnabled(true);
+        properties.getOutput().setMaxPartSize(DataSize.ofMegabytes(4));
+        start(properties);
+        Path marker = s3Server.getObjectFile("destination-bucket", "gbi-report/party/_SUCCESS");
+        Path manifest = s3Server.getObjectFile("destination-bucket", "gbi-report/party.manifest.json");
+
+        assertEquals(Handler.STATUS_SUCCEEDED, handler.apply(event("gbi/party.csv", "gbi-report/party.csv")).get("status"));
+        assertTrue(Files.exists(marker));
+        assertTrue(Files.exists(manifest));
+
+        // Fail the rerun once its first part has been written over the earlier one
+        Map<String, String> forced = event("gbi/party.csv", "gbi-report/party.csv");
+        forced.put("forceReprocess", "true");
+        s3Server.failFrom("PutObject", s3Server.requests("PutObject") + 2);
+        try {
+            assertThrows(RuntimeException.class, () -> handler.apply(forced));
+        } finally {
+            s3Server.clearFailures();
+        }
+
+        assertFalse(Files.exists(marker), "no marker may list parts the failed rerun replaced or deleted");
+        assertFalse(Files.exists(manifest), "no manifest may let the next event skip the conversion");
+        assertEquals(Handler.STATUS_SUCCEEDED, handler.apply(event("gbi/party.csv", "gbi-report/party.csv")).get("status"));
+        assertTrue(Files.exists(marker));
+    }
+
+    @Test
+    void testBatchOverPrefix() throws Exception {
+        long[] rows = new long[3];
+        for (int file = 0; file < rows.length; file++) {
+            rows[file] = putSyntheticSource("source-bucket", "gbi/daily/file-" + file + ".csv", sourceBytes / rows.length);
+        }
+        start(new SnapshotProperties());
+        Map<String, String> event = event(null, "gbi-report/daily/");
+        event.remove("sourceFileKey");
+        event.put("sourcePrefix", "gbi/daily/");
+
+        LoadRun run = LoadRun.measure(s3Server, () -> handler.apply(event));
+
+        run.print("batch of " + rows.length);
+        assertEquals(rows.length, run.response.get("succeeded"));
+        for (int file = 0; file < rows.length; file++) {
+            assertEquals(rows[file], readBack("destination-bucket", "gbi-report/daily/file-" + file + ".parquet"));
+        }
+    }
+
+    @Test
+    void testUnchangedSourceIsSkipped() throws Exception {
+        long rows = putSyntheticSource("source-bucket", "gbi/party.csv");
+        SnapshotProperties properties = new SnapshotProperties();
+        properties.getManifest().setEnabled(true);
+        start(properties);
+
+        assertEquals(Handler.STATUS_SUCCEEDED, handler.apply(event("gbi/party.csv", "gbi-report/party.csv")).get("status"));
+        assertTrue(Files.exists(s3Server.getObjectFile("destination-bucket", "gbi-report/party.manifest.json")));
+        long getsAfterFirstRun = s3Server.requests("GetObject");
+
+        LoadRun run = LoadRun.measure(s3Server, () -> handler.apply(event("gbi/party.csv", "gbi-report/party.csv")));
+
+        run.print("unchanged source");
+        assertEquals(Handler.STATUS_SKIPPED, run.response.get("status"));
+        // Only the manifest is read; the source is not downloaded again
+        assertEquals(getsAfterFirstRun + 1, s3Server.requests("GetObject"));
+
+        Map<String, String> forced = event("gbi/party.csv", "gbi-report/party.csv");
+        forced.put("forceReprocess", "true");
+        assertEquals(Handler.STATUS_SUCCEEDED, handler.apply(forced).get("status"));
+
+        long changedRows = putSyntheticSource("source-bucket", "gbi/party.csv", sourceBytes / 2);
+        assertEquals(Handler.STATUS_SUCCEEDED, handler.apply(event("gbi/party.csv", "gbi-report/party.csv")).get("status"));
+        assertEquals(changedRows, readBack("destination-bucket", "gbi-report/party.parquet"));
+        assertNotEquals(rows, changedRows);
+    }
+
+    @Test
+    void testCheckpointedConversionResumesAfterInjectedFailures() throws Exception {
+        long rows = putSyntheticSource("source-bucket", "gbi/party.csv");
+        long sourceSize = s3Server.getObjectFile("source-bucket", "gbi/party.csv").toFile().length();
+        SnapshotProperties properties = new SnapshotProperties();
+        properties.getCheckpoint().setEnabled(true);
+        properties.getOutput().setMaxPartSize(DataSize.ofMegabytes(2));
+        start(properties);
+        Random random = new Random(20);
+
+        // Inject a failure at a random point of each attempt until three have failed, then let one complete
+        int failures = 0;
+        LoadRun run;
+        while (true) {
+            if (failures == 1) {
+                // A transient read failure part way through the rest of the source
+                s3Server.truncateGetObjectBodies(64 * 1024 + random.nextInt((int) (sourceSize / 4)));
+            } else if (failures < 3) {
+                // An upload failure once at least one part and its checkpoint have been written
+                s3Server.failFrom("PutObject", s3Server.requests("PutObject") + 3 + random.nextInt(6));
+            }
+            try {
+                run = LoadRun.measure(s3Server, () -> handler.apply(event("gbi/party.csv", "gbi-report/party.csv")));
+                break;
+            } catch (RuntimeException e) {
+                failures++;
+                assertTrue(Files.exists(s3Server.getObjectFile("destination-bucket", "gbi-report/party.checkpoint.json")),
+                        "a failed attempt leaves its checkpoint");
+            } finally {
+                s3Server.clearFailures();
+            }
+        }
+        assertTrue(failures > 0, "at least one injected failure must fail an attempt");
+
+        run.print("resumed after " + failures + " failures");
+        assertEquals(Handler.STATUS_SUCCEEDED, run.response.get("status"));
+        assertEquals(rows, run.response.get("rowsWritten"));
+        assertTrue((long) run.response.get("bytesDownloaded") < sourceSize, "the retry resumes rather than reading the source again");
+        assertFalse(Files.exists(s3Server.getObjectFile("destination-bucket", "gbi-report/party.checkpoint.json")));
+
+        List<String> keys = s3Server.listKeys("destination-bucket", "gbi-report/party/");
+        assertTrue(keys.contains("gbi-report/party/_SUCCESS"));
+        long total = 0;
+        for (int part = 0; part < (int) run.response.get("parts"); part++) {
+            total += readBack("destination-bucket", "gbi-report/party/" + String.format(ParallelCsvToParquetConverter.PART_FILE_FORMAT, part), total + 1);
+        }
+        assertEquals(rows, total);
+    }
+
+    private void start(SnapshotProperties properties) {
+        properties.getS3().setEndpointOverride(s3Server.endpoint().toString());
+        properties.getS3().setPathStyleAccess(true);
+        s3Client = new S3ClientBuilder().s3Client(properties);
+        snapshotService = new SnapshotServiceImpl(s3Client, new SimpleMeterRegistry(), properties, new ParquetWriterFactory(),
+                new SchemaCache(properties), null) {
+            @Override
+            public String loadJsonSchema(String fileTobeProcessed) {
+                return SCHEMA;
+            }
+        };
+        handler = new Handler(snapshotService, s3Client, properties);
+    }
+
+    private long putSyntheticSource(String bucket, String key) throws IOException {
+        return putSyntheticSource(bucket, key, sourceBytes);
+    }
+
+    private long putSyntheticSource(String bucket, String key, long bytes) throws IOException {
+        SyntheticCsvInputStream source = new SyntheticCsvInputStream(bytes, COLUMNS);
+        s3Server.putObject(bucket, key, source);
+        return source.getRowsProduced();
+    }
+
+    private long readBack(String bucket, String key) throws IOException {
+        return readBack(bucket, key, 1);
+    }
+
+    /**
+     * Reads a Parquet output back and checks every value against the synthetic source.
+     *
+     * @return the number of rows read
+     */
+    private long readBack(String bucket, String key, long firstRow) throws IOException {
+        long rows = 0;
+        LocalParquetInputFile inputFile = new LocalParquetInputFile(s3Server.getObjectFile(bucket, key));
+        try (ParquetReader<GenericRecord> reader = AvroParquetReader.<GenericRecord>builder(inputFile).build()) {
+            GenericRecord record;
+            while ((record = reader.read()) != null) {
+                long row = firstRow + rows;
+                for (int column = 1; column <= COLUMNS; column++) {
+                    assertEquals("r" + row + "c" + column, String.valueOf(record.get("header" + column)), key + " row " + row);
+                }
+                assertNotNull(record.get("EFF_DT"));
+                assertNotNull(record.get("ETL_TS"));
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    private static Map<String, String> event(String sourceFileKey, String destinationFileKey) {
+        Map<String, String> event = new HashMap<>();
+        event.put("sourceBucketName", "source-bucket");
+        event.put("sourceFileKey", sourceFileKey);
+        event.put("destinationBucketName", "destination-bucket");
+        event.put("destinationFileKey", destinationFileKey);
+        event.put("fileTobeProcessed", "gbi_party");
+        return event;
+    }
+
+    private static void restore(String property, String previous) {
+        if (previous == null) {
+            System.clearProperty(property);
+        } else {
+            System.setProperty(property, previous);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Invocation {
+        Map invoke() throws Exception;
+    }
+
+    /**
+     * One measured invocation: the handler's response, wall time, sampled resources and S3 requests.
+     */
+    private static final class LoadRun {
+        private final LocalS3Server s3Server;
+        private final ResourceSampler sampler;
+        private Map response;
+        private long wallNanos;
+
+        private LoadRun(LocalS3Server s3Server) {
+            this.s3Server = s3Server;
+            this.sampler = new ResourceSampler(s3Server.getRoot());
+        }
+
+        static LoadRun measure(LocalS3Server s3Server, Invocation invocation) throws Exception {
+            LoadRun run = new LoadRun(s3Server);
+            run.sampler.start();
+            long start = System.nanoTime();
+            try {
+                run.response = invocation.invoke();
+            } finally {
+                run.wallNanos = System.nanoTime() - start;
+                run.sampler.finish();
+            }
+            return run;
+        }
+
+        void print(String label) {
+            List<Long> uploads = s3Server.uploadedBodySizes();
+            System.out.printf("%s: wall %,d ms, peak heap %,d bytes, peak RSS %,d bytes, tmp growth %,d bytes%n",
+                    label, wallNanos / 1_000_000, sampler.getPeakHeapBytes(), sampler.getPeakRssBytes(), sampler.getPeakTmpGrowthBytes());
+            System.out.printf("%s: S3 requests %s, %d upload bodies, largest %,d bytes%n",
+                    label, s3Server.requestCounts(), uploads.size(), uploads.stream().mapToLong(Long::longValue).max().orElse(0));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.parquet.io.DelegatingSeekableInputStream;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.SeekableInputStream;
+
+/**
+ * Parquet {@link InputFile} over a local file, so the harness can read outputs back without a Hadoop file system.
+ */
+class LocalParquetInputFile implements InputFile {
+
+    private final Path file;
+
+    LocalParquetInputFile(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public long getLength() throws IOException {
+        return Files.size(file);
+    }
+
+    @Override
+    public SeekableInputStream newStream() throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        return new DelegatingSeekableInputStream(Channels.newInputStream(channel)) {
+            @Override
+            public long getPos() throws IOException {
+                return channel.position();
+            }
+
+            @Override
+            public void seek(long newPos) throws IOException {
+                channel.position(newPos);
+            }
+
+            @Override
+            public int read(ByteBuffer buffer) throws IOException {
+                return channel.read(buffer);
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+}
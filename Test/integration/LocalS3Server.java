@@ -0,0 +1,469 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * In-process S3 stand-in for end-to-end tests. It listens on the loopback interface only and speaks
+ * the subset of the S3 REST API the conversion uses, with path-style addressing:
+ * GetObject (including ranges and If-Match), HeadObject, PutObject, the multipart upload calls,
+ * DeleteObject, DeleteObjects and ListObjectsV2. Request signatures are not checked.
+ *
+ * <p>Objects are kept as files under a root directory, so multi-GB objects never sit on the heap of
+ * the JVM under test. Every request is counted by operation, and the size of every uploaded body is recorded.
+ * Failures can be injected: an operation can be made to fail from its n-th request on, and GetObject
+ * bodies can be cut off part way.
+ */
+class LocalS3Server implements AutoCloseable {
+
+    private static final Pattern PART_NUMBER = Pattern.compile("<PartNumber>(\\d+)</PartNumber>");
+    private static final Pattern DELETE_KEY = Pattern.compile("<Key>([^<]*)</Key>");
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "local-s3");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Path root;
+    private final Map<String, String> eTagByObject = new ConcurrentHashMap<>();
+    private final Map<String, String> objectByUploadId = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> requestsByOperation = new ConcurrentHashMap<>();
+    private final List<Long> uploadedBodySizes = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, Long> failFromRequest = new ConcurrentHashMap<>();
+    private volatile long getObjectBodyLimit = Long.MAX_VALUE;
+
+    LocalS3Server(Path root) throws IOException {
+        this.root = root;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(executor);
+        this.server.start();
+    }
+
+    URI endpoint() {
+        return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+    }
+
+    Path getRoot() {
+        return root;
+    }
+
+    /**
+     * Stores an object by copying the stream to disk, without buffering it in memory.
+     */
+    void putObject(String bucket, String key, InputStream content) throws IOException {
+        Path file = objectPath(bucket, key);
+        Files.createDirectories(file.getParent());
+        Files.copy(content, file, StandardCopyOption.REPLACE_EXISTING);
+        eTagByObject.put(objectId(bucket, key), newETag());
+    }
+
+    /**
+     * @return the file that holds an object's content
+     */
+    Path getObjectFile(String bucket, String key) {
+        return objectPath(bucket, key);
+    }
+
+    /**
+     * @return the keys under the prefix in key order
+     */
+    List<String> listKeys(String bucket, String prefix) throws IOException {
+        Path bucketDir = root.resolve(encode(bucket));
+        if (!Files.isDirectory(bucketDir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(bucketDir)) {
+            return files.map(file -> decode(file.getFileName().toString()))
+                    .filter(key -> key.startsWith(prefix))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    long requests(String operation) {
+        AtomicLong count = requestsByOperation.get(operation);
+        return count == null ? 0 : count.get();
+    }
+
+    Map<String, Long> requestCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        requestsByOperation.forEach((operation, count) -> counts.put(operation, count.get()));
+        return counts;
+    }
+
+    /**
+     * Makes every request of the operation fail with a 500 from its {@code request}-th one on (counting
+     * from the first request the server received), until {@link #clearFailures()}.
+     */
+    void failFrom(String operation, long request) {
+        failFromRequest.put(operation, request);
+    }
+
+    /**
+     * Cuts off every GetObject body after that many bytes by closing the connection, until
+     * {@link #clearFailures()}.
+     */
+    void truncateGetObjectBodies(long bytes) {
+        getObjectBodyLimit = bytes;
+    }
+
+    void clearFailures() {
+        failFromRequest.clear();
+        getObjectBodyLimit = Long.MAX_VALUE;
+    }
+
+    List<Long> uploadedBodySizes() {
+        synchronized (uploadedBodySizes) {
+            return new ArrayList<>(uploadedBodySizes);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.stop(0);
+        executor.shutdownNow();
+        try (Stream<Path> files = Files.walk(root)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            int slash = path.indexOf('/', 1);
+            String bucket = slash < 0 ? path.substring(1) : path.substring(1, slash);
+            String key = slash < 0 ? "" : path.substring(slash + 1);
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String method = exchange.getRequestMethod();
+
+            if (key.isEmpty() && "GET".equals(method)) {
+                listObjects(exchange, bucket, query);
+            } else if ("GET".equals(method)) {
+                getObject(exchange, bucket, key, false);
+            } else if ("HEAD".equals(method)) {
+                getObject(exchange, bucket, key, true);
+            } else if ("POST".equals(method) && query.containsKey("uploads")) {
+                createMultipartUpload(exchange, bucket, key);
+            } else if ("POST".equals(method) && query.containsKey("delete")) {
+                deleteObjects(exchange, bucket);
+            } else if ("POST".equals(method) && query.containsKey("uploadId")) {
+                completeMultipartUpload(exchange, bucket, key, query.get("uploadId"));
+            } else if ("PUT".equals(method) && query.containsKey("uploadId")) {
+                uploadPart(exchange, query.get("uploadId"), Integer.parseInt(query.get("partNumber")));
+            } else if ("PUT".equals(method)) {
+                putObject(exchange, bucket, key);
+            } else if ("DELETE".equals(method) && query.containsKey("uploadId")) {
+                abortMultipartUpload(exchange, query.get("uploadId"));
+            } else if ("DELETE".equals(method)) {
+                count("DeleteObject");
+                Files.deleteIfExists(objectPath(bucket, key));
+                eTagByObject.remove(objectId(bucket, key));
+                exchange.sendResponseHeaders(204, -1);
+            } else {
+                error(exchange, 501, "NotImplemented", method + " " + exchange.getRequestURI());
+            }
+        } catch (RuntimeException e) {
+            error(exchange, 500, "InternalError", String.valueOf(e.getMessage()));
+        }
+    }
+
+    private void getObject(HttpExchange exchange, String bucket, String key, boolean headOnly) throws IOException {
+        count(headOnly ? "HeadObject" : "GetObject");
+        Path file = objectPath(bucket, key);
+        String eTag = eTagByObject.get(objectId(bucket, key));
+        if (eTag == null || !Files.exists(file)) {
+            error(exchange, 404, "NoSuchKey", "The specified key does not exist.");
+            return;
+        }
+        String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+        if (ifMatch != null && !ifMatch.equals(eTag)) {
+            error(exchange, 412, "PreconditionFailed", "At least one of the pre-conditions you specified did not hold");
+            return;
+        }
+
+        long length = Files.size(file);
+        long start = 0;
+        long end = length - 1;
+        int status = 200;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null && range.startsWith("bytes=")) {
+            String[] bounds = range.substring("bytes=".length()).split("-", 2);
+            start = Long.parseLong(bounds[0]);
+            end = bounds[1].isEmpty() ? length - 1 : Math.min(Long.parseLong(bounds[1]), length - 1);
+            status = 206;
+            exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + length);
+        }
+        long contentLength = end - start + 1;
+        exchange.getResponseHeaders().set("ETag", eTag);
+        exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+        exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+
+        if (headOnly) {
+            exchange.getResponseHeaders().set("Content-Length", Long.toString(length));
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, contentLength);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             OutputStream body = exchange.getResponseBody()) {
+            // A body shorter than its Content-Length makes closing it drop the connection
+            channel.transferTo(start, Math.min(contentLength, getObjectBodyLimit), Channels.newChannel(body));
+        }
+    }
+
+    private void putObject(HttpExchange exchange, String bucket, String key) throws IOException {
+        count("PutObject");
+        Path file = objectPath(bucket, key);
+        Files.createDirectories(file.getParent());
+        long size = receiveBody(exchange, file);
+        uploadedBodySizes.add(size);
+        String eTag = newETag();
+        eTagByObject.put(objectId(bucket, key), eTag);
+        exchange.getResponseHeaders().set("ETag", eTag);
+        exchange.sendResponseHeaders(200, -1);
+    }
+
+    private void createMultipartUpload(HttpExchange exchange, String bucket, String key) throws IOException {
+        count("CreateMultipartUpload");
+        String uploadId = UUID.randomUUID().toString();
+        Files.createDirectories(uploadDir(uploadId));
+        objectByUploadId.put(uploadId, objectId(bucket, key));
+        xml(exchange, 200, "<InitiateMultipartUploadResult><Bucket>" + escape(bucket) + "</Bucket><Key>" + escape(key)
+                + "</Key><UploadId>" + uploadId + "</UploadId></InitiateMultipartUploadResult>");
+    }
+
+    private void uploadPart(HttpExchange exchange, String uploadId, int partNumber) throws IOException {
+        count("UploadPart");
+        if (!objectByUploadId.containsKey(uploadId)) {
+            error(exchange, 404, "NoSuchUpload", "The specified upload does not exist.");
+            return;
+        }
+        long size = receiveBody(exchange, uploadDir(uploadId).resolve(Integer.toString(partNumber)));
+        uploadedBodySizes.add(size);
+        exchange.getResponseHeaders().set("ETag", newETag());
+        exchange.sendResponseHeaders(200, -1);
+    }
+
+    private void completeMultipartUpload(HttpExchange exchange, String bucket, String key, String uploadId) throws IOException {
+        count("CompleteMultipartUpload");
+        if (objectByUploadId.remove(uploadId) == null) {
+            error(exchange, 404, "NoSuchUpload", "The specified upload does not exist.");
+            return;
+        }
+        String request = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        Matcher partNumbers = PART_NUMBER.matcher(request);
+        Path file = objectPath(bucket, key);
+        Files.createDirectories(file.getParent());
+        try (OutputStream out = Files.newOutputStream(file)) {
+            while (partNumbers.find()) {
+                Files.copy(uploadDir(uploadId).resolve(partNumbers.group(1)), out);
+            }
+        }
+        deleteUpload(uploadId);
+        String eTag = newETag();
+        eTagByObject.put(objectId(bucket, key), eTag);
+        xml(exchange, 200, "<CompleteMultipartUploadResult><Bucket>" + escape(bucket) + "</Bucket><Key>" + escape(key)
+                + "</Key><ETag>" + escape(eTag) + "</ETag></CompleteMultipartUploadResult>");
+    }
+
+    private void deleteObjects(HttpExchange exchange, String bucket) throws IOException {
+        count("DeleteObjects");
+        String request = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        Matcher keys = DELETE_KEY.matcher(request);
+        while (keys.find()) {
+            String key = keys.group(1).replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&amp;", "&");
+            Files.deleteIfExists(objectPath(bucket, key));
+            eTagByObject.remove(objectId(bucket, key));
+        }
+        xml(exchange, 200, "<DeleteResult></DeleteResult>");
+    }
+
+    private void abortMultipartUpload(HttpExchange exchange, String uploadId) throws IOException {
+        count("AbortMultipartUpload");
+        objectByUploadId.remove(uploadId);
+        deleteUpload(uploadId);
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    private void listObjects(HttpExchange exchange, String bucket, Map<String, String> query) throws IOException {
+        count("ListObjectsV2");
+        String prefix = query.getOrDefault("prefix", "");
+        StringBuilder contents = new StringBuilder();
+        List<String> keys = listKeys(bucket, prefix);
+        for (String key : keys) {
+            contents.append("<Contents><Key>").append(escape(key)).append("</Key><Size>").append(Files.size(objectPath(bucket, key)))
+                    .append("</Size><ETag>").append(escape(eTagByObject.getOrDefault(objectId(bucket, key), ""))).append("</ETag></Contents>");
+        }
+        xml(exchange, 200, "<ListBucketResult><Name>" + escape(bucket) + "</Name><Prefix>" + escape(prefix) + "</Prefix><KeyCount>"
+                + keys.size() + "</KeyCount><MaxKeys>1000</MaxKeys><IsTruncated>false</IsTruncated>" + contents + "</ListBucketResult>");
+    }
+
+    /**
+     * Writes the request body to the file, decoding the {@code aws-chunked} framing the SDK uses for
+     * streaming and checksummed uploads.
+     *
+     * @return the decoded body size
+     */
+    private long receiveBody(HttpExchange exchange, Path file) throws IOException {
+        String contentSha = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+        String contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        boolean awsChunked = (contentSha != null && contentSha.startsWith("STREAMING-"))
+                || (contentEncoding != null && contentEncoding.contains("aws-chunked"));
+
+        try (InputStream in = new BufferedInputStream(exchange.getRequestBody(), 64 * 1024);
+             OutputStream out = Files.newOutputStream(file)) {
+            if (!awsChunked) {
+                return in.transferTo(out);
+            }
+            long total = 0;
+            byte[] buffer = new byte[64 * 1024];
+            while (true) {
+                String header = readLine(in);
+                int extension = header.indexOf(';');
+                long chunkSize = Long.parseLong((extension < 0 ? header : header.substring(0, extension)).trim(), 16);
+                if (chunkSize == 0) {
+                    // Skip trailing checksum headers up to the terminating blank line
+                    while (!readLine(in).isEmpty()) {
+                        // trailer
+                    }
+                    return total;
+                }
+                long remaining = chunkSize;
+                while (remaining > 0) {
+                    int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read < 0) {
+                        throw new IOException("Truncated aws-chunked body");
+                    }
+                    out.write(buffer, 0, read);
+                    remaining -= read;
+                }
+                total += chunkSize;
+                readLine(in);
+            }
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                break;
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString(StandardCharsets.US_ASCII);
+    }
+
+    private void deleteUpload(String uploadId) throws IOException {
+        Path dir = uploadDir(uploadId);
+        if (Files.exists(dir)) {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Counts a request, failing it if a failure of the operation has been injected.
+     */
+    private void count(String operation) {
+        long request = requestsByOperation.computeIfAbsent(operation, name -> new AtomicLong()).incrementAndGet();
+        Long failFrom = failFromRequest.get(operation);
+        if (failFrom != null && request >= failFrom) {
+            throw new IllegalStateException("Injected failure of " + operation + " request " + request);
+        }
+    }
+
+    private static void xml(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void error(HttpExchange exchange, int status, String code, String message) throws IOException {
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        xml(exchange, status, "<Error><Code>" + code + "</Code><Message>" + escape(message) + "</Message></Error>");
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = decode(equals < 0 ? pair : pair.substring(0, equals));
+            query.put(name, equals < 0 ? "" : decode(pair.substring(equals + 1)));
+        }
+        return query;
+    }
+
+    private Path objectPath(String bucket, String key) {
+        return root.resolve(encode(bucket)).resolve(encode(key));
+    }
+
+    private Path uploadDir(String uploadId) {
+        return root.resolve(".uploads").resolve(uploadId);
+    }
+
+    private static String objectId(String bucket, String key) {
+        return bucket + "/" + key;
+    }
+
+    private static String newETag() {
+        return "\"" + UUID.randomUUID().toString().replace("-", "") + "\"";
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static String decode(String value) {
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
@@ -0,0 +1,112 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Samples the resources of this JVM while a load run is in progress: peak used heap, peak resident
+ * set size (Linux only), and peak growth of the temporary directory, excluding the S3 stand-in's own storage.
+ */
+class ResourceSampler extends Thread {
+
+    private static final Path PROC_STATUS = Paths.get("/proc/self/status");
+
+    private final Path tmpDir = Paths.get(System.getProperty("java.io.tmpdir"));
+    private final Path excluded;
+    private final long tmpBaseline;
+
+    private volatile long peakHeapBytes;
+    private volatile long peakRssBytes;
+    private volatile long peakTmpGrowthBytes;
+
+    ResourceSampler(Path excluded) {
+        this.excluded = excluded;
+        this.tmpBaseline = tmpUsage();
+        setDaemon(true);
+        setName("resource-sampler");
+    }
+
+    @Override
+    public void run() {
+        int sample = 0;
+        while (!isInterrupted()) {
+            sampleNow(sample++ % 10 == 0);
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stops sampling and takes a final sample.
+     */
+    void finish() throws InterruptedException {
+        interrupt();
+        join();
+        sampleNow(true);
+    }
+
+    long getPeakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    /**
+     * @return the peak resident set size seen while sampling, or -1 where /proc is not available
+     */
+    long getPeakRssBytes() {
+        return peakRssBytes;
+    }
+
+    long getPeakTmpGrowthBytes() {
+        return peakTmpGrowthBytes;
+    }
+
+    private void sampleNow(boolean includeTmp) {
+        Runtime runtime = Runtime.getRuntime();
+        peakHeapBytes = Math.max(peakHeapBytes, runtime.totalMemory() - runtime.freeMemory());
+        peakRssBytes = Math.max(peakRssBytes, residentSetBytes());
+        if (includeTmp) {
+            // Walking the temporary directory is comparatively slow, so it is sampled less often
+            peakTmpGrowthBytes = Math.max(peakTmpGrowthBytes, tmpUsage() - tmpBaseline);
+        }
+    }
+
+    private static long residentSetBytes() {
+        if (!Files.isReadable(PROC_STATUS)) {
+            return -1;
+        }
+        try {
+            List<String> lines = Files.readAllLines(PROC_STATUS);
+            for (String line : lines) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+                }
+            }
+            return -1;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private long tmpUsage() {
+        try (Stream<Path> files = Files.walk(tmpDir)) {
+            return files.filter(path -> !path.startsWith(excluded))
+                    .filter(Files::isRegularFile)
+                    .mapToLong(path -> {
+                        try {
+                            return Files.size(path);
+                        } catch (IOException e) {
+                            return 0;
+                        }
+                    })
+                    .sum();
+        } catch (IOException | UncheckedIOException e) {
+            return 0;
+        }
+    }
+}
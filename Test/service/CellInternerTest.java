@@ -0,0 +1,57 @@
+import org.junit.jupiter.api.Test;
+import java.nio.charset.StandardCharsets;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CellInternerTest {
+
+    @Test
+    void testIntern_ReturnsSameInstanceForEqualBytes() {
+        CellInterner interner = new CellInterner(StandardCharsets.UTF_8, 8);
+        byte[] bytes = "a,café,a".getBytes(StandardCharsets.UTF_8);
+
+        String first = interner.intern(bytes, 0, 1);
+        String cafe = interner.intern(bytes, 2, 7);
+
+        assertEquals("a", first);
+        assertEquals("café", cafe);
+        assertSame(first, interner.intern(bytes, bytes.length - 1, bytes.length));
+        assertSame(cafe, interner.intern("café".getBytes(StandardCharsets.UTF_8), 0, 5));
+    }
+
+    @Test
+    void testIntern_FullCacheStillDecodesNewValues() {
+        CellInterner interner = new CellInterner(StandardCharsets.UTF_8, 2);
+
+        for (int value = 0; value < 10; value++) {
+            byte[] bytes = Integer.toString(value).getBytes(StandardCharsets.UTF_8);
+            assertEquals(Integer.toString(value), interner.intern(bytes, 0, bytes.length));
+        }
+        assertTrue(interner.isEnabled());
+    }
+
+    @Test
+    void testIntern_DisablesItselfOnHighCardinalityColumn() {
+        CellInterner interner = new CellInterner(StandardCharsets.UTF_8, 16);
+
+        for (int value = 0; value < 100_000 && interner.isEnabled(); value++) {
+            byte[] bytes = Integer.toString(value).getBytes(StandardCharsets.UTF_8);
+            interner.intern(bytes, 0, bytes.length);
+        }
+
+        assertFalse(interner.isEnabled());
+        byte[] bytes = "7".getBytes(StandardCharsets.UTF_8);
+        assertEquals("7", interner.intern(bytes, 0, 1));
+    }
+
+    @Test
+    void testIntern_StaysEnabledOnLowCardinalityColumn() {
+        CellInterner interner = new CellInterner(StandardCharsets.UTF_8, 16);
+
+        for (int row = 0; row < 100_000; row++) {
+            byte[] bytes = Integer.toString(row % 16).getBytes(StandardCharsets.UTF_8);
+            interner.intern(bytes, 0, bytes.length);
+        }
+
+        assertTrue(interner.isEnabled());
+    }
+}
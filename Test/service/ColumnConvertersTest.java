@@ -0,0 +1,103 @@
+import org.junit.jupiter.api.Test;
+import org.apache.avro.Conversions;
+import org.apache.avro.LogicalTypes;
+import org.apache.avro.Schema;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.TimeZone;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnConvertersTest {
+
+    private static Schema parse(String json) {
+        return new Schema.Parser().parse(json);
+    }
+
+    @Test
+    void testForSchema_PrimitiveTypes() {
+        assertEquals(42, ColumnConverters.forSchema(Schema.create(Schema.Type.INT)).convert(" 42 "));
+        assertEquals(9_000_000_000L, ColumnConverters.forSchema(Schema.create(Schema.Type.LONG)).convert("9000000000"));
+        assertEquals(1.5d, ColumnConverters.forSchema(Schema.create(Schema.Type.DOUBLE)).convert("1.5"));
+        assertEquals(true, ColumnConverters.forSchema(Schema.create(Schema.Type.BOOLEAN)).convert("Y"));
+        assertEquals(false, ColumnConverters.forSchema(Schema.create(Schema.Type.BOOLEAN)).convert("false"));
+        assertEquals("", ColumnConverters.forSchema(Schema.create(Schema.Type.STRING)).convert(""));
+    }
+
+    @Test
+    void testForSchema_EmptyCellIsNullForNonStringTypes() {
+        assertNull(ColumnConverters.forSchema(parse("[\"null\", \"int\"]")).convert(""));
+        assertNull(ColumnConverters.forSchema(parse("{\"type\": \"int\", \"logicalType\": \"date\"}")).convert(""));
+    }
+
+    @Test
+    void testForSchema_Date() {
+        ColumnConverter converter = ColumnConverters.forSchema(parse("[\"null\", {\"type\": \"int\", \"logicalType\": \"date\"}]"));
+
+        assertEquals((int) LocalDate.of(2024, 2, 29).toEpochDay(), converter.convert("2024-02-29"));
+        assertEquals((int) LocalDate.of(1969, 12, 31).toEpochDay(), converter.convert("1969-12-31"));
+        assertThrows(IllegalArgumentException.class, () -> converter.convert("2023-02-29"));
+        assertThrows(IllegalArgumentException.class, () -> converter.convert("2024/01/01"));
+    }
+
+    @Test
+    void testForSchema_Timestamps() {
+        long expectedMillis = LocalDateTime.of(2024, 1, 2, 3, 4, 5, 123_456_000).toInstant(ZoneOffset.UTC).toEpochMilli();
+        ColumnConverter millis = ColumnConverters.forSchema(parse("{\"type\": \"long\", \"logicalType\": \"timestamp-millis\"}"));
+        ColumnConverter micros = ColumnConverters.forSchema(parse("{\"type\": \"long\", \"logicalType\": \"timestamp-micros\"}"));
+
+        assertEquals(expectedMillis, millis.convert("2024-01-02T03:04:05.123456"));
+        assertEquals(expectedMillis, millis.convert("2024-01-02 03:04:05.123456Z"));
+        assertEquals(expectedMillis * 1_000L + 456L, micros.convert("2024-01-02T03:04:05.123456"));
+        assertEquals(expectedMillis - 123L, millis.convert("2024-01-02T03:04:05"));
+        assertThrows(IllegalArgumentException.class, () -> millis.convert("2024-01-02T25:00:00"));
+    }
+
+    @Test
+    void testTimestampStamp_UsesTheDefaultZoneForInstantsOnly() {
+        LocalDateTime loadTime = LocalDateTime.of(2024, 1, 2, 3, 4, 5, 123_456_000);
+        TimeZone defaultZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+        try {
+            long instantMillis = LocalDateTime.of(2024, 1, 2, 8, 4, 5, 123_456_000).toInstant(ZoneOffset.UTC).toEpochMilli();
+            long wallClockMillis = loadTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+
+            assertEquals(instantMillis, ColumnConverters.timestampStamp(parse("{\"type\": \"long\", \"logicalType\": \"timestamp-millis\"}"), loadTime));
+            assertEquals(instantMillis * 1_000L + 456L,
+                    ColumnConverters.timestampStamp(parse("[\"null\", {\"type\": \"long\", \"logicalType\": \"timestamp-micros\"}]"), loadTime));
+            assertEquals(wallClockMillis, ColumnConverters.timestampStamp(parse("{\"type\": \"long\", \"logicalType\": \"local-timestamp-millis\"}"), loadTime));
+            assertEquals(wallClockMillis * 1_000L + 456L,
+                    ColumnConverters.timestampStamp(parse("{\"type\": \"long\", \"logicalType\": \"local-timestamp-micros\"}"), loadTime));
+            assertEquals("2024-01-02T03:04:05", ColumnConverters.timestampStamp(Schema.create(Schema.Type.STRING), loadTime));
+        } finally {
+            TimeZone.setDefault(defaultZone);
+        }
+    }
+
+    @Test
+    void testForSchema_Decimal() {
+        Schema schema = parse("{\"type\": \"bytes\", \"logicalType\": \"decimal\", \"precision\": 6, \"scale\": 2}");
+        ColumnConverter converter = ColumnConverters.forSchema(schema);
+
+        ByteBuffer encoded = (ByteBuffer) converter.convert("1234.5");
+        BigDecimal decoded = new Conversions.DecimalConversion().fromBytes(encoded, schema, LogicalTypes.fromSchema(schema));
+
+        assertEquals(new BigDecimal("1234.50"), decoded);
+        assertThrows(ArithmeticException.class, () -> converter.convert("1.234"));
+        assertThrows(IllegalArgumentException.class, () -> converter.convert("123456.78"));
+        assertThrows(IllegalArgumentException.class, () -> converter.convert("abc"));
+    }
+
+    @Test
+    void testForSchema_InvalidNumber() {
+        assertThrows(IllegalArgumentException.class, () -> ColumnConverters.forSchema(Schema.create(Schema.Type.INT)).convert("4.2"));
+        assertThrows(IllegalArgumentException.class, () -> ColumnConverters.forSchema(Schema.create(Schema.Type.BOOLEAN)).convert("maybe"));
+    }
+
+    @Test
+    void testForSchema_RejectsUnsupportedTypes() {
+        assertThrows(IllegalArgumentException.class, () -> ColumnConverters.forSchema(parse("{\"type\": \"array\", \"items\": \"string\"}")));
+    }
+}
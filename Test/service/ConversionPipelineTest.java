@@ -0,0 +1,170 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.avro.Schema;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConversionPipelineTest {
+
+    private static final Schema SCHEMA = new Schema.Parser().parse("{\"type\": \"record\", \"name\": \"test\", \"fields\": ["
+            + "{\"name\": \"ID\", \"type\": [\"null\", \"string\"]}, {\"name\": \"AMOUNT\", \"type\": [\"null\", \"int\"]}, "
+            + "{\"name\": \"EFF_DT\", \"type\": \"string\"}, {\"name\": \"ETL_TS\", \"type\": \"string\"}]}");
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final SnapshotProperties properties = new SnapshotProperties();
+    private ExecutorService ioExecutor;
+    private ExecutorService buildExecutor;
+    private ConversionPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        properties.getPipeline().setBatchRows(7);
+        properties.getPipeline().setQueueCapacity(2);
+        ioExecutor = ConversionPipeline.newIoExecutor("test-io-");
+        buildExecutor = Executors.newFixedThreadPool(3);
+        pipeline = new ConversionPipeline(meterRegistry, properties, ioExecutor, buildExecutor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ioExecutor.shutdownNow();
+        buildExecutor.shutdownNow();
+    }
+
+    @Test
+    void testRun_WritesRowsInSourceOrderAndMergesCounts() throws IOException {
+        ConversionMetrics metrics = metrics();
+        List<String> ids = new ArrayList<>();
+
+        try (CsvRowReader reader = reader(10_000, row -> row % 10 == 3 ? "x" : String.valueOf(row))) {
+            pipeline.run(reader, plan(UnparsableValuePolicy.REJECT_ROW), "d", "t", record -> ids.add(record.get("ID").toString()), metrics);
+        }
+
+        assertEquals(9_000, ids.size());
+        int index = 0;
+        for (int row = 0; row < 10_000; row++) {
+            if (row % 10 != 3) {
+                assertEquals("r" + row, ids.get(index++));
+            }
+        }
+        assertEquals(10_000, metrics.getRowsRead());
+        assertEquals(9_000, metrics.getRowsWritten());
+        assertEquals(1_000, metrics.getRowsRejected());
+        assertEquals(1_000, metrics.getUnparsableByField()[1]);
+    }
+
+    @Test
+    void testRun_RethrowsBuildFailure() throws IOException {
+        try (CsvRowReader reader = reader(100_000, row -> row == 5_000 ? "x" : "1")) {
+            assertThrows(UnparsableValueException.class,
+                    () -> pipeline.run(reader, plan(UnparsableValuePolicy.FAIL), "d", "t", record -> { }, metrics()));
+        }
+    }
+
+    @Test
+    void testRun_SinkFailureStopsTheParserBeforeReturning() throws IOException {
+        AtomicInteger rowsParsed = new AtomicInteger();
+        IOException failure = new IOException("Upload failed");
+
+        try (CsvRowReader reader = counting(reader(1_000_000, row -> "1"), rowsParsed)) {
+            IOException thrown = assertThrows(IOException.class, () -> pipeline.run(reader, plan(UnparsableValuePolicy.FAIL), "d", "t",
+                    record -> {
+                        throw failure;
+                    }, metrics()));
+            assertSame(failure, thrown);
+        }
+
+        // The queues bound how far the parser got, and it no longer reads once run returns
+        int parsed = rowsParsed.get();
+        assertTrue(parsed < 1_000, "parsed " + parsed);
+        assertEquals(parsed, rowsParsed.get());
+    }
+
+    @Test
+    void testRun_ExposesQueueDepthPerStage() throws IOException {
+        List<Double> encodeDepths = new ArrayList<>();
+
+        try (CsvRowReader reader = reader(1_000, row -> "1")) {
+            pipeline.run(reader, plan(UnparsableValuePolicy.FAIL), "d", "t",
+                    record -> encodeDepths.add(gauge("encode").value()), metrics());
+        }
+
+        for (String stage : new String[]{"fetch", "build", "encode"}) {
+            assertEquals(0, gauge(stage).value(), stage);
+        }
+        // A batch may be built while the parser still waits to queue it behind the two already queued
+        assertTrue(encodeDepths.stream().allMatch(depth -> depth >= 0 && depth <= 3));
+        assertEquals(4, meterRegistry.get(ConversionPipeline.BUSY_TIMER).tag("fileType", "test").timers().size());
+    }
+
+    @Test
+    void testNewIoExecutor_RunsTasksOnNamedDaemonThreads() throws Exception {
+        ExecutorService executor = ConversionPipeline.newIoExecutor("named-io-");
+        try {
+            Thread thread = executor.submit(Thread::currentThread).get(10, TimeUnit.SECONDS);
+
+            assertTrue(thread.getName().startsWith("named-io-"), thread.getName());
+            assertTrue(thread.isDaemon());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private Gauge gauge(String stage) {
+        return meterRegistry.get(ConversionPipeline.QUEUE_GAUGE).tag("fileType", "test").tag("stage", stage).gauge();
+    }
+
+    private ConversionMetrics metrics() {
+        ConversionMetrics metrics = new ConversionMetrics(meterRegistry, "test", new SnapshotProperties.Progress());
+        metrics.trackFields(SCHEMA);
+        return metrics;
+    }
+
+    private static CsvProjectionPlan plan(UnparsableValuePolicy policy) {
+        return CsvProjectionPlan.compile(SCHEMA, new String[]{"ID", "AMOUNT"}, policy);
+    }
+
+    /**
+     * @return a FAST reader over the rows, positioned after the header
+     */
+    private static CsvRowReader reader(int rows, IntFunction<String> amount) throws IOException {
+        StringBuilder csv = new StringBuilder("ID,AMOUNT\n");
+        for (int row = 0; row < rows; row++) {
+            csv.append('r').append(row).append(',').append(amount.apply(row)).append('\n');
+        }
+        CsvRowReader reader = CsvEngine.FAST.open(new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)),
+                new SnapshotProperties.Csv());
+        reader.readNext();
+        return reader;
+    }
+
+    private static CsvRowReader counting(CsvRowReader reader, AtomicInteger rowsParsed) {
+        return new CsvRowReader() {
+            @Override
+            public String[] readNext() throws IOException {
+                String[] row = reader.readNext();
+                if (row != null) {
+                    rowsParsed.incrementAndGet();
+                }
+                return row;
+            }
+
+            @Override
+            public void close() throws IOException {
+                reader.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,167 @@
+import org.junit.jupiter.api.Test;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.util.Utf8;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvProjectionPlanTest {
+
+    private static final Schema SCHEMA = new Schema.Parser().parse("{\"type\": \"record\", \"name\": \"test\", \"fields\": ["
+            + "{\"name\": \"PARTY_ID\", \"type\": [\"null\", \"string\"]}, {\"name\": \"PARTY_NM\", \"type\": [\"null\", \"string\"]}, "
+            + "{\"name\": \"COUNTRY\", \"type\": [\"null\", \"string\"]}, {\"name\": \"EFF_DT\", \"type\": \"string\"}, "
+            + "{\"name\": \"ETL_TS\", \"type\": \"string\"}]}");
+
+    @Test
+    void testFill_MapsColumnsPositionally() throws Exception {
+        CsvProjectionPlan plan = CsvProjectionPlan.compile(SCHEMA, new String[]{"PARTY_NM", "IGNORED", "PARTY_ID", "COUNTRY"});
+        GenericData.Record record = plan.newRecord();
+
+        plan.fill(record, new String[]{"Acme", "x", "42", "US"}, "2024-01-01", "2024-01-01T00:00:00");
+
+        assertEquals("42", record.get("PARTY_ID"));
+        assertEquals("Acme", record.get("PARTY_NM"));
+        assertEquals("US", record.get("COUNTRY"));
+        assertEquals("2024-01-01", record.get("EFF_DT"));
+        assertEquals("2024-01-01T00:00:00", record.get("ETL_TS"));
+    }
+
+    @Test
+    void testCompile_ReportsMissingFieldsOnce() {
+        CsvProjectionPlan plan = CsvProjectionPlan.compile(SCHEMA, new String[]{"PARTY_ID"});
+
+        assertEquals(List.of("PARTY_NM", "COUNTRY"), plan.getMissingFields());
+    }
+
+    @Test
+    void testFill_ReusedRecordIsFullyOverwritten() throws Exception {
+        CsvProjectionPlan plan = CsvProjectionPlan.compile(SCHEMA, new String[]{"PARTY_ID", "PARTY_NM", "COUNTRY"});
+        GenericData.Record record = plan.newRecord();
+
+        plan.fill(record, new String[]{"1", "First", "US"}, "d", "t");
+        plan.fill(record, new String[]{"2", "Second"}, "d", "t");
+
+        assertEquals("2", record.get("PARTY_ID"));
+        assertEquals("Second", record.get("PARTY_NM"));
+        assertNull(record.get("COUNTRY"));
+    }
+
+    @Test
+    void testFill_WritesCachedUtf8ForStringFields() throws Exception {
+        CsvProjectionPlan plan = CsvProjectionPlan.compile(SCHEMA, new String[]{"PARTY_ID", "PARTY_NM", "COUNTRY"});
+        Utf8Cache[] utf8ByField = plan.newUtf8Caches(16);
+        long[] nullsByField = new long[SCHEMA.getFields().size()];
+        long[] unparsableByField = new long[SCHEMA.getFields().size()];
+        GenericData.Record record = plan.newRecord();
+
+        plan.fill(record, new String[]{"1", "First", "US"}, "d", "t", nullsByField, unparsableByField, utf8ByField);
+        Object country = record.get("COUNTRY");
+        plan.fill(record, new String[]{"2", "Second", "US"}, "d", "t", nullsByField, unparsableByField, utf8ByField);
+
+        assertEquals(new Utf8("2"), record.get("PARTY_ID"));
+        assertEquals(new Utf8("Second"), record.get("PARTY_NM"));
+        assertSame(country, record.get("COUNTRY"));
+        assertNull(plan.newUtf8Caches(0));
+    }
+
+    private static final Schema TYPED_SCHEMA = new Schema.Parser().parse("{\"type\": \"record\", \"name\": \"typed\", \"fields\": ["
+            + "{\"name\": \"AMOUNT\", \"type\": [\"null\", \"long\"]}, {\"name\": \"QTY\", \"type\": \"int\"}, "
+            + "{\"name\": \"EFF_DT\", \"type\": {\"type\": \"int\", \"logicalType\": \"date\"}}, "
+            + "{\"name\": \"ETL_TS\", \"type\": {\"type\": \"long\", \"logicalType\": \"timestamp-millis\"}}]}");
+
+    @Test
+    void testFill_ConvertsToSchemaTypes() throws Exception {
+        CsvProjectionPlan plan = CsvProjectionPlan.compile(TYPED_SCHEMA, new String[]{"AMOUNT", "QTY"});
+        GenericData.Record record = plan.newRecord();
+        LocalDateTime loadTime = LocalDateTime.of(2024, 1, 2, 3, 4, 5);
+
+        assertTrue(plan.fill(record, new String[]{"1234567890123", "7"}, plan.dateStamp(loadTime.toLocalDate()), plan.timestampStamp(loadTime)));
+
+        assertEquals(1234567890123L, record.get("AMOUNT"));
+        assertEquals(7, record.get("QTY"));
+        assertEquals(19724, record.get("EFF_DT"));
+        assertEquals(loadTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli(), record.get("ETL_TS"));
+    }
+
+    @Test
+    void testFill_FailPolicyThrowsWithFieldName() {
+        CsvProjectionPlan plan = CsvProjectionPlan.compile(TYPED_SCHEMA, new String[]{"AMOUNT", "QTY"}, UnparsableValuePolicy.FAIL);
+
+        UnparsableValueException exception = assertThrows(UnparsableValueException.class,
+                () -> plan.fill(plan.newRecord(), new String[]{"12x", "7"}, 0, 0L));
+
+        assertTrue(exception.getMessage().contains("AMOUNT"));
+    }
+
+    @Test
+    void testFill_NullPolicyNullsNullableFieldAndCountsIt() throws Exception {
+        CsvProjectionPlan plan = CsvProjectionPlan.compile(TYPED_SCHEMA, new String[]{"AMOUNT", "QTY"}, UnparsableValuePolicy.NULL);
+        GenericData.Record record = plan.newRecord();
+        long[] nulls = new long[4];
+        long[] unparsable = new long[4];
+
+        assertTrue(plan.fill(record, new String[]{"12x", "7"}, 0, 0L, nulls, unparsable));
+
+        assertNull(record.get("AMOUNT"));
+        assertEquals(1, unparsable[0]);
+        assertEquals(1, nulls[0]);
+    }
+
+    @Test
+    void testFill_NullPolicyRejectsRowWhenFieldIsNotNullable() throws Exception {
+        CsvProjectionPlan plan = CsvProjectionPlan.compile(TYPED_SCHEMA, new String[]{"AMOUNT", "QTY"}, UnparsableValuePolicy.NULL);
+        long[] unparsable = new long[4];
+
+        assertFalse(plan.fill(plan.newRecord(), new String[]{"12", "seven"}, 0, 0L, new long[4], unparsable));
+        assertEquals(1, unparsable[1]);
+    }
+
+    @Test
+    void testFill_RejectRowPolicySkipsRow() throws Exception {
+        CsvProjectionPlan plan = CsvProjectionPlan.compile(TYPED_SCHEMA, new String[]{"AMOUNT", "QTY"}, UnparsableValuePolicy.REJECT_ROW);
+
+        assertFalse(plan.fill(plan.newRecord(), new String[]{"12x", "7"}, 0, 0L));
+        assertTrue(plan.fill(plan.newRecord(), new String[]{"12", "7"}, 0, 0L));
+    }
+
+    @Test
+    void testFill_FailPolicyThrowsOnMissingValueOfNonNullableField() {
+        CsvProjectionPlan plan = CsvProjectionPlan.compile(TYPED_SCHEMA, new String[]{"AMOUNT", "QTY"}, UnparsableValuePolicy.FAIL);
+
+        UnparsableValueException empty = assertThrows(UnparsableValueException.class,
+                () -> plan.fill(plan.newRecord(), new String[]{"12", ""}, 0, 0L));
+        UnparsableValueException shortRow = assertThrows(UnparsableValueException.class,
+                () -> plan.fill(plan.newRecord(), new String[]{"12"}, 0, 0L));
+
+        assertTrue(empty.getMessage().contains("QTY"));
+        assertTrue(shortRow.getMessage().contains("QTY"));
+    }
+
+    @Test
+    void testFill_MissingValueOfNonNullableFieldRejectsRowAndCountsIt() throws Exception {
+        long[] nulls = new long[4];
+        long[] unparsable = new long[4];
+        for (UnparsableValuePolicy policy : new UnparsableValuePolicy[]{UnparsableValuePolicy.REJECT_ROW, UnparsableValuePolicy.NULL}) {
+            CsvProjectionPlan plan = CsvProjectionPlan.compile(TYPED_SCHEMA, new String[]{"AMOUNT", "QTY"}, policy);
+
+            assertFalse(plan.fill(plan.newRecord(), new String[]{"12", ""}, 0, 0L, nulls, unparsable), policy.name());
+            assertFalse(plan.fill(plan.newRecord(), new String[]{"12"}, 0, 0L, nulls, unparsable), policy.name());
+            // A nullable field may still be empty
+            assertTrue(plan.fill(plan.newRecord(), new String[]{"", "7"}, 0, 0L, nulls, unparsable), policy.name());
+        }
+
+        assertEquals(4, unparsable[1]);
+        assertEquals(2, nulls[0]);
+        assertEquals(0, nulls[1]);
+    }
+
+    @Test
+    void testFill_NonNullableFieldMissingFromHeaderRejectsEveryRow() throws Exception {
+        CsvProjectionPlan plan = CsvProjectionPlan.compile(TYPED_SCHEMA, new String[]{"AMOUNT"}, UnparsableValuePolicy.REJECT_ROW);
+
+        assertEquals(List.of("QTY"), plan.getMissingFields());
+        assertFalse(plan.fill(plan.newRecord(), new String[]{"12"}, 0, 0L));
+    }
+}
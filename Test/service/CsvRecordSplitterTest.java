@@ -0,0 +1,76 @@
+import org.junit.jupiter.api.Test;
+import com.opencsv.CSVReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvRecordSplitterTest {
+
+    @Test
+    void testNextChunk_CutsOnlyOnRecordBoundaries() throws IOException {
+        String csv = "id,name\n1,alpha\n2,beta\n3,gamma\n4,delta\n";
+        CsvRecordSplitter splitter = splitter(csv, 8);
+
+        assertEquals("id,name\n", text(splitter.nextRecord()));
+        List<String> chunks = drain(splitter);
+
+        assertEquals("1,alpha\n2,beta\n3,gamma\n4,delta\n", String.join("", chunks));
+        chunks.forEach(chunk -> assertTrue(chunk.endsWith("\n"), chunk));
+        assertTrue(chunks.size() > 1);
+    }
+
+    @Test
+    void testNextChunk_NeverSplitsInsideQuotedNewline() throws Exception {
+        String csv = "id,comment\n1,\"line one\nline two\"\n2,\"say \"\"hi\"\"\nbye\"\n3,plain\n";
+        CsvRecordSplitter splitter = splitter(csv, 4);
+        splitter.nextRecord();
+
+        List<String> chunks = drain(splitter);
+
+        // Every chunk must parse on its own into whole records
+        List<String[]> records = new ArrayList<>();
+        for (String chunk : chunks) {
+            try (CSVReader csvReader = new CSVReader(new StringReader(chunk))) {
+                records.addAll(csvReader.readAll());
+            }
+        }
+        assertEquals(3, records.size());
+        assertEquals("line one\nline two", records.get(0)[1]);
+        assertEquals("say \"hi\"\nbye", records.get(1)[1]);
+        assertEquals("plain", records.get(2)[1]);
+    }
+
+    @Test
+    void testNextChunk_KeepsLastRecordWithoutTrailingNewline() throws IOException {
+        CsvRecordSplitter splitter = splitter("h\na\nb", 1);
+        splitter.nextRecord();
+
+        assertEquals(List.of("a\n", "b"), drain(splitter));
+    }
+
+    @Test
+    void testNextRecord_EmptyInput() throws IOException {
+        assertNull(splitter("", 16).nextRecord());
+    }
+
+    private static CsvRecordSplitter splitter(String csv, int chunkSize) {
+        return new CsvRecordSplitter(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), chunkSize, '"');
+    }
+
+    private static List<String> drain(CsvRecordSplitter splitter) throws IOException {
+        List<String> chunks = new ArrayList<>();
+        CsvRecordSplitter.Chunk chunk;
+        while ((chunk = splitter.nextChunk()) != null) {
+            chunks.add(text(chunk));
+        }
+        return chunks;
+    }
+
+    private static String text(CsvRecordSplitter.Chunk chunk) {
+        return new String(chunk.data, 0, chunk.length, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,134 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+class DecodeAheadInputStreamTest {
+
+    private final byte[] data = new byte[1_000_003];
+    private ExecutorService decodeExecutor;
+
+    @BeforeEach
+    void setUp() {
+        new Random(42).nextBytes(data);
+        decodeExecutor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() {
+        decodeExecutor.shutdownNow();
+    }
+
+    @Test
+    void testRead_ReturnsTheSourceInOrder() throws IOException {
+        try (DecodeAheadInputStream stream = new DecodeAheadInputStream(new ByteArrayInputStream(data), 64 * 1024, 2, decodeExecutor)) {
+            assertEquals(data[0] & 0xFF, stream.read());
+            byte[] rest = stream.readAllBytes();
+
+            assertEquals(data.length - 1, rest.length);
+            for (int index = 0; index < rest.length; index++) {
+                assertEquals(data[index + 1], rest[index]);
+            }
+            assertEquals(-1, stream.read());
+        }
+    }
+
+    @Test
+    void testRead_RethrowsSourceFailureAfterTheDataBeforeIt() throws IOException {
+        InputStream failing = new SequenceInputStream(new ByteArrayInputStream(data, 0, 1000), new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Unexpected end of ZLIB input stream");
+            }
+        });
+
+        try (DecodeAheadInputStream stream = new DecodeAheadInputStream(failing, 100, 2, decodeExecutor)) {
+            assertEquals(1000, stream.readNBytes(1000).length);
+            IOException thrown = assertThrows(IOException.class, stream::read);
+            assertEquals("Unexpected end of ZLIB input stream", thrown.getMessage());
+            // A truncated source must not read as a normal end afterwards
+            assertThrows(IOException.class, stream::read);
+            assertThrows(IOException.class, () -> stream.read(new byte[16], 0, 16));
+        }
+    }
+
+    @Test
+    void testRead_RethrowsErrorOnTheDecodingThreadInsteadOfWaiting() throws IOException {
+        InputStream failing = new InputStream() {
+            @Override
+            public int read() {
+                throw new LinkageError("no native codec for this platform");
+            }
+        };
+
+        try (DecodeAheadInputStream stream = new DecodeAheadInputStream(failing, 100, 2, decodeExecutor)) {
+            IOException thrown = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> assertThrows(IOException.class, stream::read));
+            assertInstanceOf(LinkageError.class, thrown.getCause());
+            assertThrows(IOException.class, stream::read);
+        }
+    }
+
+    @Test
+    void testGetWaitNanos_CountsOnlyTheTimeTheReaderWasBlocked() throws Exception {
+        InputStream slow = new SequenceInputStream(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return -1;
+            }
+        }, new ByteArrayInputStream(data));
+
+        try (DecodeAheadInputStream stream = new DecodeAheadInputStream(slow, 64 * 1024, 2, decodeExecutor)) {
+            assertEquals(0, stream.getWaitNanos());
+            stream.read();
+            long waited = stream.getWaitNanos();
+            assertTrue(waited >= TimeUnit.MILLISECONDS.toNanos(150), "waited " + waited + " ns");
+
+            // Once the source is decoded ahead, reading on does not block
+            while (stream.getBufferedChunks() == 0) {
+                Thread.sleep(5);
+            }
+            stream.readNBytes(stream.available());
+            stream.read();
+            assertEquals(waited, stream.getWaitNanos());
+        }
+    }
+
+    @Test
+    void testClose_StopsTheDecodingThreadAndClosesTheSource() throws Exception {
+        boolean[] closed = new boolean[1];
+        InputStream endless = new InputStream() {
+            @Override
+            public int read() {
+                return 'x';
+            }
+
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+
+        DecodeAheadInputStream stream = new DecodeAheadInputStream(endless, 1024, 1, decodeExecutor);
+        stream.read();
+        stream.close();
+
+        assertTrue(closed[0]);
+        assertThrows(IOException.class, stream::read);
+        decodeExecutor.shutdown();
+        assertTrue(decodeExecutor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,209 @@
+import org.junit.jupiter.api.Test;
+import com.opencsv.CSVReader;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+
+class FastCsvTokenizerTest {
+
+    private static final String[] FRAGMENTS = {"a", "bc", "42", "é", "中文", " ", ",", "\"", "\n", "x y", ""};
+
+    @Test
+    void testReadNext_MatchesOpenCsvOnRandomRfc4180Input() throws Exception {
+        Random random = new Random(16);
+        for (int round = 0; round < 200; round++) {
+            String csv = randomCsv(random);
+
+            List<String[]> expected;
+            try (CSVReader csvReader = new CSVReader(new StringReader(csv))) {
+                expected = csvReader.readAll();
+            }
+            // Trickle the bytes in so that rows and quoted cells straddle buffer refills; intern into
+            // a small cache every other round so that it fills up
+            List<String[]> actual = readAll(new FastCsvTokenizer(new TrickleInputStream(csv.getBytes(StandardCharsets.UTF_8), random),
+                    1024, ',', '"', StandardCharsets.UTF_8, round % 2 == 0 ? 0 : 4));
+
+            assertEquals(expected.size(), actual.size(), csv);
+            for (int row = 0; row < expected.size(); row++) {
+                assertArrayEquals(expected.get(row), actual.get(row), "row " + row + " of\n" + csv);
+            }
+        }
+    }
+
+    @Test
+    void testReadNext_QuotedDelimitersNewlinesAndDoubledQuotes() throws IOException {
+        List<String[]> rows = readAll(tokenizer("id,comment\n1,\"a,b\"\n2,\"line one\nline two\"\n3,\"say \"\"hi\"\"\"\n4,\"\"\n"));
+
+        assertArrayEquals(new String[]{"1", "a,b"}, rows.get(1));
+        assertArrayEquals(new String[]{"2", "line one\nline two"}, rows.get(2));
+        assertArrayEquals(new String[]{"3", "say \"hi\""}, rows.get(3));
+        assertArrayEquals(new String[]{"4", ""}, rows.get(4));
+        assertEquals(5, rows.size());
+    }
+
+    @Test
+    void testReadNext_CrLfLineEndingsAndByteOrderMark() throws IOException {
+        byte[] body = "h1,h2\r\na,\"b\"\r\nc,d".getBytes(StandardCharsets.UTF_8);
+        byte[] csv = new byte[body.length + 3];
+        csv[0] = (byte) 0xEF;
+        csv[1] = (byte) 0xBB;
+        csv[2] = (byte) 0xBF;
+        System.arraycopy(body, 0, csv, 3, body.length);
+
+        List<String[]> rows = readAll(new FastCsvTokenizer(new ByteArrayInputStream(csv), 1024, ',', '"', StandardCharsets.UTF_8));
+
+        assertEquals(List.of(List.of("h1", "h2"), List.of("a", "b"), List.of("c", "d")), rows.stream().map(List::of).toList());
+    }
+
+    @Test
+    void testReadNext_GrowsBufferForRowLongerThanIt() throws IOException {
+        String longCell = "x".repeat(5000);
+        List<String[]> rows = readAll(tokenizer("h\n\"" + longCell + "\"\n" + longCell + "\n"));
+
+        assertEquals(longCell, rows.get(1)[0]);
+        assertEquals(longCell, rows.get(2)[0]);
+    }
+
+    @Test
+    void testReadNext_DecodesOnlyProjectedColumns() throws IOException {
+        FastCsvTokenizer tokenizer = tokenizer("a,b,c\n1,\"2\",3\n4,5,6,7\n");
+        assertArrayEquals(new String[]{"a", "b", "c"}, tokenizer.readNext());
+
+        tokenizer.project(new boolean[]{false, true, true});
+
+        assertArrayEquals(new String[]{null, "2", "3"}, tokenizer.readNext());
+        // Columns past the projection are never read
+        assertArrayEquals(new String[]{null, "5", "6", null}, tokenizer.readNext());
+        assertNull(tokenizer.readNext());
+    }
+
+    @Test
+    void testReadNext_CustomDelimiterQuoteAndCharset() throws IOException {
+        Charset latin1 = StandardCharsets.ISO_8859_1;
+        FastCsvTokenizer tokenizer = new FastCsvTokenizer(new ByteArrayInputStream("a;'b;c'\ncafé;'it''s'\n".getBytes(latin1)), 1024, ';', '\'', latin1);
+
+        assertArrayEquals(new String[]{"a", "b;c"}, tokenizer.readNext());
+        assertArrayEquals(new String[]{"café", "it's"}, tokenizer.readNext());
+    }
+
+    @Test
+    void testReadNext_InternsRepeatedValuesPerColumn() throws IOException {
+        String longValue = "x".repeat(CellInterner.MAX_VALUE_BYTES + 1);
+        String csv = "US,\"NY\"," + longValue + "\nUS,NY," + longValue + "\n";
+        FastCsvTokenizer tokenizer = new FastCsvTokenizer(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), 1024, ',', '"',
+                StandardCharsets.UTF_8, 16);
+
+        String[] first = tokenizer.readNext().clone();
+        String[] second = tokenizer.readNext();
+
+        assertArrayEquals(first, second);
+        assertSame(first[0], second[0]);
+        assertSame(first[1], second[1]);
+        assertNotSame(first[2], second[2]);
+    }
+
+    @Test
+    void testGetOffset_PointsAtStartOfNextRow() throws IOException {
+        String csv = "h1,h2\n\"x\ny\",z\nlast,row\n";
+        FastCsvTokenizer tokenizer = tokenizer(csv);
+
+        tokenizer.readNext();
+        assertEquals(csv.indexOf('"'), tokenizer.getOffset());
+        tokenizer.readNext();
+        assertEquals(csv.indexOf("last"), tokenizer.getOffset());
+        tokenizer.readNext();
+        assertEquals(csv.length(), tokenizer.getOffset());
+    }
+
+    @Test
+    void testReadNext_UnterminatedQuoteIsMalformed() throws IOException {
+        FastCsvTokenizer tokenizer = tokenizer("h1,h2\na,\"never closed\n");
+        tokenizer.readNext();
+
+        MalformedCsvException thrownException = assertThrows(MalformedCsvException.class, tokenizer::readNext);
+
+        assertTrue(thrownException.getMessage().contains("row 2"), thrownException.getMessage());
+    }
+
+    @Test
+    void testReadNext_EmptyInput() throws IOException {
+        assertNull(tokenizer("").readNext());
+    }
+
+    @Test
+    void testConstructor_RejectsAmbiguousSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new FastCsvTokenizer(InputStream.nullInputStream(), 1024, '"', '"', StandardCharsets.UTF_8));
+        assertThrows(IllegalArgumentException.class, () -> new FastCsvTokenizer(InputStream.nullInputStream(), 1024, ',', '"', StandardCharsets.UTF_16));
+    }
+
+    private static FastCsvTokenizer tokenizer(String csv) {
+        return new FastCsvTokenizer(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), 1024, ',', '"', StandardCharsets.UTF_8);
+    }
+
+    private static List<String[]> readAll(FastCsvTokenizer tokenizer) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        try (tokenizer) {
+            String[] row;
+            while ((row = tokenizer.readNext()) != null) {
+                // The tokenizer reuses its row array
+                rows.add(row.clone());
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Builds RFC 4180 CSV that opencsv and the tokenizer must read alike: cells holding a delimiter,
+     * quote, newline or space are quoted, there are no backslashes, and no row is a single empty cell.
+     */
+    private static String randomCsv(Random random) {
+        StringBuilder csv = new StringBuilder();
+        int rows = 1 + random.nextInt(40);
+        for (int row = 0; row < rows; row++) {
+            int columns = 2 + random.nextInt(6);
+            for (int column = 0; column < columns; column++) {
+                if (column > 0) {
+                    csv.append(',');
+                }
+                StringBuilder cell = new StringBuilder();
+                int fragments = random.nextInt(5);
+                for (int fragment = 0; fragment < fragments; fragment++) {
+                    cell.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+                }
+                String value = cell.toString();
+                if (value.matches("(?s).*[,\"\n ].*") || random.nextInt(4) == 0) {
+                    csv.append('"').append(value.replace("\"", "\"\"")).append('"');
+                } else {
+                    csv.append(value);
+                }
+            }
+            if (row < rows - 1 || random.nextBoolean()) {
+                csv.append('\n');
+            }
+        }
+        return csv.toString();
+    }
+
+    /** Returns at most a few bytes per read. */
+    private static final class TrickleInputStream extends FilterInputStream {
+        private final Random random;
+
+        TrickleInputStream(byte[] data, Random random) {
+            super(new ByteArrayInputStream(data));
+            this.random = random;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, 1 + random.nextInt(7)));
+        }
+    }
+}
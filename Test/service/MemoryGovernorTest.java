@@ -0,0 +1,138 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.util.unit.DataSize;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryGovernorTest {
+
+    private static final long MB = 1024 * 1024;
+
+    /** 128MB row groups, 1MB pages and 1MB dictionaries: 2MB per column besides the row group. */
+    private final WriterProfile profile = WriterProfile.defaults(new SnapshotProperties.Writer());
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void testReserve_GrantsTheRequestedRowGroupWhileTheBudgetAllows() throws IOException {
+        MemoryGovernor governor = governor(1024);
+
+        try (MemoryGovernor.Reservation reservation = governor.reserve("party", profile, 10, 2, 64 * MB)) {
+            assertSame(profile, reservation.getProfile());
+            assertEquals(2 * (128 + 10 * 2) * MB + 64 * MB, reservation.getBytes());
+            assertEquals(reservation.getBytes(), governor.getReservedBytes());
+            assertEquals(1, governor.getReservations());
+        }
+
+        assertEquals(0, governor.getReservedBytes());
+        assertEquals(0, governor.getReservations());
+    }
+
+    @Test
+    void testReserve_HalvesTheRowGroupToFitWhatIsLeft() throws IOException {
+        MemoryGovernor governor = governor(300);
+
+        try (MemoryGovernor.Reservation first = governor.reserve("party", profile, 0, 1, 0);
+             MemoryGovernor.Reservation second = governor.reserve("party", profile, 0, 1, 0)) {
+            assertEquals(128 * MB, first.getProfile().getRowGroupSize());
+            assertEquals(128 * MB, second.getProfile().getRowGroupSize());
+
+            try (MemoryGovernor.Reservation third = governor.reserve("party", profile, 0, 1, 0)) {
+                assertEquals(32 * MB, third.getProfile().getRowGroupSize());
+                assertEquals(profile.getCodec(), third.getProfile().getCodec());
+            }
+        }
+        assertEquals(1, meterRegistry.get(MemoryGovernor.SHRUNK_COUNTER).tag("fileType", "party").counter().count());
+    }
+
+    @Test
+    void testReserve_WaitsInArrivalOrderUntilMemoryIsReleased() throws Exception {
+        MemoryGovernor governor = governor(200);
+        MemoryGovernor.Reservation held = governor.reserve("party", profile, 0, 1, 0);
+
+        Future<MemoryGovernor.Reservation> large = executor.submit(() -> governor.reserve("party", profile, 0, 1, 170 * MB));
+        awaitWaiting(governor, 1);
+        Future<MemoryGovernor.Reservation> small = executor.submit(() -> governor.reserve("party", profile, 0, 1, 0));
+        awaitWaiting(governor, 2);
+
+        // The small one would fit once shrunk, but must not overtake the one waiting before it
+        assertThrows(TimeoutException.class, () -> small.get(200, TimeUnit.MILLISECONDS));
+        assertEquals(2.0, meterRegistry.get(MemoryGovernor.WAITING_GAUGE).gauge().value());
+
+        held.close();
+        MemoryGovernor.Reservation largeReservation = large.get(10, TimeUnit.SECONDS);
+        assertEquals(16 * MB, largeReservation.getProfile().getRowGroupSize());
+        assertFalse(small.isDone());
+
+        largeReservation.close();
+        small.get(10, TimeUnit.SECONDS).close();
+        assertEquals(0, governor.getReservedBytes());
+    }
+
+    @Test
+    void testReserve_FailsAfterTheAcquireTimeout() throws IOException {
+        SnapshotProperties.Memory memory = memory(200);
+        memory.setAcquireTimeout(Duration.ofMillis(100));
+        MemoryGovernor governor = new MemoryGovernor(meterRegistry, memory);
+
+        try (MemoryGovernor.Reservation held = governor.reserve("party", profile, 0, 1, 150 * MB)) {
+            IOException e = assertThrows(IOException.class, () -> governor.reserve("account", profile, 0, 1, 150 * MB));
+            assertTrue(e.getMessage().contains("account"), e.getMessage());
+        }
+        assertEquals(0, governor.getWaiting());
+    }
+
+    @Test
+    void testReserve_GrantsMoreThanTheBudgetToAConversionRunningAlone() throws IOException {
+        MemoryGovernor governor = governor(100);
+
+        try (MemoryGovernor.Reservation reservation = governor.reserve("party", profile, 0, 1, 200 * MB)) {
+            assertEquals(16 * MB, reservation.getProfile().getRowGroupSize());
+            assertEquals(216 * MB, governor.getReservedBytes());
+        }
+    }
+
+    @Test
+    void testReserve_DisabledGrantsTheProfileUnchanged() throws IOException {
+        SnapshotProperties.Memory memory = memory(1);
+        memory.setEnabled(false);
+        MemoryGovernor governor = new MemoryGovernor(meterRegistry, memory);
+
+        try (MemoryGovernor.Reservation reservation = governor.reserve("party", profile, 100, 8, 1024 * MB)) {
+            assertSame(profile, reservation.getProfile());
+            assertEquals(0, governor.getReservedBytes());
+        }
+        assertNull(meterRegistry.find(MemoryGovernor.RESERVED_GAUGE).gauge());
+    }
+
+    private MemoryGovernor governor(long budgetMegabytes) {
+        return new MemoryGovernor(meterRegistry, memory(budgetMegabytes));
+    }
+
+    private static SnapshotProperties.Memory memory(long budgetMegabytes) {
+        SnapshotProperties.Memory memory = new SnapshotProperties.Memory();
+        memory.setEnabled(true);
+        memory.setBudget(DataSize.ofMegabytes(budgetMegabytes));
+        return memory;
+    }
+
+    private static void awaitWaiting(MemoryGovernor governor, int waiting) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (governor.getWaiting() < waiting && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(waiting, governor.getWaiting());
+    }
+}
@@ -0,0 +1,94 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.avro.Schema;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+import java.util.ArrayList;
+import java.util.List;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Compares the single-threaded conversion path with the parallel engine at increasing worker counts.
+ * S3 is mocked, so the numbers measure parsing, record building and Parquet encoding only.
+ *
+ * <pre>
+ * mvn test -Dtest=ParallelConversionBenchmarkTest -Dsnapshot.benchmark=true [-Dsnapshot.benchmark.bytes=1073741824]
+ * </pre>
+ */
+@EnabledIfSystemProperty(named = "snapshot.benchmark", matches = "true")
+class ParallelConversionBenchmarkTest {
+
+    private static final int COLUMNS = 20;
+
+    @Test
+    void benchmarkScalingWithCores() throws Exception {
+        long streamBytes = Long.getLong("snapshot.benchmark.bytes", 256L * 1024 * 1024);
+        Schema schema = schema();
+        S3Client s3Client = discardingS3Client();
+        SnapshotServiceImpl snapshotService = new SnapshotServiceImpl(s3Client, new SimpleMeterRegistry(), new SnapshotProperties(), new ParquetWriterFactory(),
+                new SchemaCache(new SnapshotProperties()), null);
+
+        List<String> report = new ArrayList<>();
+        try {
+            // Warm up the JIT on both paths before measuring
+            runSingleThreaded(snapshotService, schema, streamBytes / 8);
+            runParallel(s3Client, snapshotService, schema, streamBytes / 8, 2);
+
+            double baseline = runSingleThreaded(snapshotService, schema, streamBytes);
+            report.add(String.format("single-threaded   %,12.0f rows/s  1.00x", baseline));
+            int cores = Runtime.getRuntime().availableProcessors();
+            for (int workers = 1; workers <= cores; workers *= 2) {
+                double rowsPerSecond = runParallel(s3Client, snapshotService, schema, streamBytes, workers);
+                report.add(String.format("parallel x%-6d  %,12.0f rows/s  %.2fx", workers, rowsPerSecond, rowsPerSecond / baseline));
+            }
+        } finally {
+            snapshotService.shutdown();
+        }
+
+        System.out.printf("CSV to Parquet, %,d bytes, %d columns, %d cores%n", streamBytes, COLUMNS, Runtime.getRuntime().availableProcessors());
+        report.forEach(System.out::println);
+    }
+
+    private static double runSingleThreaded(SnapshotServiceImpl snapshotService, Schema schema, long streamBytes) throws Exception {
+        SyntheticCsvInputStream source = new SyntheticCsvInputStream(streamBytes, COLUMNS);
+        ConversionMetrics metrics = new ConversionMetrics(new SimpleMeterRegistry(), "benchmark", new SnapshotProperties.Progress());
+        long start = System.nanoTime();
+        try (CsvRowReader csvReader = CsvEngine.FAST.open(source, new SnapshotProperties.Csv())) {
+            snapshotService.writeCsvToParquet(csvReader, schema, snapshotService.openParquetOutputToS3("bucket", "single.parquet"), metrics);
+        }
+        return source.getRowsProduced() / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private static double runParallel(S3Client s3Client, SnapshotServiceImpl snapshotService, Schema schema, long streamBytes, int workers) throws Exception {
+        SyntheticCsvInputStream source = new SyntheticCsvInputStream(streamBytes, COLUMNS);
+        ConversionMetrics metrics = new ConversionMetrics(new SimpleMeterRegistry(), "benchmark", new SnapshotProperties.Progress());
+        ParallelCsvToParquetConverter converter = new ParallelCsvToParquetConverter(s3Client, snapshotService, new ParquetWriterFactory(),
+                new SchemaCache(new SnapshotProperties()), workers, 32 * 1024 * 1024, UnparsableValuePolicy.FAIL,
+                new SnapshotProperties.Csv());
+        long start = System.nanoTime();
+        converter.convert(source, schema, "bucket", "parallel", metrics);
+        return source.getRowsProduced() / ((System.nanoTime() - start) / 1e9);
+    }
+
+    private static Schema schema() {
+        StringBuilder fields = new StringBuilder();
+        for (int column = 1; column <= COLUMNS; column++) {
+            fields.append("{\"name\": \"header").append(column).append("\", \"type\": [\"null\", \"string\"]}, ");
+        }
+        return new Schema.Parser().parse("{\"type\": \"record\", \"name\": \"benchmark\", \"fields\": [" + fields
+                + "{\"name\": \"EFF_DT\", \"type\": \"string\"}, {\"name\": \"ETL_TS\", \"type\": \"string\"}]}");
+    }
+
+    private static S3Client discardingS3Client() {
+        S3Client s3Client = mock(S3Client.class);
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload").build());
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenReturn(UploadPartResponse.builder().eTag("etag").build());
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(ListObjectsV2Response.builder().build());
+        return s3Client;
+    }
+}
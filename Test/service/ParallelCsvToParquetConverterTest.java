@@ -0,0 +1,154 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.avro.Schema;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ParallelCsvToParquetConverterTest {
+
+    private static final Schema SCHEMA = new Schema.Parser().parse("{\"type\": \"record\", \"name\": \"test\", \"fields\": ["
+            + "{\"name\": \"header1\", \"type\": [\"null\", \"string\"]}, {\"name\": \"header2\", \"type\": [\"null\", \"string\"]}, "
+            + "{\"name\": \"EFF_DT\", \"type\": \"string\"}, {\"name\": \"ETL_TS\", \"type\": \"string\"}]}");
+
+    @Mock
+    private S3Client s3Client;
+
+    @Mock
+    private SnapshotService snapshotService;
+
+    private ExecutorService uploadExecutor;
+    private ConversionMetrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        uploadExecutor = Executors.newCachedThreadPool();
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(ListObjectsV2Response.builder().build());
+        when(s3Client.deleteObjects(any(DeleteObjectsRequest.class))).thenReturn(DeleteObjectsResponse.builder().build());
+        metrics = new ConversionMetrics(new SimpleMeterRegistry(), "test", new SnapshotProperties.Progress());
+        when(snapshotService.openParquetOutputToS3(anyString(), anyString())).thenAnswer(invocation -> new S3MultipartOutputFile(
+                s3Client, invocation.getArgument(0), invocation.getArgument(1), S3MultipartOutputStream.MIN_PART_SIZE, 2, uploadExecutor));
+    }
+
+    @AfterEach
+    void tearDown() {
+        uploadExecutor.shutdownNow();
+    }
+
+    @Test
+    void testConvert_WritesOrderedPartsCoveringEveryRow() throws IOException {
+        SyntheticCsvInputStream source = new SyntheticCsvInputStream(2 * 1024 * 1024, 2);
+        ParallelCsvToParquetConverter converter = new ParallelCsvToParquetConverter(s3Client, snapshotService, new ParquetWriterFactory(),
+                new SchemaCache(new SnapshotProperties()), 4, 256 * 1024, UnparsableValuePolicy.FAIL,
+                new SnapshotProperties.Csv());
+
+        List<ParquetPart> parts = converter.convert(source, SCHEMA, "destination-bucket", "gbi-report/party", metrics);
+
+        assertTrue(parts.size() > 1);
+        for (int partNumber = 0; partNumber < parts.size(); partNumber++) {
+            assertEquals(partNumber, parts.get(partNumber).getPartNumber());
+            assertEquals(String.format("gbi-report/party/part-%05d.parquet", partNumber), parts.get(partNumber).getKey());
+        }
+        assertEquals(source.getRowsProduced(), parts.stream().mapToLong(ParquetPart::getRows).sum());
+        assertEquals(source.getRowsProduced(), metrics.getRowsWritten());
+        verify(s3Client, times(parts.size())).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    }
+
+    @Test
+    void testConvert_DeletesPartsOfAnEarlierRunPastTheNewOnes() throws IOException {
+        givenExistingParts("part-00000.parquet", "part-00001.parquet", "part-00002.parquet");
+        ParallelCsvToParquetConverter converter = new ParallelCsvToParquetConverter(s3Client, snapshotService, new ParquetWriterFactory(),
+                new SchemaCache(new SnapshotProperties()), 2, 256 * 1024, UnparsableValuePolicy.FAIL,
+                new SnapshotProperties.Csv());
+
+        List<ParquetPart> parts = converter.convert(new ByteArrayInputStream("header1,header2\nvalue1,value2\n".getBytes(StandardCharsets.UTF_8)),
+                SCHEMA, "destination-bucket", "gbi-report/party", metrics);
+
+        assertEquals(1, parts.size());
+        assertEquals(List.of("gbi-report/party/part-00001.parquet", "gbi-report/party/part-00002.parquet"), deletedKeys());
+        ArgumentCaptor<ListObjectsV2Request> listing = ArgumentCaptor.forClass(ListObjectsV2Request.class);
+        verify(s3Client).listObjectsV2(listing.capture());
+        assertEquals("gbi-report/party/part-", listing.getValue().prefix());
+    }
+
+    @Test
+    void testConvert_FailedPartDeletesUploadedParts() {
+        AtomicInteger puts = new AtomicInteger();
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class))).thenAnswer(invocation -> {
+            if (puts.incrementAndGet() == 3) {
+                throw SdkClientException.create("upload failed");
+            }
+            return null;
+        });
+        ParallelCsvToParquetConverter converter = new ParallelCsvToParquetConverter(s3Client, snapshotService, new ParquetWriterFactory(),
+                new SchemaCache(new SnapshotProperties()), 2, 64 * 1024, UnparsableValuePolicy.FAIL,
+                new SnapshotProperties.Csv());
+
+        assertThrows(IOException.class, () -> converter.convert(new SyntheticCsvInputStream(1024 * 1024, 2), SCHEMA, "destination-bucket", "gbi-report/party", metrics));
+
+        verify(s3Client, atLeast(2)).deleteObject(any(DeleteObjectRequest.class));
+        // Stale parts are only deleted once a conversion has succeeded
+        verify(s3Client, never()).listObjectsV2(any(ListObjectsV2Request.class));
+    }
+
+    @Test
+    void testConvert_EmptySourceWritesNoParts() throws IOException {
+        ParallelCsvToParquetConverter converter = new ParallelCsvToParquetConverter(s3Client, snapshotService, new ParquetWriterFactory(),
+                new SchemaCache(new SnapshotProperties()), 2, 1024, UnparsableValuePolicy.FAIL,
+                new SnapshotProperties.Csv());
+
+        List<ParquetPart> parts = converter.convert(new ByteArrayInputStream(new byte[0]), SCHEMA, "destination-bucket", "gbi-report/party", metrics);
+
+        assertTrue(parts.isEmpty());
+        verifyNoInteractions(s3Client);
+    }
+
+    @Test
+    void testConvert_HeaderOnlySourceWritesNoParts() throws IOException {
+        ParallelCsvToParquetConverter converter = new ParallelCsvToParquetConverter(s3Client, snapshotService, new ParquetWriterFactory(),
+                new SchemaCache(new SnapshotProperties()), 2, 1024, UnparsableValuePolicy.FAIL,
+                new SnapshotProperties.Csv());
+
+        List<ParquetPart> parts = converter.convert(new ByteArrayInputStream("header1,header2\n".getBytes(StandardCharsets.UTF_8)),
+                SCHEMA, "destination-bucket", "gbi-report/party", metrics);
+
+        assertTrue(parts.isEmpty());
+    }
+
+    private void givenExistingParts(String... names) {
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(ListObjectsV2Response.builder()
+                .contents(Arrays.stream(names).map(name -> S3Object.builder().key("gbi-report/party/" + name).build()).toList())
+                .build());
+    }
+
+    private List<String> deletedKeys() {
+        ArgumentCaptor<DeleteObjectsRequest> deletes = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+        verify(s3Client, atLeastOnce()).deleteObjects(deletes.capture());
+        return deletes.getAllValues().stream().flatMap(request -> request.delete().objects().stream()).map(ObjectIdentifier::key).toList();
+    }
+}
@@ -0,0 +1,119 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class RangedS3InputStreamTest {
+
+    private static final byte[] OBJECT = new byte[1_000_003];
+
+    @Mock
+    private S3Client s3Client;
+
+    private ExecutorService downloadExecutor;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        new Random(42).nextBytes(OBJECT);
+        downloadExecutor = Executors.newFixedThreadPool(8);
+
+        // Serve "bytes=start-end" ranges out of the in-memory object
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenAnswer(invocation -> {
+            int concurrent = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(concurrent, Math::max);
+            try {
+                Thread.sleep(2);
+                String[] range = invocation.getArgument(0, GetObjectRequest.class).range().substring("bytes=".length()).split("-");
+                int start = Integer.parseInt(range[0]);
+                int end = Math.min(Integer.parseInt(range[1]), OBJECT.length - 1);
+                return new ResponseInputStream<>(GetObjectResponse.builder().contentLength((long) (end - start + 1)).build(),
+                        AbortableInputStream.create(new ByteArrayInputStream(OBJECT, start, end - start + 1)));
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        downloadExecutor.shutdownNow();
+    }
+
+    @Test
+    void testRead_ReassemblesRangesInOrder() throws IOException {
+        try (RangedS3InputStream stream = newStream(64 * 1024, 4)) {
+            assertArrayEquals(OBJECT, stream.readAllBytes());
+        }
+
+        int expectedRequests = (OBJECT.length + 64 * 1024 - 1) / (64 * 1024);
+        verify(s3Client, times(expectedRequests)).getObject(any(GetObjectRequest.class));
+    }
+
+    @Test
+    void testRead_SingleByteReadsMatchObject() throws IOException {
+        try (RangedS3InputStream stream = newStream(100_000, 3)) {
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(OBJECT[i] & 0xFF, stream.read());
+            }
+            byte[] rest = stream.readAllBytes();
+            assertEquals(OBJECT.length - 1000, rest.length);
+            assertEquals(OBJECT[OBJECT.length - 1], rest[rest.length - 1]);
+        }
+    }
+
+    @Test
+    void testRead_ReadAheadIsBounded() throws IOException {
+        try (RangedS3InputStream stream = newStream(16 * 1024, 3)) {
+            stream.readAllBytes();
+        }
+
+        assertTrue(maxInFlight.get() <= 3, "at most 3 ranges may be fetched at once but saw " + maxInFlight.get());
+    }
+
+    @Test
+    void testRead_PinsRangesToETag() throws IOException {
+        try (RangedS3InputStream stream = newStream(OBJECT.length, 1)) {
+            stream.readAllBytes();
+        }
+
+        verify(s3Client).getObject(argThat((GetObjectRequest request) -> "\"etag\"".equals(request.ifMatch())
+                && ("bytes=0-" + (OBJECT.length - 1)).equals(request.range())));
+    }
+
+    @Test
+    void testRead_FailedRangeSurfacesAsIOException() {
+        reset(s3Client);
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenThrow(SdkClientException.create("connection reset"));
+
+        IOException thrownException = assertThrows(IOException.class, () -> {
+            try (RangedS3InputStream stream = newStream(64 * 1024, 2)) {
+                stream.readAllBytes();
+            }
+        });
+        assertEquals("Error fetching CSV data from S3", thrownException.getMessage());
+    }
+
+    private RangedS3InputStream newStream(int chunkSize, int concurrency) {
+        return new RangedS3InputStream(s3Client, "source-bucket", "source.csv", "\"etag\"", OBJECT.length,
+                chunkSize, concurrency, downloadExecutor);
+    }
+}
@@ -0,0 +1,272 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class RollingParquetWriterTest {
+
+    private static final Schema SCHEMA = new Schema.Parser().parse("{\"type\": \"record\", \"name\": \"test\", \"fields\": ["
+            + "{\"name\": \"header1\", \"type\": [\"null\", \"string\"]}, {\"name\": \"header2\", \"type\": [\"null\", \"string\"]}]}");
+
+    @Mock
+    private S3Client s3Client;
+
+    @Mock
+    private SnapshotService snapshotService;
+
+    private ExecutorService uploadExecutor;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        uploadExecutor = Executors.newCachedThreadPool();
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(ListObjectsV2Response.builder().build());
+        when(s3Client.deleteObjects(any(DeleteObjectsRequest.class))).thenReturn(DeleteObjectsResponse.builder().build());
+        when(snapshotService.openParquetOutputToS3(anyString(), anyString())).thenAnswer(invocation -> new S3MultipartOutputFile(
+                s3Client, invocation.getArgument(0), invocation.getArgument(1), S3MultipartOutputStream.MIN_PART_SIZE, 2, uploadExecutor));
+    }
+
+    @AfterEach
+    void tearDown() {
+        uploadExecutor.shutdownNow();
+    }
+
+    @Test
+    void testWrite_RollsOverAtRowLimit() throws IOException {
+        List<ParquetPart> parts;
+        try (RollingParquetWriter writer = writer(0, 1000)) {
+            writeRecords(writer, 2500);
+            parts = writer.finish();
+        }
+
+        assertEquals(List.of(1000L, 1000L, 500L), parts.stream().map(ParquetPart::getRows).toList());
+        assertEquals(List.of("gbi-report/party/part-00000.parquet", "gbi-report/party/part-00001.parquet", "gbi-report/party/part-00002.parquet"),
+                parts.stream().map(ParquetPart::getKey).toList());
+        parts.forEach(part -> assertTrue(part.getBytes() > 0));
+        verify(s3Client, times(3)).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        verify(s3Client, never()).deleteObject(any(DeleteObjectRequest.class));
+    }
+
+    @Test
+    void testFinish_DeletesPartsOfAnEarlierRunPastTheNewOnes() throws IOException {
+        givenExistingParts("part-00000.parquet", "part-00001.parquet", "part-00002.parquet", "part-00003.parquet");
+
+        try (RollingParquetWriter writer = writer(0, 1000)) {
+            writeRecords(writer, 1500);
+            assertEquals(2, writer.finish().size());
+        }
+
+        // The first two are overwritten; only those past them are stale
+        assertEquals(List.of("gbi-report/party/part-00002.parquet", "gbi-report/party/part-00003.parquet"), deletedKeys());
+        InOrder inOrder = inOrder(s3Client);
+        inOrder.verify(s3Client, times(2)).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+        inOrder.verify(s3Client).deleteObjects(any(DeleteObjectsRequest.class));
+    }
+
+    @Test
+    void testWrite_RollsOverAtSizeLimitOnCheckInterval() throws IOException {
+        List<ParquetPart> parts;
+        try (RollingParquetWriter writer = writer(1, 0)) {
+            writeRecords(writer, 3000);
+            parts = writer.finish();
+        }
+
+        long interval = RollingParquetWriter.SIZE_CHECK_INTERVAL;
+        assertEquals(List.of(interval, interval, 3000 - 2 * interval), parts.stream().map(ParquetPart::getRows).toList());
+    }
+
+    @Test
+    void testFinish_NoRecordsWritesNoParts() throws IOException {
+        try (RollingParquetWriter writer = writer(0, 1000)) {
+            assertTrue(writer.finish().isEmpty());
+        }
+        verifyNoInteractions(s3Client);
+    }
+
+    @Test
+    void testFinish_NoRecordsStillDeletesPartsOfAnEarlierRun() throws IOException {
+        givenExistingParts("part-00000.parquet");
+
+        try (RollingParquetWriter writer = writer(0, 1000)) {
+            assertTrue(writer.finish().isEmpty());
+        }
+
+        assertEquals(List.of("gbi-report/party/part-00000.parquet"), deletedKeys());
+    }
+
+    @Test
+    void testAbort_FailedPartDeletesUploadedParts() {
+        AtomicInteger puts = new AtomicInteger();
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class))).thenAnswer(invocation -> {
+            if (puts.incrementAndGet() == 2) {
+                throw SdkClientException.create("upload failed");
+            }
+            return null;
+        });
+
+        RollingParquetWriter writer = writer(0, 100);
+        assertThrows(IOException.class, () -> {
+            writeRecords(writer, 350);
+            writer.finish();
+        });
+        writer.abort();
+
+        // Stale parts are only deleted once a conversion has succeeded
+        verify(s3Client, never()).listObjectsV2(any(ListObjectsV2Request.class));
+        ArgumentCaptor<DeleteObjectRequest> deletes = ArgumentCaptor.forClass(DeleteObjectRequest.class);
+        verify(s3Client, atLeastOnce()).deleteObject(deletes.capture());
+        assertTrue(deletes.getAllValues().stream().anyMatch(delete -> delete.key().equals("gbi-report/party/part-00000.parquet")));
+        assertTrue(deletes.getAllValues().stream().noneMatch(delete -> delete.key().equals("gbi-report/party/part-00001.parquet")));
+    }
+
+    @Test
+    void testCheckpointer_WritesCheckpointPerPartAndKeepsPartsOnAbort() throws IOException {
+        String csv = csv(250);
+        ConversionMetrics metrics = new ConversionMetrics(new SimpleMeterRegistry(), "test", new SnapshotProperties.Progress());
+        ConversionCheckpointer checkpointer = new ConversionCheckpointer(s3Client, ConversionCheckpoint.builder()
+                .destinationBucketName("destination-bucket").destinationPrefix("gbi-report/party").build(), "gbi-report/party.checkpoint.json");
+
+        RollingParquetWriter writer = writer(0, 100, checkpointer);
+        CsvRowReader reader = checkpointer.track(tokenizer(csv), metrics);
+        copyRows(reader, writer, metrics);
+        writer.abort();
+
+        verify(s3Client, never()).deleteObject(any(DeleteObjectRequest.class));
+        ConversionCheckpoint checkpoint = checkpointer.getCheckpoint();
+        assertEquals(List.of("gbi-report/party/part-00000.parquet", "gbi-report/party/part-00001.parquet"),
+                checkpoint.getParts().stream().map(ParquetPart::getKey).toList());
+        assertEquals(200, checkpoint.getRowsWritten());
+        assertEquals(200, checkpoint.getRowsRead());
+        assertEquals("header1,header2\n".length(), checkpoint.getHeaderLength());
+        assertEquals(csv.indexOf("r201c1"), checkpoint.getSourceOffset());
+
+        ArgumentCaptor<PutObjectRequest> puts = ArgumentCaptor.forClass(PutObjectRequest.class);
+        ArgumentCaptor<RequestBody> bodies = ArgumentCaptor.forClass(RequestBody.class);
+        verify(s3Client, times(4)).putObject(puts.capture(), bodies.capture());
+        int lastCheckpoint = puts.getAllValues().stream().map(PutObjectRequest::key).toList().lastIndexOf("gbi-report/party.checkpoint.json");
+        try (InputStream body = bodies.getAllValues().get(lastCheckpoint).contentStreamProvider().newStream()) {
+            assertEquals(checkpoint, ConversionCheckpoint.parse(new String(body.readAllBytes(), StandardCharsets.UTF_8)));
+        }
+    }
+
+    @Test
+    void testCheckpointer_ResumedConversionContinuesAfterCheckpointedParts() throws IOException {
+        String csv = csv(250);
+        int headerLength = "header1,header2\n".length();
+        int resumeOffset = csv.indexOf("r201c1");
+        ParquetPart resumedPart = new ParquetPart(0, "destination-bucket", "gbi-report/party/part-00000.parquet", 200, 4096, "\"etag\"");
+        ConversionCheckpointer checkpointer = new ConversionCheckpointer(s3Client, ConversionCheckpoint.builder()
+                .destinationBucketName("destination-bucket").destinationPrefix("gbi-report/party")
+                .headerLength(headerLength).sourceOffset(resumeOffset).rowsRead(200)
+                .parts(List.of(resumedPart)).build(), "gbi-report/party.checkpoint.json");
+        ConversionMetrics metrics = new ConversionMetrics(new SimpleMeterRegistry(), "test", new SnapshotProperties.Progress());
+        metrics.merge(200, 200, new long[0], new long[0], 0, 0);
+        assertTrue(checkpointer.isResumed());
+
+        givenExistingParts("part-00000.parquet", "part-00001.parquet", "part-00002.parquet");
+
+        // The resumed source is the header row followed by the rows after the checkpoint
+        CsvRowReader reader = checkpointer.track(tokenizer(csv.substring(0, headerLength) + csv.substring(resumeOffset)), metrics);
+        List<ParquetPart> parts;
+        try (RollingParquetWriter writer = writer(0, 100, checkpointer)) {
+            copyRows(reader, writer, metrics);
+            parts = writer.finish();
+        }
+
+        assertEquals(List.of(resumedPart.getKey(), "gbi-report/party/part-00001.parquet"), parts.stream().map(ParquetPart::getKey).toList());
+        assertEquals(resumedPart, parts.get(0));
+        assertEquals(50, parts.get(1).getRows());
+        ConversionCheckpoint checkpoint = checkpointer.getCheckpoint();
+        assertEquals(csv.length(), checkpoint.getSourceOffset());
+        assertEquals(250, checkpoint.getRowsRead());
+        assertEquals(250, checkpoint.getRowsWritten());
+        // Only parts after the checkpointed ones are stale
+        assertEquals(List.of("gbi-report/party/part-00002.parquet"), deletedKeys());
+    }
+
+    /**
+     * Skips the header, then writes every row as {@link SnapshotServiceImpl} does.
+     */
+    private static void copyRows(CsvRowReader reader, RollingParquetWriter writer, ConversionMetrics metrics) throws IOException {
+        reader.readNext();
+        GenericData.Record record = new GenericData.Record(SCHEMA);
+        String[] row;
+        while ((row = reader.readNext()) != null) {
+            metrics.rowRead();
+            record.put("header1", row[0]);
+            record.put("header2", row[1]);
+            writer.write(record);
+        }
+    }
+
+    private static String csv(int rows) {
+        StringBuilder csv = new StringBuilder("header1,header2\n");
+        for (int row = 1; row <= rows; row++) {
+            csv.append('r').append(row).append("c1,r").append(row).append("c2\n");
+        }
+        return csv.toString();
+    }
+
+    private static FastCsvTokenizer tokenizer(String csv) {
+        return new FastCsvTokenizer(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), 1024, ',', '"', StandardCharsets.UTF_8);
+    }
+
+    private RollingParquetWriter writer(long maxPartBytes, long maxPartRows) {
+        return writer(maxPartBytes, maxPartRows, null);
+    }
+
+    private RollingParquetWriter writer(long maxPartBytes, long maxPartRows, ConversionCheckpointer checkpointer) {
+        return new RollingParquetWriter(snapshotService, new ParquetWriterFactory(), s3Client, SCHEMA, new ParquetWriterFactory().getDefaultProfile(),
+                "destination-bucket", "gbi-report/party", maxPartBytes, maxPartRows, uploadExecutor, 1, checkpointer);
+    }
+
+    private static void writeRecords(RollingParquetWriter writer, int count) throws IOException {
+        GenericData.Record record = new GenericData.Record(SCHEMA);
+        for (int row = 0; row < count; row++) {
+            record.put("header1", "r" + row + "c1");
+            record.put("header2", "r" + row + "c2");
+            writer.write(record);
+        }
+    }
+
+    private void givenExistingParts(String... names) {
+        when(s3Client.listObjectsV2(any(ListObjectsV2Request.class))).thenReturn(ListObjectsV2Response.builder()
+                .contents(Arrays.stream(names).map(name -> S3Object.builder().key("gbi-report/party/" + name).build()).toList())
+                .build());
+    }
+
+    private List<String> deletedKeys() {
+        ArgumentCaptor<DeleteObjectsRequest> deletes = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+        verify(s3Client, atLeastOnce()).deleteObjects(deletes.capture());
+        return deletes.getAllValues().stream().flatMap(request -> request.delete().objects().stream()).map(ObjectIdentifier::key).toList();
+    }
+}
@@ -0,0 +1,97 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.apache.avro.Schema;
+import software.amazon.awssdk.services.s3.S3Client;
+import java.util.Arrays;
+import java.util.StringJoiner;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Measures the per-file setup cost (schema load and parse, header plan, Parquet writer creation) with
+ * a cold cache on every file against a warm cache shared by all files. Nothing is written and S3 is
+ * mocked, so the numbers are the fixed overhead a small file pays before its first row.
+ *
+ * <pre>
+ * mvn test -Dtest=SchemaCacheBenchmarkTest -Dsnapshot.benchmark=true [-Dsnapshot.benchmark.files=2000]
+ * </pre>
+ */
+@EnabledIfSystemProperty(named = "snapshot.benchmark", matches = "true")
+class SchemaCacheBenchmarkTest {
+
+    private static final int COLUMNS = 40;
+
+    @Test
+    void benchmarkColdVersusWarmSetup() throws Exception {
+        int files = Integer.getInteger("snapshot.benchmark.files", 2000);
+        String json = schemaJson();
+        String[] headers = headers();
+
+        // Warm up the JIT on both paths before measuring
+        runCold(json, headers, files / 10);
+        runWarm(json, headers, files / 10);
+
+        long[] cold = runCold(json, headers, files);
+        long[] warm = runWarm(json, headers, files);
+
+        System.out.printf("Per-file setup, %d columns, %d files%n", COLUMNS, files);
+        System.out.printf("cold  p50 %8.1f us  p99 %8.1f us%n", percentile(cold, 50), percentile(cold, 99));
+        System.out.printf("warm  p50 %8.1f us  p99 %8.1f us%n", percentile(warm, 50), percentile(warm, 99));
+    }
+
+    /** Every file parses its schema, compiles its plan and builds a Hadoop configuration. */
+    private static long[] runCold(String json, String[] headers, int files) throws Exception {
+        long[] nanos = new long[files];
+        for (int i = 0; i < files; i++) {
+            long start = System.nanoTime();
+            SchemaCache cache = new SchemaCache(new SnapshotProperties());
+            Schema schema = cache.getSchema("benchmark", fileType -> json);
+            cache.getPlan(schema, headers, UnparsableValuePolicy.FAIL);
+            openWriter(new ParquetWriterFactory(), schema);
+            nanos[i] = System.nanoTime() - start;
+        }
+        return nanos;
+    }
+
+    /** Files share one cache and one writer factory, as they do in the running service. */
+    private static long[] runWarm(String json, String[] headers, int files) throws Exception {
+        SchemaCache cache = new SchemaCache(new SnapshotProperties());
+        ParquetWriterFactory parquetWriterFactory = new ParquetWriterFactory();
+        long[] nanos = new long[files];
+        for (int i = 0; i < files; i++) {
+            long start = System.nanoTime();
+            Schema schema = cache.getSchema("benchmark", fileType -> json);
+            cache.getPlan(schema, headers, UnparsableValuePolicy.FAIL);
+            openWriter(parquetWriterFactory, schema);
+            nanos[i] = System.nanoTime() - start;
+        }
+        return nanos;
+    }
+
+    private static void openWriter(ParquetWriterFactory parquetWriterFactory, Schema schema) throws Exception {
+        S3MultipartOutputFile outputFile = new S3MultipartOutputFile(mock(S3Client.class), "bucket", "key", 5 * 1024 * 1024, 1, Runnable::run);
+        parquetWriterFactory.create(outputFile, schema);
+        outputFile.abort();
+    }
+
+    private static double percentile(long[] nanos, int percentile) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)] / 1_000.0;
+    }
+
+    private static String schemaJson() {
+        StringJoiner fields = new StringJoiner(", ");
+        for (int column = 1; column <= COLUMNS; column++) {
+            fields.add("{\"name\": \"header" + column + "\", \"type\": [\"null\", \"string\"]}");
+        }
+        return "{\"type\": \"record\", \"name\": \"benchmark\", \"fields\": [" + fields + "]}";
+    }
+
+    private static String[] headers() {
+        String[] headers = new String[COLUMNS];
+        for (int column = 0; column < COLUMNS; column++) {
+            headers[column] = "header" + (column + 1);
+        }
+        return headers;
+    }
+}
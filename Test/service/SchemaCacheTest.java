@@ -0,0 +1,101 @@
+import org.junit.jupiter.api.Test;
+import org.apache.avro.Schema;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaCacheTest {
+
+    private static final String TEST_SCHEMA = "{\"type\": \"record\", \"name\": \"test\", \"fields\": ["
+            + "{\"name\": \"header1\", \"type\": \"string\"}, {\"name\": \"header2\", \"type\": \"string\"}]}";
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final SchemaCache.SchemaLoader loader = fileTobeProcessed -> {
+        loads.incrementAndGet();
+        return TEST_SCHEMA;
+    };
+
+    private static SchemaCache cache(int cacheSize, Duration reloadInterval) {
+        SnapshotProperties properties = new SnapshotProperties();
+        properties.getSchemas().setCacheSize(cacheSize);
+        properties.getSchemas().setReloadInterval(reloadInterval);
+        return new SchemaCache(properties);
+    }
+
+    @Test
+    void testGetSchema_ParsesOncePerFileType() throws Exception {
+        SchemaCache cache = cache(16, Duration.ZERO);
+
+        Schema first = cache.getSchema("gbi_party", loader);
+        Schema second = cache.getSchema("gbi_party", loader);
+        cache.getSchema("gbi_account", loader);
+
+        assertSame(first, second);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testGetSchema_EvictsLeastRecentlyUsed() throws Exception {
+        SchemaCache cache = cache(2, Duration.ZERO);
+
+        cache.getSchema("a", loader);
+        cache.getSchema("b", loader);
+        cache.getSchema("a", loader);
+        cache.getSchema("c", loader);
+        cache.getSchema("a", loader);
+        cache.getSchema("b", loader);
+
+        assertEquals(2, cache.size());
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void testGetSchema_ReloadsAfterInvalidate() throws Exception {
+        SchemaCache cache = cache(16, Duration.ZERO);
+
+        Schema first = cache.getSchema("gbi_party", loader);
+        cache.invalidate("gbi_party");
+        Schema reloaded = cache.getSchema("gbi_party", loader);
+
+        assertNotSame(first, reloaded);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testGetSchema_ReloadsWhenOlderThanInterval() throws Exception {
+        SchemaCache cache = cache(16, Duration.ofNanos(1));
+
+        cache.getSchema("gbi_party", loader);
+        Thread.sleep(1);
+        cache.getSchema("gbi_party", loader);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testGetPlan_ReusedForSameHeaderAndPolicy() throws Exception {
+        SchemaCache cache = cache(16, Duration.ZERO);
+        Schema schema = cache.getSchema("gbi_party", loader);
+        String[] headers = {"header1", "header2"};
+
+        CsvProjectionPlan plan = cache.getPlan(schema, headers, UnparsableValuePolicy.FAIL);
+
+        assertSame(plan, cache.getPlan(schema, headers.clone(), UnparsableValuePolicy.FAIL));
+        assertNotSame(plan, cache.getPlan(schema, new String[]{"header2", "header1"}, UnparsableValuePolicy.FAIL));
+        assertNotSame(plan, cache.getPlan(schema, headers, UnparsableValuePolicy.NULL));
+    }
+
+    @Test
+    void testGetPlan_NotSharedWithReloadedSchema() throws Exception {
+        SchemaCache cache = cache(16, Duration.ZERO);
+        String[] headers = {"header1", "header2"};
+        CsvProjectionPlan plan = cache.getPlan(cache.getSchema("gbi_party", loader), headers, UnparsableValuePolicy.FAIL);
+
+        cache.invalidate("gbi_party");
+        Schema reloaded = cache.getSchema("gbi_party", loader);
+
+        assertSame(reloaded, cache.getPlan(reloaded, headers, UnparsableValuePolicy.FAIL).getSchema());
+        assertNotSame(plan.getSchema(), reloaded);
+    }
+}
@@ -0,0 +1,127 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.apache.avro.Schema;
+import org.springframework.util.unit.DataSize;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Proves that {@link SnapshotServiceImpl#writeCsvToParquet} keeps heap use flat regardless of input size,
+ * from the S3 download stream through to the multipart upload parts.
+ *
+ * <p>The same conversion runs on an input and on one ten times larger, sampling the live heap after
+ * forced collections. Rows held in memory would make the larger run's peak grow with its input; a
+ * streaming conversion only ever holds a row group and the upload buffers. Like the other measurements
+ * it only runs when asked for, as it generates and converts some hundred MB:
+ * <pre>
+ * mvn test -Dtest=SnapshotServiceImplStreamingTest -Dsnapshot.benchmark=true
+ * </pre>
+ * To reproduce the multi-GB case add {@code -Dsnapshot.streaming.bytes=4294967296 -DargLine=-Xmx256m}.
+ * The input is generated on the fly, so the only way the test can pass with a heap smaller than the
+ * input is if rows are never accumulated.
+ */
+@EnabledIfSystemProperty(named = "snapshot.benchmark", matches = "true")
+class SnapshotServiceImplStreamingTest {
+
+    private static final long DEFAULT_STREAM_BYTES = 160L * 1024 * 1024;
+
+    private static final String SCHEMA = "{\"type\": \"record\", \"name\": \"test\", \"fields\": ["
+            + "{\"name\": \"header1\", \"type\": [\"null\", \"string\"]}, {\"name\": \"header2\", \"type\": [\"null\", \"string\"]}, "
+            + "{\"name\": \"header3\", \"type\": [\"null\", \"string\"]}, {\"name\": \"header4\", \"type\": [\"null\", \"string\"]}, "
+            + "{\"name\": \"EFF_DT\", \"type\": \"string\"}, {\"name\": \"ETL_TS\", \"type\": \"string\"}]}";
+
+    @Test
+    void testWriteCsvToParquet_HeapStaysFlatForLargeInput() throws Exception {
+        long largeBytes = Long.getLong("snapshot.streaming.bytes", DEFAULT_STREAM_BYTES);
+        long smallBytes = largeBytes / 10;
+
+        long smallPeak = streamAndSamplePeak(smallBytes);
+        long largePeak = streamAndSamplePeak(largeBytes);
+
+        // Holding the rows would take more heap than the CSV they came from, so the extra input would
+        // show in full; streamed, the two peaks differ only by sampling noise.
+        assertTrue(largePeak - smallPeak < (largeBytes - smallBytes) / 2,
+                "peak live heap grew from " + smallPeak + " bytes for " + smallBytes + " bytes of input to " + largePeak
+                        + " bytes for " + largeBytes + " bytes");
+    }
+
+    /**
+     * Streams a generated CSV of the given size through the Parquet writer to a mocked multipart upload.
+     *
+     * @return the highest live heap sampled during the conversion, less the live heap before it
+     */
+    private static long streamAndSamplePeak(long streamBytes) throws Exception {
+        S3Client s3Client = mock(S3Client.class);
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("upload-1").build());
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenReturn(UploadPartResponse.builder().eTag("etag").build());
+        SnapshotProperties snapshotProperties = new SnapshotProperties();
+        snapshotProperties.getUpload().setPartSize(DataSize.ofMegabytes(5));
+        snapshotProperties.getUpload().setMaxInFlightParts(1);
+        SnapshotServiceImpl snapshotService = new SnapshotServiceImpl(s3Client, new SimpleMeterRegistry(), snapshotProperties, new ParquetWriterFactory(),
+                new SchemaCache(new SnapshotProperties()), null);
+        Schema schema = new Schema.Parser().parse(SCHEMA);
+        // Parquet buffers a whole row group before flushing it, so keep it well below the inputs
+        WriterProfile writerProfile = WriterProfile.defaults(snapshotProperties.getWriter()).toBuilder()
+                .rowGroupSize(DataSize.ofMegabytes(4).toBytes())
+                .build();
+        S3MultipartOutputFile outputFile = snapshotService.openParquetOutputToS3("destination-bucket", "destination.parquet");
+
+        SyntheticCsvInputStream input = new SyntheticCsvInputStream(streamBytes, 4);
+        HeapSampler heapSampler = new HeapSampler();
+        heapSampler.start();
+        try (CsvRowReader csvReader = CsvEngine.FAST.open(input, new SnapshotProperties.Csv())) {
+            ConversionMetrics metrics = new ConversionMetrics(new SimpleMeterRegistry(), "synthetic", new SnapshotProperties.Progress());
+            long written = snapshotService.writeCsvToParquet(csvReader, schema, outputFile, metrics, writerProfile);
+
+            assertEquals(input.getRowsProduced(), written);
+            assertTrue(outputFile.getBytesWritten() > 0);
+        } finally {
+            heapSampler.interrupt();
+            heapSampler.join();
+            snapshotService.shutdown();
+        }
+        return heapSampler.peakUsed - heapSampler.baseline;
+    }
+
+    /**
+     * Samples the heap still in use after a forced collection, so garbage not yet collected does not
+     * count.
+     */
+    private static final class HeapSampler extends Thread {
+        private final long baseline = liveHeap();
+        private volatile long peakUsed = baseline;
+
+        HeapSampler() {
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (!isInterrupted()) {
+                peakUsed = Math.max(peakUsed, liveHeap());
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private static long liveHeap() {
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+    }
+}
@@ -1,26 +1,60 @@
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.MockitoAnnotations;
 import org.mockito.Mock;
+import org.mockito.Spy;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import software.amazon.awssdk.services.s3.S3Client;
 import org.apache.avro.Schema;
+import org.springframework.util.unit.DataSize;
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.core.ResponseBytes;
 import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import com.opencsv.CSVReader;
+import com.opencsv.exceptions.CsvValidationException;
 import software.amazon.awssdk.core.exception.SdkClientException;
 import static org.junit.jupiter.api.Assertions.*;
 
 class SnapshotServiceImplTest {
 
+    private static final String TEST_SCHEMA = "{\"type\": \"record\", \"name\": \"test\", \"fields\": ["
+            + "{\"name\": \"header1\", \"type\": \"string\"}, {\"name\": \"header2\", \"type\": \"string\"}, "
+            + "{\"name\": \"EFF_DT\", \"type\": \"string\"}, {\"name\": \"ETL_TS\", \"type\": \"string\"}]}";
+
     @Mock
     private S3Client s3Client;
 
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private SnapshotProperties snapshotProperties = new SnapshotProperties();
+
+    @Spy
+    private ParquetWriterFactory parquetWriterFactory = new ParquetWriterFactory();
+
+    @Spy
+    private SchemaCache schemaCache = new SchemaCache(new SnapshotProperties());
+
     @InjectMocks
     private SnapshotServiceImpl snapshotService;
 
@@ -37,16 +71,16 @@ class SnapshotServiceImplTest {
         String destinationBucketName = "destination-bucket";
         String destinationFileKey = "destination.parquet";
 
-        ResponseInputStream<GetObjectResponse> responseInputStream = mock(ResponseInputStream.class);
+        ResponseInputStream<GetObjectResponse> responseInputStream = new ResponseInputStream<>(GetObjectResponse.builder().build(),
+                AbortableInputStream.create(new ByteArrayInputStream("header1,header2\nvalue1,value2".getBytes())));
         
         // Simulate S3Client behavior
         when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(responseInputStream);
-        when(responseInputStream.readAllBytes()).thenReturn("header1,header2\nvalue1,value2".getBytes());
         when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class))).thenReturn(null);
 
         // Mock Schema loading
         snapshotService = spy(snapshotService);
-        doReturn("{\"type\": \"record\", \"name\": \"test\", \"fields\": [{\"name\": \"header1\", \"type\": \"string\"}, {\"name\": \"header2\", \"type\": \"string\"}]}").when(snapshotService).loadJsonSchema(anyString());
+        doReturn(TEST_SCHEMA).when(snapshotService).loadJsonSchema(anyString());
 
         assertDoesNotThrow(() -> snapshotService.convertCsvToParquetAndUpload(sourceBucketName, sourceFileKey, fileTobeProcessed, destinationBucketName, destinationFileKey));
 
@@ -66,8 +100,281 @@ class SnapshotServiceImplTest {
         // Simulate S3Client exception
         when(s3Client.getObject(any(GetObjectRequest.class))).thenThrow(SdkClientException.class);
 
+        // Mock Schema loading, which happens before the source is read
+        snapshotService = spy(snapshotService);
+        doReturn(TEST_SCHEMA).when(snapshotService).loadJsonSchema(anyString());
+
         // Execute the method under test and expect IOException with specific message
         IOException thrownException = assertThrows(IOException.class, () -> snapshotService.convertCsvToParquetAndUpload(sourceBucketName, sourceFileKey, fileTobeProcessed, destinationBucketName, destinationFileKey));
         assertEquals("Error fetching CSV data from S3", thrownException.getMessage());
     }
+
+    @Test
+    void testConvertCsvToParquetAndUpload_SingleGetRequest() throws IOException {
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(GetObjectResponse.builder().build(),
+                AbortableInputStream.create(new SyntheticCsvInputStream(1024 * 1024, 2))));
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class))).thenReturn(null);
+
+        snapshotService = spy(snapshotService);
+        doReturn(TEST_SCHEMA).when(snapshotService).loadJsonSchema(anyString());
+
+        snapshotService.convertCsvToParquetAndUpload("source-bucket", "source.csv", "gbi_party", "destination-bucket", "destination.parquet");
+
+        // The source object must be downloaded exactly once and never buffered as a whole
+        verify(s3Client, times(1)).getObject(any(GetObjectRequest.class));
+        verify(snapshotService, never()).readCsvFromS3(anyString(), anyString());
+    }
+
+    @Test
+    void testWriteCsvToParquet_CountsStreamedRows() throws Exception {
+        Schema schema = new Schema.Parser().parse(TEST_SCHEMA);
+        S3MultipartOutputFile outputFile = snapshotService.openParquetOutputToS3("destination-bucket", "destination.parquet");
+
+        byte[] csv = "header1,header2\na,b\nc,d\ne,f\n".getBytes(StandardCharsets.UTF_8);
+        try (CsvRowReader csvReader = CsvEngine.FAST.open(new ByteArrayInputStream(csv), snapshotProperties.getCsv())) {
+            ConversionMetrics metrics = new ConversionMetrics(meterRegistry, "test", snapshotProperties.getProgress());
+            assertEquals(3, snapshotService.writeCsvToParquet(csvReader, schema, outputFile, metrics));
+            assertEquals(3, metrics.getRowsRead());
+        }
+        verify(s3Client).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    }
+
+    @Test
+    void testWriteCsvToParquet_AbortsOutputOnMalformedCsv() throws Exception {
+        Schema schema = new Schema.Parser().parse(TEST_SCHEMA);
+        S3MultipartOutputFile outputFile = snapshotService.openParquetOutputToS3("destination-bucket", "destination.parquet");
+        ConversionMetrics metrics = new ConversionMetrics(meterRegistry, "test", snapshotProperties.getProgress());
+        CSVReader csvReader = mock(CSVReader.class);
+        when(csvReader.readNext()).thenReturn(new String[]{"header1", "header2"}).thenThrow(new CsvValidationException("bad row"));
+
+        IOException thrownException = assertThrows(IOException.class,
+                () -> snapshotService.writeCsvToParquet(new OpenCsvRowReader(csvReader), schema, outputFile, metrics));
+
+        assertEquals("Error reading CSV data from S3", thrownException.getMessage());
+        verify(s3Client, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    }
+
+    @Test
+    void testConvertCsvToParquetAndUpload_PublishesMetrics() throws IOException {
+        String csv = "header1,header2\nvalue1,value2\nvalue3\n";
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(GetObjectResponse.builder().build(),
+                AbortableInputStream.create(new ByteArrayInputStream(csv.getBytes()))));
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class))).thenReturn(null);
+
+        // header2 must be nullable for the short row to be written with a null
+        snapshotService = spy(snapshotService);
+        doReturn(TEST_SCHEMA.replace("{\"name\": \"header2\", \"type\": \"string\"}", "{\"name\": \"header2\", \"type\": [\"null\", \"string\"]}"))
+                .when(snapshotService).loadJsonSchema(anyString());
+
+        ConversionResult result = snapshotService.convertCsvToParquetAndUpload("source-bucket", "source.csv", "gbi_party", "destination-bucket", "destination.parquet");
+
+        assertEquals("destination.parquet", result.getDestinationKey());
+        assertEquals(2, result.getRowsWritten());
+        assertEquals(csv.length(), result.getBytesDownloaded());
+        assertEquals(2, meterRegistry.get("snapshot.rows.read").tag("fileType", "gbi_party").counter().count());
+        assertEquals(2, meterRegistry.get("snapshot.rows.written").tag("fileType", "gbi_party").counter().count());
+        assertEquals(csv.length(), meterRegistry.get("snapshot.bytes.downloaded").counter().count());
+        assertEquals(1, meterRegistry.get("snapshot.fields.null").tag("column", "header2").counter().count());
+        assertTrue(meterRegistry.get("snapshot.bytes.uploaded").counter().count() > 0);
+        assertEquals(1, meterRegistry.get("snapshot.phase").tag("phase", "upload").timer().count());
+    }
+
+    @Test
+    void testConvertCsvToParquetAndUpload_ReservesMemoryForPipelineBatches() throws IOException {
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(GetObjectResponse.builder().build(),
+                AbortableInputStream.create(new ByteArrayInputStream("header1,header2\nvalue1,value2\n".getBytes()))));
+        // About 200MB without the pipeline; its batches of 100,000 rows take the estimate past the budget
+        snapshotProperties.getMemory().setEnabled(true);
+        snapshotProperties.getMemory().setBudget(DataSize.ofMegabytes(250));
+        snapshotProperties.getPipeline().setEnabled(true);
+        snapshotProperties.getPipeline().setBatchRows(100_000);
+        SnapshotServiceImpl pipelinedService = spy(new SnapshotServiceImpl(s3Client, meterRegistry, snapshotProperties, parquetWriterFactory,
+                schemaCache, null));
+        doReturn(TEST_SCHEMA).when(pipelinedService).loadJsonSchema(anyString());
+
+        try {
+            ConversionResult result = pipelinedService.convertCsvToParquetAndUpload("source-bucket", "source.csv", "gbi_party",
+                    "destination-bucket", "destination.parquet");
+
+            assertEquals(1, result.getRowsWritten());
+            assertEquals(1, meterRegistry.get(MemoryGovernor.SHRUNK_COUNTER).tag("fileType", "gbi_party").counter().count());
+        } finally {
+            pipelinedService.shutdown();
+        }
+    }
+
+    @Test
+    void testConvertCsvToParquetAndUpload_FailsOnShortRowForNonNullableField() throws IOException {
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(GetObjectResponse.builder().build(),
+                AbortableInputStream.create(new ByteArrayInputStream("header1,header2\nvalue1,value2\nvalue3\n".getBytes()))));
+
+        snapshotService = spy(snapshotService);
+        doReturn(TEST_SCHEMA).when(snapshotService).loadJsonSchema(anyString());
+
+        IOException thrownException = assertThrows(IOException.class, () -> snapshotService.convertCsvToParquetAndUpload("source-bucket", "source.csv",
+                "gbi_party", "destination-bucket", "destination.parquet"));
+
+        assertInstanceOf(UnparsableValueException.class, thrownException.getCause());
+        verify(s3Client, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    }
+
+    @Test
+    void testConvertCsvToParquetAndUpload_DecodesGzipSource() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write("header1,header2\nvalue1,value2\nvalue3,value4\n".getBytes());
+        }
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(GetObjectResponse.builder().build(),
+                AbortableInputStream.create(new ByteArrayInputStream(compressed.toByteArray()))));
+        when(s3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class))).thenReturn(null);
+
+        snapshotService = spy(snapshotService);
+        doReturn(TEST_SCHEMA).when(snapshotService).loadJsonSchema(anyString());
+
+        ConversionResult result = snapshotService.convertCsvToParquetAndUpload("source-bucket", "source.csv.gz", "gbi_party", "destination-bucket", "destination.parquet");
+
+        assertEquals(2, result.getRowsWritten());
+        // Downloaded bytes are counted before decoding
+        assertEquals(compressed.size(), result.getBytesDownloaded());
+    }
+
+    @Test
+    void testConvertCsvToParquetAndUpload_SkipsSourceUnchangedSinceManifest() throws IOException {
+        snapshotProperties.getManifest().setEnabled(true);
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(HeadObjectResponse.builder().eTag("\"v1\"").contentLength(30L).build());
+        SnapshotManifest previous = SnapshotManifest.builder()
+                .sourceBucketName("source-bucket").sourceKey("source.csv").sourceETag("\"v1\"").sourceSize(30)
+                .schemaVersion(SnapshotManifest.schemaVersion(new Schema.Parser().parse(TEST_SCHEMA)))
+                .destinationBucketName("destination-bucket").destinationKey("destination.parquet")
+                .parts(1).rowsWritten(2).completedAt("2024-05-01T06:00:00Z")
+                .build();
+        when(s3Client.getObjectAsBytes(any(GetObjectRequest.class)))
+                .thenReturn(ResponseBytes.fromByteArray(GetObjectResponse.builder().build(), previous.toJson().getBytes(StandardCharsets.UTF_8)));
+
+        snapshotService = spy(snapshotService);
+        doReturn(TEST_SCHEMA).when(snapshotService).loadJsonSchema(anyString());
+
+        ConversionResult result = snapshotService.convertCsvToParquetAndUpload("source-bucket", "source.csv", "gbi_party", "destination-bucket", "destination.csv");
+
+        assertTrue(result.isSkipped());
+        assertEquals("destination.parquet", result.getDestinationKey());
+        verify(s3Client, never()).getObject(any(GetObjectRequest.class));
+        verify(s3Client, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    }
+
+    @Test
+    void testSchemaVersion_ChangesWithLogicalTypeButNotFormatting() {
+        String decimal = "{\"type\": \"record\", \"name\": \"test\", \"fields\": [{\"name\": \"amount\", "
+                + "\"type\": {\"type\": \"bytes\", \"logicalType\": \"decimal\", \"precision\": 10, \"scale\": %d}}]}";
+        String version = SnapshotManifest.schemaVersion(new Schema.Parser().parse(String.format(decimal, 2)));
+
+        assertEquals(version, SnapshotManifest.schemaVersion(new Schema.Parser().parse(String.format(decimal, 2).replace(", ", ",\n  "))));
+        assertNotEquals(version, SnapshotManifest.schemaVersion(new Schema.Parser().parse(String.format(decimal, 4))));
+    }
+
+    @Test
+    void testConvertCsvToParquetAndUpload_ConvertsUnchangedSourceWhoseOutputIsMissing() throws IOException {
+        snapshotProperties.getManifest().setEnabled(true);
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(HeadObjectResponse.builder().eTag("\"v1\"").contentLength(30L).build());
+        when(s3Client.headObject(argThat((HeadObjectRequest head) -> head != null && head.key().equals("destination.parquet"))))
+                .thenThrow(NoSuchKeyException.builder().message("no output").build());
+        SnapshotManifest previous = SnapshotManifest.builder()
+                .sourceBucketName("source-bucket").sourceKey("source.csv").sourceETag("\"v1\"").sourceSize(30)
+                .schemaVersion(SnapshotManifest.schemaVersion(new Schema.Parser().parse(TEST_SCHEMA)))
+                .destinationBucketName("destination-bucket").destinationKey("destination.parquet")
+                .parts(1).rowsWritten(1).completedAt("2024-05-01T06:00:00Z")
+                .build();
+        when(s3Client.getObjectAsBytes(any(GetObjectRequest.class)))
+                .thenReturn(ResponseBytes.fromByteArray(GetObjectResponse.builder().build(), previous.toJson().getBytes(StandardCharsets.UTF_8)));
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(GetObjectResponse.builder().build(),
+                AbortableInputStream.create(new ByteArrayInputStream("header1,header2\nvalue1,value2\n".getBytes()))));
+
+        snapshotService = spy(snapshotService);
+        doReturn(TEST_SCHEMA).when(snapshotService).loadJsonSchema(anyString());
+
+        ConversionResult result = snapshotService.convertCsvToParquetAndUpload("source-bucket", "source.csv", "gbi_party", "destination-bucket", "destination.csv");
+
+        assertFalse(result.isSkipped());
+        assertEquals(1, result.getRowsWritten());
+    }
+
+    @Test
+    void testConvertCsvToParquetAndUpload_ChangedSourceIsConvertedAndManifestRewritten() throws IOException {
+        snapshotProperties.getManifest().setEnabled(true);
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(HeadObjectResponse.builder().eTag("\"v2\"").contentLength(30L).build());
+        when(s3Client.getObjectAsBytes(any(GetObjectRequest.class))).thenThrow(NoSuchKeyException.builder().message("no manifest").build());
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(GetObjectResponse.builder().build(),
+                AbortableInputStream.create(new ByteArrayInputStream("header1,header2\nvalue1,value2\n".getBytes()))));
+
+        snapshotService = spy(snapshotService);
+        doReturn(TEST_SCHEMA).when(snapshotService).loadJsonSchema(anyString());
+
+        ConversionResult result = snapshotService.convertCsvToParquetAndUpload("source-bucket", "source.csv", "gbi_party", "destination-bucket", "destination.csv");
+
+        assertFalse(result.isSkipped());
+        ArgumentCaptor<PutObjectRequest> puts = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(s3Client, times(2)).putObject(puts.capture(), any(RequestBody.class));
+        assertEquals(List.of("destination.parquet", "destination.manifest.json"), puts.getAllValues().stream().map(PutObjectRequest::key).toList());
+    }
+
+    @Test
+    void testConvertCsvToParquetAndUpload_ForceReprocessIgnoresManifest() throws IOException {
+        snapshotProperties.getManifest().setEnabled(true);
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(HeadObjectResponse.builder().eTag("\"v1\"").contentLength(30L).build());
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(GetObjectResponse.builder().build(),
+                AbortableInputStream.create(new ByteArrayInputStream("header1,header2\nvalue1,value2\n".getBytes()))));
+
+        snapshotService = spy(snapshotService);
+        doReturn(TEST_SCHEMA).when(snapshotService).loadJsonSchema(anyString());
+
+        ConversionResult result = snapshotService.convertCsvToParquetAndUpload("source-bucket", "source.csv", "gbi_party", "destination-bucket",
+                "destination.csv", true);
+
+        assertFalse(result.isSkipped());
+        assertEquals(1, result.getRowsWritten());
+        verify(s3Client, never()).getObjectAsBytes(any(GetObjectRequest.class));
+        // Deleted before converting, so a failed forced run cannot leave a manifest that still matches
+        InOrder inOrder = inOrder(s3Client);
+        inOrder.verify(s3Client).deleteObject(argThat((DeleteObjectRequest delete) -> delete.key().equals("destination.manifest.json")));
+        inOrder.verify(s3Client).getObject(any(GetObjectRequest.class));
+    }
+
+    @Test
+    void testConvertCsvToParquetAndUpload_DiscardsCheckpointOfASourceReplacedBeforeResuming() throws IOException {
+        snapshotProperties.getCheckpoint().setEnabled(true);
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(HeadObjectResponse.builder().eTag("\"v1\"").contentLength(30L).build());
+        ConversionCheckpoint stored = ConversionCheckpoint.builder()
+                .sourceBucketName("source-bucket").sourceKey("source.csv").sourceETag("\"v1\"").sourceSize(30)
+                .schemaVersion(SnapshotManifest.schemaVersion(new Schema.Parser().parse(TEST_SCHEMA)))
+                .destinationBucketName("destination-bucket").destinationPrefix("destination")
+                .headerLength("header1,header2\n".length()).sourceOffset(23).rowsRead(1)
+                .parts(List.of(new ParquetPart(0, "destination-bucket", "destination/part-00000.parquet", 1, 30, "\"v1\"")))
+                .build();
+        when(s3Client.getObjectAsBytes(any(GetObjectRequest.class)))
+                .thenReturn(ResponseBytes.fromByteArray(GetObjectResponse.builder().build(), stored.toJson().getBytes(StandardCharsets.UTF_8)));
+        boolean[] headerClosed = new boolean[1];
+        InputStream header = new ByteArrayInputStream("header1,header2\n".getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public void close() {
+                headerClosed[0] = true;
+            }
+        };
+        // The source is replaced between the header range and the rest
+        when(s3Client.getObject(any(GetObjectRequest.class)))
+                .thenReturn(new ResponseInputStream<>(GetObjectResponse.builder().build(), AbortableInputStream.create(header)))
+                .thenThrow(S3Exception.builder().statusCode(412).message("At least one of the pre-conditions you specified did not hold").build());
+
+        snapshotService = spy(snapshotService);
+        doReturn(TEST_SCHEMA).when(snapshotService).loadJsonSchema(anyString());
+
+        IOException e = assertThrows(IOException.class, () -> snapshotService.convertCsvToParquetAndUpload("source-bucket", "source.csv", "gbi_party",
+                "destination-bucket", "destination.csv"));
+
+        assertInstanceOf(S3Exception.class, e.getCause());
+        assertTrue(headerClosed[0]);
+        ArgumentCaptor<DeleteObjectRequest> deletes = ArgumentCaptor.forClass(DeleteObjectRequest.class);
+        verify(s3Client, atLeastOnce()).deleteObject(deletes.capture());
+        assertTrue(deletes.getAllValues().stream().anyMatch(delete -> delete.key().equals("destination.checkpoint.json")));
+        verify(s3Client, never()).putObject(any(PutObjectRequest.class), any(RequestBody.class));
+    }
 }
@@ -0,0 +1,82 @@
+import org.junit.jupiter.api.Test;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SourceCompressionTest {
+
+    private static final String FIRST = "header1,header2\nvalue1,value2\n";
+    private static final String SECOND = "value3,value4\nvalue5,value6\n";
+
+    @FunctionalInterface
+    private interface Compressor {
+        OutputStream wrap(OutputStream out) throws IOException;
+    }
+
+    @Test
+    void testDetect_PrefersTheKeyExtension() throws IOException {
+        assertEquals(SourceCompression.GZIP, detect("gbi/party.csv.gz", FIRST.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(SourceCompression.ZSTD, detect("gbi/party.csv.zst", FIRST.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(SourceCompression.BZIP2, detect("gbi/party.CSV.BZ2", FIRST.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testDetect_FallsBackToMagicBytes() throws IOException {
+        assertEquals(SourceCompression.GZIP, detect("gbi/party.csv", compress(GZIPOutputStream::new, FIRST)));
+        assertEquals(SourceCompression.ZSTD, detect("gbi/party.csv", compress(ZstdCompressorOutputStream::new, FIRST)));
+        assertEquals(SourceCompression.BZIP2, detect("gbi/party.csv", compress(BZip2CompressorOutputStream::new, FIRST)));
+        assertEquals(SourceCompression.NONE, detect("gbi/party.csv", FIRST.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(SourceCompression.NONE, detect("gbi/party.csv", "BZh,header2\n".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(SourceCompression.NONE, detect("gbi/empty.csv", new byte[0]));
+    }
+
+    @Test
+    void testDetect_ConsumesNothing() throws IOException {
+        BufferedInputStream source = new BufferedInputStream(new ByteArrayInputStream(FIRST.getBytes(StandardCharsets.UTF_8)));
+
+        SourceCompression.detect("gbi/party.csv", source);
+
+        assertEquals(FIRST, new String(source.readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testDecode_ReadsEveryMemberOfConcatenatedStreams() throws IOException {
+        assertEquals(FIRST + SECOND, decode(concat(compress(GZIPOutputStream::new, FIRST), compress(GZIPOutputStream::new, SECOND))));
+        assertEquals(FIRST + SECOND, decode(concat(compress(ZstdCompressorOutputStream::new, FIRST), compress(ZstdCompressorOutputStream::new, SECOND))));
+        assertEquals(FIRST + SECOND, decode(concat(compress(BZip2CompressorOutputStream::new, FIRST), compress(BZip2CompressorOutputStream::new, SECOND))));
+    }
+
+    private static SourceCompression detect(String key, byte[] bytes) throws IOException {
+        return SourceCompression.detect(key, new BufferedInputStream(new ByteArrayInputStream(bytes)));
+    }
+
+    private static String decode(byte[] compressed) throws IOException {
+        BufferedInputStream source = new BufferedInputStream(new ByteArrayInputStream(compressed));
+        try (InputStream decoded = SourceCompression.detect("gbi/party.csv", source).decode(source)) {
+            return new String(decoded.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static byte[] compress(Compressor compressor, String text) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = compressor.wrap(bytes)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] both = new byte[first.length + second.length];
+        System.arraycopy(first, 0, both, 0, first.length);
+        System.arraycopy(second, 0, both, first.length, second.length);
+        return both;
+    }
+}
@@ -0,0 +1,86 @@
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Generates a CSV document on the fly without ever holding more than one row in memory.
+ * The header row is {@code header1,...,headerN}; every data row is {@code r<row>c1,...,r<row>cN}.
+ */
+class SyntheticCsvInputStream extends InputStream {
+
+    private final long targetBytes;
+    private final int columns;
+
+    private byte[] current;
+    private int position;
+    private long bytesProduced;
+    private long rowsProduced;
+
+    SyntheticCsvInputStream(long targetBytes, int columns) {
+        this.targetBytes = targetBytes;
+        this.columns = columns;
+        this.current = headerRow().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Number of data rows (excluding the header) handed out so far.
+     */
+    long getRowsProduced() {
+        return rowsProduced;
+    }
+
+    long getBytesProduced() {
+        return bytesProduced;
+    }
+
+    @Override
+    public int read() {
+        if (!ensureRow()) {
+            return -1;
+        }
+        bytesProduced++;
+        return current[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        if (!ensureRow()) {
+            return -1;
+        }
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current, position, buffer, offset, count);
+        position += count;
+        bytesProduced += count;
+        return count;
+    }
+
+    private boolean ensureRow() {
+        if (position < current.length) {
+            return true;
+        }
+        if (bytesProduced >= targetBytes) {
+            return false;
+        }
+        current = dataRow(++rowsProduced).getBytes(StandardCharsets.UTF_8);
+        position = 0;
+        return true;
+    }
+
+    private String headerRow() {
+        StringBuilder row = new StringBuilder();
+        for (int column = 1; column <= columns; column++) {
+            row.append(column == 1 ? "" : ",").append("header").append(column);
+        }
+        return row.append('\n').toString();
+    }
+
+    private String dataRow(long rowNumber) {
+        StringBuilder row = new StringBuilder();
+        for (int column = 1; column <= columns; column++) {
+            row.append(column == 1 ? "" : ",").append('r').append(rowNumber).append('c').append(column);
+        }
+        return row.append('\n').toString();
+    }
+}
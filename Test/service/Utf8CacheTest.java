@@ -0,0 +1,46 @@
+import org.junit.jupiter.api.Test;
+import org.apache.avro.util.Utf8;
+import static org.junit.jupiter.api.Assertions.*;
+
+class Utf8CacheTest {
+
+    @Test
+    void testGet_ReturnsSameUtf8ForEqualValues() {
+        Utf8Cache cache = new Utf8Cache(8);
+
+        CharSequence first = cache.get("café");
+
+        assertInstanceOf(Utf8.class, first);
+        assertEquals("café", first.toString());
+        assertSame(first, cache.get(new String("café")));
+    }
+
+    @Test
+    void testGet_PassesThroughLongValuesAndValuesBeyondCapacity() {
+        Utf8Cache cache = new Utf8Cache(1);
+        String longValue = "x".repeat(Utf8Cache.MAX_VALUE_LENGTH + 1);
+
+        assertSame(longValue, cache.get(longValue));
+        assertInstanceOf(Utf8.class, cache.get("a"));
+        assertEquals("b", cache.get("b"));
+    }
+
+    @Test
+    void testGet_DisablesItselfOnHighCardinalityField() {
+        Utf8Cache cache = new Utf8Cache(16);
+
+        for (int value = 0; value < 100_000 && cache.isEnabled(); value++) {
+            cache.get(Integer.toString(value));
+        }
+
+        assertFalse(cache.isEnabled());
+        assertEquals("0", cache.get("0"));
+    }
+
+    @Test
+    void testEncodeOnce_ConvertsOnlyStrings() {
+        assertEquals(new Utf8("2024-01-01"), Utf8Cache.encodeOnce("2024-01-01"));
+        assertEquals(19723, Utf8Cache.encodeOnce(19723));
+        assertNull(Utf8Cache.encodeOnce(null));
+    }
+}
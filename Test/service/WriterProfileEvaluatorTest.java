@@ -0,0 +1,43 @@
+import org.junit.jupiter.api.Test;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriterProfileEvaluatorTest {
+
+    private static final Schema SCHEMA = new Schema.Parser().parse("{\"type\": \"record\", \"name\": \"test\", \"fields\": ["
+            + "{\"name\": \"PARTY_ID\", \"type\": \"long\"}, {\"name\": \"COUNTRY\", \"type\": [\"null\", \"string\"]}]}");
+
+    @Test
+    void testEvaluate_ReportsEveryCandidateInOrder() throws IOException {
+        List<GenericData.Record> sample = new ArrayList<>();
+        String[] countries = {"GB", "US", "DE", "FR"};
+        for (int row = 0; row < 20_000; row++) {
+            GenericData.Record record = new GenericData.Record(SCHEMA);
+            record.put("PARTY_ID", (long) row);
+            record.put("COUNTRY", countries[row % countries.length]);
+            sample.add(record);
+        }
+        ParquetWriterFactory parquetWriterFactory = new ParquetWriterFactory();
+        List<WriterProfile> candidates = parquetWriterFactory.getDefaultProfile().candidates();
+
+        List<WriterProfileEvaluation> evaluations = new WriterProfileEvaluator(parquetWriterFactory, 1).evaluate(sample, SCHEMA, candidates);
+
+        assertEquals(candidates.stream().map(WriterProfile::getName).toList(), evaluations.stream().map(WriterProfileEvaluation::getProfile).toList());
+        evaluations.forEach(evaluation -> {
+            assertEquals(sample.size(), evaluation.getRows());
+            assertTrue(evaluation.getBytes() > 0);
+            assertTrue(evaluation.getEncodeNanos() > 0);
+        });
+        long uncompressed = bytesOf(evaluations, "uncompressed");
+        assertTrue(bytesOf(evaluations, "zstd-9") < uncompressed);
+        assertTrue(bytesOf(evaluations, "gzip-6") < uncompressed);
+    }
+
+    private static long bytesOf(List<WriterProfileEvaluation> evaluations, String profile) {
+        return evaluations.stream().filter(evaluation -> evaluation.getProfile().equals(profile)).findFirst().orElseThrow().getBytes();
+    }
+}
@@ -0,0 +1,57 @@
+import org.junit.jupiter.api.Test;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import java.io.IOException;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriterProfileTest {
+
+    private final WriterProfile defaults = WriterProfile.defaults(new SnapshotProperties.Writer());
+
+    @Test
+    void testDefaults_MatchTheWriterSettingsUsedBeforeProfiles() {
+        assertEquals(CompressionCodecName.SNAPPY, defaults.getCodec());
+        assertNull(defaults.getCompressionLevel());
+        assertEquals(128L * 1024 * 1024, defaults.getRowGroupSize());
+        assertEquals(1024 * 1024, defaults.getPageSize());
+        assertTrue(defaults.isDictionaryEnabled("anything"));
+        assertTrue(defaults.getBloomFilterColumns().isEmpty());
+    }
+
+    @Test
+    void testParse_OverridesOnlyTheGivenSettings() throws IOException {
+        WriterProfile profile = WriterProfile.parse("gbi_party", "{\"codec\": \"zstd\", \"compressionLevel\": 9, \"rowGroupSize\": \"256MB\", "
+                + "\"dictionary\": {\"columns\": {\"FREE_TEXT\": false}}, \"bloomFilters\": {\"PARTY_ID\": 5000000}}", defaults);
+
+        assertEquals("gbi_party", profile.getName());
+        assertEquals(CompressionCodecName.ZSTD, profile.getCodec());
+        assertEquals(9, profile.getCompressionLevel());
+        assertEquals(256L * 1024 * 1024, profile.getRowGroupSize());
+        assertEquals(defaults.getPageSize(), profile.getPageSize());
+        assertFalse(profile.isDictionaryEnabled("FREE_TEXT"));
+        assertTrue(profile.isDictionaryEnabled("PARTY_ID"));
+        assertEquals(Map.of("PARTY_ID", 5_000_000L), profile.getBloomFilterColumns());
+    }
+
+    @Test
+    void testParse_AcceptsBloomFilterColumnList() throws IOException {
+        WriterProfile profile = WriterProfile.parse("gbi_party", "{\"bloomFilters\": [\"PARTY_ID\", \"ACCOUNT_ID\"]}", defaults);
+
+        assertEquals(Map.of("PARTY_ID", 0L, "ACCOUNT_ID", 0L), profile.getBloomFilterColumns());
+    }
+
+    @Test
+    void testParse_RejectsInvalidSettings() {
+        assertThrows(IOException.class, () -> WriterProfile.parse("bad", "{\"codec\": \"ZSTD\", \"compressionLevel\": 30}", defaults));
+        assertThrows(IOException.class, () -> WriterProfile.parse("bad", "{\"codec\": \"SNAPPY\", \"compressionLevel\": 3}", defaults));
+        assertThrows(IOException.class, () -> WriterProfile.parse("bad", "{\"codec\": \"NOPE\"}", defaults));
+        assertThrows(IOException.class, () -> WriterProfile.parse("bad", "[]", defaults));
+    }
+
+    @Test
+    void testGetProfile_FallsBackToDefaultsWithoutAProfileResource() throws IOException {
+        ParquetWriterFactory parquetWriterFactory = new ParquetWriterFactory();
+
+        assertSame(parquetWriterFactory.getDefaultProfile(), parquetWriterFactory.getProfile("no_such_file_type"));
+    }
+}
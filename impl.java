@@ -1,6 +1,5 @@
 import lombok.extern.slf4j.Slf4j;
 import java.io.*;
-import java.util.Arrays;
 import java.util.List;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -43,36 +42,40 @@ public class SnapshotServiceImpl implements SnapshotService {
                  sourceBucketName, sourceFileKey, destinationBucketName, destinationFileKey);
 
         try {
-            // Step 1: Stream CSV data from S3
-            List<String[]> csvData = readCsvFromS3(sourceBucketName, sourceFileKey);
-            CSVReader csvReader = new CSVReader(new InputStreamReader(s3Client.getObject(GetObjectRequest.builder()
-                .bucket(sourceBucketName)
-                .key(sourceFileKey)
-                .build())));
-            
-            // Step 2: Set up ParquetWriter
+            // Step 1: Set up ParquetWriter
             log.debug("Setting up ParquetWriter for temp file: {}", tempFileName);
             File parquetFile = new File(tempFileName);
             Schema avroSchema = new Schema.Parser().parse(loadJsonSchema(fileTobeProcessed));
-            ParquetWriter<GenericRecord> writer = setupParquetWriter(parquetFile, avroSchema);
 
-            // Step 3: Stream through CSV rows
-            String[] headers = csvReader.readNext();  // First row as headers
-            String currentDate = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-            String currentTimestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"));
-
-            String[] row;
-            int totalRows = 0;
-
-            while ((row = csvReader.readNext()) != null) {
-                GenericRecord avroRecord = createAvroRecord(row, headers, avroSchema, currentDate, currentTimestamp);
-                writer.write(avroRecord);  // Write each record to Parquet file
-                totalRows++;
+            // Step 2: Stream CSV data from S3 with a single GET, one row at a time
+            try (CSVReader csvReader = new CSVReader(new InputStreamReader(s3Client.getObject(GetObjectRequest.builder()
+                    .bucket(sourceBucketName)
+                    .key(sourceFileKey)
+                    .build())));
+                 ParquetWriter<GenericRecord> writer = setupParquetWriter(parquetFile, avroSchema)) {
+
+                // Step 3: Stream through CSV rows
+                String[] headers = csvReader.readNext();  // First row as headers
+                String currentDate = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+                String currentTimestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"));
+
+                String[] row;
+                int totalRows = 0;
+
+                if (headers != null) {
+                    CsvProjectionPlan plan = CsvProjectionPlan.compile(avroSchema, headers);
+                    GenericData.Record avroRecord = plan.newRecord();
+                    while ((row = csvReader.readNext()) != null) {
+                        if (plan.fill(avroRecord, row, currentDate, currentTimestamp)) {
+                            writer.write(avroRecord);  // Write each record to Parquet file
+                            totalRows++;
+                        }
+                    }
+                }
+
+                log.info("Successfully converted {} rows from CSV to Parquet.", totalRows);
             }
 
-            writer.close();  // Close the writer
-            log.info("Successfully converted {} rows from CSV to Parquet.", totalRows);
-
             // Step 4: Upload to S3
             uploadParquetToS3(destinationBucketName, destinationFileKey, parquetFile, tempFileName);
 
@@ -113,24 +116,6 @@ public class SnapshotServiceImpl implements SnapshotService {
         }
     }
 
-    // Helper method to create Avro record
-    private GenericRecord createAvroRecord(String[] row, String[] headers, Schema avroSchema, String currentDate, String currentTimestamp) {
-        GenericRecord avroRecord = new GenericData.Record(avroSchema);
-        avroRecord.put("EFF_DT", currentDate);
-        avroRecord.put("ETL_TS", currentTimestamp);
-
-        // Populate other fields from CSV
-        for (Schema.Field field : avroSchema.getFields()) {
-            String fieldName = field.name();
-            if (!"EFF_DT".equals(fieldName) && !"ETL_TS".equals(fieldName)) {
-                int columnIndex = Arrays.asList(headers).indexOf(fieldName);
-                avroRecord.put(fieldName, columnIndex >= 0 && columnIndex < row.length ? row[columnIndex] : null);
-            }
-        }
-
-        return avroRecord;
-    }
-
     @Override
     public File convertCsvToParquet(List<String[]> csvData, Schema avroSchema, String fileName) throws IOException {
         File parquetFile = new File(fileName);
@@ -151,10 +136,13 @@ public class SnapshotServiceImpl implements SnapshotService {
             String currentDate = LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
             String currentTimestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss"));
             String[] headers = csvData.get(0);
+            CsvProjectionPlan plan = CsvProjectionPlan.compile(avroSchema, headers);
+            GenericData.Record avroRecord = plan.newRecord();
 
-            for (String[] record : csvData) {
-                GenericRecord avroRecord = createAvroRecord(record, headers, avroSchema, currentDate, currentTimestamp);
-                writer.write(avroRecord);
+            for (String[] record : csvData.subList(1, csvData.size())) {
+                if (plan.fill(avroRecord, record, currentDate, currentTimestamp)) {
+                    writer.write(avroRecord);
+                }
             }
 
             log.info("Parquet file written successfully. File: {}", fileName);